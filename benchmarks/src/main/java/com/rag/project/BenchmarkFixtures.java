@@ -0,0 +1,148 @@
+package com.rag.project;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+// Local stand-ins so benchmarks measure this project's code rather than Ollama or Milvus
+final class BenchmarkFixtures {
+
+    static final int DIMENSION = 768;
+
+    private static final String[] WORDS = {
+            "retrieval", "augmented", "generation", "vector", "database", "embedding", "context",
+            "the", "a", "of", "and", "to", "in", "is", "that", "for", "model", "query", "answer",
+            "document", "chunk", "index", "search", "latency", "throughput", "Paris", "capital"
+    };
+
+    private static final PrintStream STDOUT = System.out;
+
+    private BenchmarkFixtures() {
+    }
+
+    // Embeddings derived from the text hash, returned without any delay
+    static EmbeddingModel embeddingModel() {
+        return new IngestionBenchmark.SimulatedEmbeddingModel(DIMENSION, 0, 0);
+    }
+
+    // Prose-like text with sentences and paragraphs, so the recursive splitter exercises every level
+    static String text(int chars, long seed) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder(chars + 64);
+        int sentence = 0;
+        while (text.length() < chars) {
+            int words = 8 + random.nextInt(16);
+            for (int i = 0; i < words; i++) {
+                String word = WORDS[random.nextInt(WORDS.length)];
+                text.append(i == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+                text.append(i == words - 1 ? ". " : " ");
+            }
+            if (++sentence % 6 == 0) {
+                text.append("\n\n");
+            }
+        }
+        text.setLength(chars);
+        return text.toString();
+    }
+
+    static List<EmbeddingMatch<TextSegment>> matches(int count, int chunkChars) {
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            TextSegment segment = TextSegment.from(text(chunkChars, i), Metadata.from("source", "doc" + i + ".txt"));
+            matches.add(new EmbeddingMatch<>(0.9 - i * 0.01, UUID.randomUUID().toString(), null, segment));
+        }
+        return matches;
+    }
+
+    // An answer as RAGService.ask() returns it, with made-up stage timings
+    static RAGService.Answer answer(String text, List<EmbeddingMatch<TextSegment>> matches) {
+        RAGService.Answer answer = new RAGService.Answer();
+        answer.text = text;
+        answer.matches = matches;
+        answer.embedNanos = 12_345_678;
+        answer.searchNanos = 3_456_789;
+        answer.promptNanos = 45_678;
+        answer.generateNanos = 1_234_567_890;
+        answer.totalNanos = 1_250_825_035;
+        return answer;
+    }
+
+    // Pipeline progress lines would otherwise dominate short ingestion benchmarks
+    static void silenceStdout() {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    static void restoreStdout() {
+        System.setOut(STDOUT);
+    }
+
+    // Answers immediately with a fixed text of the given length
+    static class FixedChatModel implements ChatLanguageModel {
+        private final String answer;
+
+        FixedChatModel(int answerChars) {
+            this.answer = text(answerChars, 7);
+        }
+
+        @Override
+        public Response<AiMessage> generate(List<ChatMessage> messages) {
+            return Response.from(AiMessage.from(answer));
+        }
+    }
+
+    // Accepts inserts without keeping them and always returns the same matches
+    static class FixedEmbeddingStore implements EmbeddingStore<TextSegment> {
+        private final List<EmbeddingMatch<TextSegment>> matches;
+
+        FixedEmbeddingStore(List<EmbeddingMatch<TextSegment>> matches) {
+            this.matches = matches;
+        }
+
+        @Override
+        public String add(Embedding embedding) {
+            return UUID.randomUUID().toString();
+        }
+
+        @Override
+        public void add(String id, Embedding embedding) {
+        }
+
+        @Override
+        public String add(Embedding embedding, TextSegment segment) {
+            return UUID.randomUUID().toString();
+        }
+
+        @Override
+        public List<String> addAll(List<Embedding> embeddings) {
+            return addAll(embeddings, null);
+        }
+
+        @Override
+        public List<String> addAll(List<Embedding> embeddings, List<TextSegment> segments) {
+            List<String> ids = new ArrayList<>(embeddings.size());
+            for (int i = 0; i < embeddings.size(); i++) {
+                ids.add(UUID.randomUUID().toString());
+            }
+            return ids;
+        }
+
+        @Override
+        public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore) {
+            return matches.subList(0, Math.min(maxResults, matches.size()));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.rag.project;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// The DocumentLoader ingest loop with instant embeddings and a store that discards inserts,
+// so only splitting, batching, queue hand-offs and bookkeeping are measured
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestLoopBenchmark {
+
+    @Param({"1", "32"})
+    public int embedBatchSize;
+
+    private EmbeddingModel embeddingModel;
+    private EmbeddingStore<TextSegment> store;
+    private IngestionPipeline pipeline;
+    private Document document;
+    private List<TextSegment> chunks;
+    private Path documentsDir;
+    private DocumentLoader loader;
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkFixtures.silenceStdout();
+        embeddingModel = BenchmarkFixtures.embeddingModel();
+        store = new BenchmarkFixtures.FixedEmbeddingStore(new ArrayList<>());
+        pipeline = new IngestionPipeline(embeddingModel, store, embedBatchSize, 256, 4, 8);
+        document = Document.from(BenchmarkFixtures.text(200_000, 1));
+        chunks = DocumentSplitters.recursive(500, 100).split(document);
+
+        documentsDir = Files.createTempDirectory("rag-bench-docs");
+        for (int i = 0; i < 20; i++) {
+            Files.writeString(documentsDir.resolve("doc" + i + ".txt"), BenchmarkFixtures.text(20_000, i));
+        }
+        loader = new DocumentLoader(embeddingModel, store, pipeline, null);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkFixtures.restoreStdout();
+        try (Stream<Path> files = Files.walk(documentsDir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public IngestionPipeline.Result pipelinedDocument() throws IOException {
+        return pipeline.ingest(document, DocumentSplitters.recursive(500, 100));
+    }
+
+    @Benchmark
+    public IngestionPipeline.Result perChunkBaseline() {
+        return pipeline.ingestPerChunk(chunks);
+    }
+
+    // Directory walk, parallel reading and splitting, then the shared pipeline (20 files x 20 KB)
+    @Benchmark
+    public void directory() throws IOException {
+        loader.ingestDirectory(documentsDir, List.of("**/*.txt"));
+    }
+}
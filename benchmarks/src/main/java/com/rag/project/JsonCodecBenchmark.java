@@ -0,0 +1,76 @@
+package com.rag.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Request parsing and response encoding done by the /ask handler
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonCodecBenchmark {
+
+    @Param({"100", "4000"})
+    public int answerChars;
+
+    private byte[] requestBody;
+    private RAGService.Answer answer;
+    private RAGWebServer.AskRequest plainRequest;
+    private RAGWebServer.AskRequest detailedRequest;
+    private String answerText;
+    private final OutputStream sink = OutputStream.nullOutputStream();
+
+    @Setup
+    public void setUp() {
+        requestBody = "{\"query\":\"What is the \\\"capital\\\" of France?\",\"sources\":true,\"timings\":true}"
+                .getBytes(StandardCharsets.UTF_8);
+        answerText = BenchmarkFixtures.text(answerChars, 3).replace(". ", ".\n\"Quoted\" ");
+        answer = BenchmarkFixtures.answer(answerText, BenchmarkFixtures.matches(3, 500));
+        plainRequest = new RAGWebServer.AskRequest();
+        detailedRequest = new RAGWebServer.AskRequest();
+        detailedRequest.sources = true;
+        detailedRequest.timings = true;
+    }
+
+    @Benchmark
+    public RAGWebServer.AskRequest parseRequest() throws IOException {
+        return RAGWebServer.AskRequest.read(new ByteArrayInputStream(requestBody));
+    }
+
+    @Benchmark
+    public void encodeAnswer() throws IOException {
+        JsonWriter json = JsonWriter.acquire(sink);
+        RAGWebServer.writeAnswer(json, answer, plainRequest);
+        json.release();
+    }
+
+    // With three 500-character sources and per-stage timings
+    @Benchmark
+    public void encodeAnswerWithSources() throws IOException {
+        JsonWriter json = JsonWriter.acquire(sink);
+        RAGWebServer.writeAnswer(json, answer, detailedRequest);
+        json.release();
+    }
+
+    @Benchmark
+    public String encodeSseToken() {
+        return JsonWriter.quote(answerText);
+    }
+}
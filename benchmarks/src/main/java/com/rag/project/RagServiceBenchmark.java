@@ -0,0 +1,56 @@
+package com.rag.project;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// RAGService.answer() overhead around the model calls, with instant stand-ins for Ollama and
+// the store. "cold" uses a new question every call, so the query and answer caches miss.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RagServiceBenchmark {
+
+    @Param({"cold", "warm"})
+    public String cache;
+
+    private RAGService service;
+    private List<EmbeddingMatch<TextSegment>> matches;
+    private long sequence;
+
+    @Setup
+    public void setUp() {
+        matches = BenchmarkFixtures.matches(3, 500);
+        service = new RAGService(new BenchmarkFixtures.FixedEmbeddingStore(matches),
+                BenchmarkFixtures.embeddingModel(), new BenchmarkFixtures.FixedChatModel(800));
+    }
+
+    @Benchmark
+    public String answer() {
+        String query = "cold".equals(cache)
+                ? "What is the capital of France, question " + (sequence++) + "?"
+                : "What is the capital of France?";
+        return service.answer(query);
+    }
+
+    @Benchmark
+    public String buildPrompt() {
+        return service.buildPrompt("What is the capital of France?", matches);
+    }
+}
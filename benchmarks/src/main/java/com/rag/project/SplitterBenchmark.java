@@ -0,0 +1,47 @@
+package com.rag.project;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// DocumentSplitters.recursive(500, 100) as used by DocumentLoader, on large single documents
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SplitterBenchmark {
+
+    @Param({"100000", "1000000", "10000000"})
+    public int chars;
+
+    private Document document;
+    private DocumentSplitter splitter;
+
+    @Setup
+    public void setUp() {
+        document = Document.from(BenchmarkFixtures.text(chars, 42));
+        splitter = DocumentSplitters.recursive(500, 100);
+    }
+
+    @Benchmark
+    public List<TextSegment> recursive() {
+        return splitter.split(document);
+    }
+}
@@ -0,0 +1,91 @@
+package com.rag.project;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Serves embeddings from the on-disk EmbeddingCache and only sends cache misses to the model
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final EmbeddingCache cache;
+    private final String modelName;
+
+    public CachingEmbeddingModel(EmbeddingModel delegate, EmbeddingCache cache, String modelName) {
+        this.delegate = delegate;
+        this.cache = cache;
+        // Ollama resolves "name" and "name:latest" to the same model
+        this.modelName = modelName.endsWith(":latest")
+                ? modelName.substring(0, modelName.length() - ":latest".length())
+                : modelName;
+    }
+
+    // Wraps the model with the cache configured by rag.embeddingCache.*, or returns it unchanged
+    // when the cache is disabled or cannot be opened
+    public static EmbeddingModel wrap(EmbeddingModel delegate, String modelName) {
+        if (!RAGConfig.embeddingCacheEnabled()) {
+            return delegate;
+        }
+        try {
+            EmbeddingCache cache = EmbeddingCache.open(
+                    Paths.get(RAGConfig.embeddingCachePath()),
+                    RAGConfig.embeddingDimension(),
+                    RAGConfig.embeddingCacheMaxEntries());
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    System.out.println("Embedding cache: " + cache.stats());
+                    cache.close();
+                } catch (IOException e) {
+                    System.err.println("Failed to close embedding cache: " + e.getMessage());
+                }
+            }));
+            return new CachingEmbeddingModel(delegate, cache, modelName);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Embedding cache disabled: " + e.getMessage());
+            return delegate;
+        }
+    }
+
+    public EmbeddingCache cache() {
+        return cache;
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        Embedding[] embeddings = new Embedding[segments.size()];
+        EmbeddingCache.Key[] keys = new EmbeddingCache.Key[segments.size()];
+        List<TextSegment> missing = new ArrayList<>();
+        List<Integer> missingPositions = new ArrayList<>();
+
+        for (int i = 0; i < segments.size(); i++) {
+            keys[i] = EmbeddingCache.key(modelName, cache.dimension(), segments.get(i).text());
+            float[] vector = cache.get(keys[i]);
+            if (vector != null) {
+                embeddings[i] = Embedding.from(vector);
+            } else {
+                missing.add(segments.get(i));
+                missingPositions.add(i);
+            }
+        }
+
+        if (missing.isEmpty()) {
+            return Response.from(Arrays.asList(embeddings));
+        }
+
+        Response<List<Embedding>> response = delegate.embedAll(missing);
+        List<Embedding> computed = response.content();
+        for (int j = 0; j < computed.size(); j++) {
+            int position = missingPositions.get(j);
+            embeddings[position] = computed.get(j);
+            cache.put(keys[position], computed.get(j).vector());
+        }
+        return Response.from(Arrays.asList(embeddings), response.tokenUsage(), response.finishReason());
+    }
+}
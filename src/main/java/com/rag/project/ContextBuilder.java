@@ -0,0 +1,356 @@
+package com.rag.project;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Turns search matches into the context part of the prompt. Segments of one source whose
+// "index" metadata is consecutive are merged into one passage, without the overlap the
+// splitter repeats at the start of each segment. Passages mostly contained in a more relevant
+// one are dropped, and the rest are added most relevant first until the token budget is used.
+// Token counts come from estimateTokens(), a local approximation of a BPE tokenizer.
+public class ContextBuilder {
+
+    private static final Metrics.Counter MERGED = Metrics.counter("rag_context_segments_merged_total",
+            "Retrieved segments merged into an adjacent one from the same source");
+    private static final Metrics.Counter DUPLICATES = Metrics.counter("rag_context_segments_dropped_total",
+            "Retrieved segments left out of the prompt", "reason", "duplicate");
+    private static final Metrics.Counter OVER_BUDGET = Metrics.counter("rag_context_segments_dropped_total",
+            "Retrieved segments left out of the prompt", "reason", "budget");
+
+    // Shorter suffix/prefix matches are more likely to be coincidence than splitter overlap
+    private static final int MIN_OVERLAP_CHARS = 16;
+    // A passage is cut to fit the remaining budget only if at least this much is left
+    private static final int MIN_TRUNCATED_TOKENS = 64;
+    private static final int SHINGLE_WORDS = 3;
+
+    private final int maxTokens;
+    private final double duplicateThreshold;
+
+    public ContextBuilder(int maxTokens, double duplicateThreshold) {
+        this.maxTokens = Math.max(1, maxTokens);
+        this.duplicateThreshold = duplicateThreshold;
+    }
+
+    public static ContextBuilder fromConfig() {
+        return new ContextBuilder(RAGConfig.contextMaxTokens(), RAGConfig.contextDuplicateThreshold());
+    }
+
+    public Context build(List<EmbeddingMatch<TextSegment>> matches) {
+        List<Passage> passages = merge(matches);
+        passages.sort(Comparator.comparingDouble((Passage passage) -> passage.score).reversed());
+
+        StringBuilder text = new StringBuilder();
+        List<long[]> selected = new ArrayList<>();
+        int tokens = 0;
+        int segments = 0;
+        int duplicates = 0;
+        int overBudget = 0;
+        for (Passage passage : passages) {
+            long[] shingles = shingles(passage.text);
+            if (isDuplicate(shingles, selected)) {
+                duplicates += passage.segments;
+                continue;
+            }
+            String piece = passage.text;
+            int pieceTokens = estimateTokens(piece);
+            int remaining = maxTokens - tokens;
+            if (pieceTokens > remaining) {
+                // The most relevant passage is always included, cut down if it has to be
+                if (remaining < MIN_TRUNCATED_TOKENS && tokens > 0) {
+                    overBudget += passage.segments;
+                    continue;
+                }
+                piece = truncate(piece, remaining);
+                if (piece.isEmpty()) {
+                    overBudget += passage.segments;
+                    continue;
+                }
+                pieceTokens = estimateTokens(piece);
+            }
+            if (text.length() > 0) {
+                text.append("\n\n");
+            }
+            text.append(piece);
+            tokens += pieceTokens;
+            segments += passage.segments;
+            selected.add(shingles);
+        }
+
+        int merged = 0;
+        for (Passage passage : passages) {
+            merged += passage.segments - 1;
+        }
+        MERGED.add(merged);
+        DUPLICATES.add(duplicates);
+        OVER_BUDGET.add(overBudget);
+        return new Context(text.toString(), tokens, segments, merged, duplicates, overBudget);
+    }
+
+    // Groups segments by source and joins runs of consecutive indexes; segments without
+    // source or index metadata stay as they are
+    private static List<Passage> merge(List<EmbeddingMatch<TextSegment>> matches) {
+        List<Passage> passages = new ArrayList<>();
+        Map<String, List<Passage>> bySource = new LinkedHashMap<>();
+        for (EmbeddingMatch<TextSegment> match : matches) {
+            TextSegment segment = match.embedded();
+            if (segment == null || segment.text() == null || segment.text().isBlank()) {
+                continue;
+            }
+            double score = match.score() == null ? 0 : match.score();
+            String source = segment.metadata().get(DirectoryIngestor.SOURCE_METADATA);
+            int index = parseIndex(segment.metadata().get("index"));
+            Passage passage = new Passage(segment.text(), score, index);
+            if (source == null || index < 0) {
+                passages.add(passage);
+            } else {
+                bySource.computeIfAbsent(source, key -> new ArrayList<>()).add(passage);
+            }
+        }
+
+        for (List<Passage> group : bySource.values()) {
+            group.sort(Comparator.comparingInt(passage -> passage.first));
+            Passage current = null;
+            for (Passage passage : group) {
+                if (current != null && passage.first == current.last + 1) {
+                    current.append(passage);
+                } else if (current != null && passage.first == current.last) {
+                    // The same segment returned twice, e.g. from stale duplicates in the store
+                    current.score = Math.max(current.score, passage.score);
+                    current.segments++;
+                } else {
+                    if (current != null) {
+                        passages.add(current);
+                    }
+                    current = passage;
+                }
+            }
+            passages.add(current);
+        }
+        return passages;
+    }
+
+    private static int parseIndex(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // The next segment starts with the last sentences of the previous one; keep them once
+    static String joinOverlapping(String first, String second) {
+        for (int k = Math.min(first.length(), second.length()); k >= MIN_OVERLAP_CHARS; k--) {
+            if (first.regionMatches(first.length() - k, second, 0, k)) {
+                return first + second.substring(k);
+            }
+        }
+        return first + "\n\n" + second;
+    }
+
+    // True if most of the candidate's word shingles already appear in one selected passage
+    private boolean isDuplicate(long[] candidate, List<long[]> selected) {
+        if (candidate.length == 0) {
+            return false;
+        }
+        for (long[] other : selected) {
+            int shared = 0;
+            int i = 0;
+            int j = 0;
+            while (i < candidate.length && j < other.length) {
+                if (candidate[i] == other[j]) {
+                    shared++;
+                    i++;
+                    j++;
+                } else if (candidate[i] < other[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            if (shared >= duplicateThreshold * candidate.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Sorted, distinct hashes of every run of SHINGLE_WORDS lower-cased words
+    private static long[] shingles(String text) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        int count = Math.max(words.isEmpty() ? 0 : 1, words.size() - SHINGLE_WORDS + 1);
+        long[] hashes = new long[count];
+        for (int i = 0; i < count; i++) {
+            long hash = 1125899906842597L;
+            for (int w = i; w < Math.min(words.size(), i + SHINGLE_WORDS); w++) {
+                hash = 31 * hash + words.get(w).hashCode();
+                hash ^= hash >>> 29;
+            }
+            hashes[i] = hash;
+        }
+        Arrays.sort(hashes);
+        int distinct = 0;
+        for (int i = 0; i < hashes.length; i++) {
+            if (i == 0 || hashes[i] != hashes[i - 1]) {
+                hashes[distinct++] = hashes[i];
+            }
+        }
+        return Arrays.copyOf(hashes, distinct);
+    }
+
+    // Cuts the text to about maxTokens, at the last sentence end if one is in the second half,
+    // else at the last space
+    private static String truncate(String text, int maxTokens) {
+        int end = fit(text, maxTokens);
+        if (end >= text.length()) {
+            return text;
+        }
+        int cut = -1;
+        for (int i = end - 1; i > end / 2; i--) {
+            char c = text.charAt(i);
+            if ((c == '.' || c == '!' || c == '?') && (i + 1 == text.length() || Character.isWhitespace(text.charAt(i + 1)))) {
+                cut = i + 1;
+                break;
+            }
+        }
+        if (cut < 0) {
+            cut = end;
+            while (cut > 0 && !Character.isWhitespace(text.charAt(cut))) {
+                cut--;
+            }
+        }
+        return text.substring(0, cut).trim();
+    }
+
+    // Approximates a BPE tokenizer on English text: a word costs one token per four letters
+    // (rounded up), numbers one per three digits, and each punctuation mark, symbol or CJK
+    // character one. Whitespace is free, as tokenizers fold it into the next word. Close
+    // enough for a budget, without loading the model's vocabulary.
+    public static int estimateTokens(CharSequence text) {
+        return scan(text, Integer.MAX_VALUE, false);
+    }
+
+    // Length of the longest prefix estimated at no more than maxTokens
+    private static int fit(CharSequence text, int maxTokens) {
+        return scan(text, maxTokens, true);
+    }
+
+    private static int scan(CharSequence text, int maxTokens, boolean returnLength) {
+        int tokens = 0;
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            int start = i;
+            int cost;
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            } else if (c >= '0' && c <= '9') {
+                while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+                    i++;
+                }
+                cost = (i - start + 2) / 3;
+            } else if (Character.isLetter(c) && !Character.isIdeographic(c)) {
+                while (i < length && Character.isLetter(text.charAt(i)) && !Character.isIdeographic(text.charAt(i))) {
+                    i++;
+                }
+                cost = (i - start + 3) / 4;
+            } else {
+                i++;
+                cost = 1;
+            }
+            if (tokens + cost > maxTokens) {
+                return returnLength ? start : tokens;
+            }
+            tokens += cost;
+        }
+        return returnLength ? length : tokens;
+    }
+
+    // The assembled context and what happened to the retrieved segments
+    public static class Context {
+        private final String text;
+        private final int tokens;
+        private final int segments;
+        private final int merged;
+        private final int duplicates;
+        private final int overBudget;
+
+        Context(String text, int tokens, int segments, int merged, int duplicates, int overBudget) {
+            this.text = text;
+            this.tokens = tokens;
+            this.segments = segments;
+            this.merged = merged;
+            this.duplicates = duplicates;
+            this.overBudget = overBudget;
+        }
+
+        public String text() {
+            return text;
+        }
+
+        public int tokens() {
+            return tokens;
+        }
+
+        // Retrieved segments whose text is in the context, counting merged ones
+        public int segments() {
+            return segments;
+        }
+
+        public int merged() {
+            return merged;
+        }
+
+        public int duplicates() {
+            return duplicates;
+        }
+
+        public int overBudget() {
+            return overBudget;
+        }
+    }
+
+    private static class Passage {
+        String text;
+        double score;
+        final int first;
+        int last;
+        int segments = 1;
+
+        Passage(String text, double score, int index) {
+            this.text = text;
+            this.score = score;
+            this.first = index;
+            this.last = index;
+        }
+
+        void append(Passage next) {
+            text = joinOverlapping(text, next.text);
+            score = Math.max(score, next.score);
+            last = next.last;
+            segments += next.segments;
+        }
+    }
+}
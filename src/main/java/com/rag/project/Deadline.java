@@ -0,0 +1,280 @@
+package com.rag.project;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Time budget of one request, shared by every stage that works on it. A deadline ends when
+// its time is up or when cancel() is called, e.g. because the client disconnected. Stages
+// check it before they start and wait for their work with call(), which gives up as soon as
+// the deadline ends. Model calls cannot take a deadline through langchain4j's interfaces, so
+// call() binds it to the thread doing the work, where OllamaBackendPool and ModelScheduler
+// read it with current() to bound their waits.
+public class Deadline {
+
+    public static final Deadline NONE = new Deadline(Long.MAX_VALUE, false);
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+    private static final AtomicInteger BUSY = new AtomicInteger();
+    private static final AtomicInteger ABANDONED = new AtomicInteger();
+    // Abandoned work keeps its thread until the model call returns. When all
+    // rag.server.stageWorkers are busy, work runs on the caller's thread instead: it is still
+    // checked and its waits still end with the deadline, but it cannot be abandoned midway.
+    private static final ThreadPoolExecutor WORKERS = new ThreadPoolExecutor(0, RAGConfig.stageWorkers(),
+            60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "rag-deadline-worker");
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+    private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "rag-deadline-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        TIMER.setRemoveOnCancelPolicy(true);
+        Metrics.gauge("rag_stage_workers_busy", "Stage calls running under a request deadline", "gauge", BUSY::get);
+        Metrics.gauge("rag_stage_calls_abandoned", "Stage calls given up on by their request but still running", "gauge",
+                ABANDONED::get);
+    }
+
+    private final long expiresAt;
+    private final boolean bounded;
+    private final Set<Runnable> listeners = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean dropped = new AtomicBoolean();
+    private volatile String cancelled;
+    private ScheduledFuture<?> timer;
+
+    private Deadline(long expiresAt, boolean bounded) {
+        this.expiresAt = expiresAt;
+        this.bounded = bounded;
+    }
+
+    // Ends `millis` after `startNanos` (a System.nanoTime() value); 0 or less means no limit
+    public static Deadline after(long startNanos, long millis) {
+        return new Deadline(millis > 0 ? startNanos + TimeUnit.MILLISECONDS.toNanos(millis) : Long.MAX_VALUE, millis > 0);
+    }
+
+    // Without a time limit, but can still be cancelled
+    public static Deadline cancellable() {
+        return new Deadline(Long.MAX_VALUE, false);
+    }
+
+    // The deadline bound to this thread by call(), or NONE
+    public static Deadline current() {
+        Deadline deadline = CURRENT.get();
+        return deadline == null ? NONE : deadline;
+    }
+
+    public long remainingNanos() {
+        if (cancelled != null) {
+            return 0;
+        }
+        return bounded ? Math.max(0, expiresAt - System.nanoTime()) : Long.MAX_VALUE;
+    }
+
+    public boolean expired() {
+        return remainingNanos() == 0;
+    }
+
+    // The shorter of `timeoutNanos` and the time left
+    public long cap(long timeoutNanos) {
+        return Math.min(timeoutNanos, remainingNanos());
+    }
+
+    // Ends the deadline now; work waiting in call() gives up and later checks fail
+    public void cancel(String reason) {
+        if (this == NONE || cancelled != null) {
+            return;
+        }
+        cancelled = reason;
+        fire();
+    }
+
+    // Throws if the deadline has ended, counting the request as dropped at this stage
+    public void check(String stage) {
+        if (expired()) {
+            throw exceeded(stage);
+        }
+    }
+
+    // Counted once per deadline, at the first stage to notice, although abandoned work may
+    // notice again on its own thread
+    public ExceededException exceeded(String stage) {
+        String reason = cancelled != null ? "cancelled" : "deadline";
+        if (dropped.compareAndSet(false, true)) {
+            Metrics.counter("rag_requests_dropped_total", "Requests abandoned because their deadline passed or they were cancelled",
+                    "stage", stage, "reason", reason).increment();
+        }
+        return new ExceededException(stage, cancelled != null
+                ? "Request cancelled during " + stage + ": " + cancelled
+                : "Deadline exceeded during " + stage);
+    }
+
+    // Runs the work with this deadline bound to the thread. For NONE it runs inline;
+    // otherwise it runs on a worker while the caller waits no longer than the deadline. Work
+    // left behind is interrupted, which ends any wait for a model slot; a model call already
+    // sent runs to completion and its result is dropped. Meant for model calls, which can
+    // block for long; see inline() for quick stages.
+    public <T> T call(String stage, Supplier<T> work) {
+        check(stage);
+        if (this == NONE) {
+            return work.get();
+        }
+        Task<T> task = new Task<>(this, work);
+        Future<T> future = WORKERS.submit(task);
+        Runnable abandon = () -> future.cancel(true);
+        onEnd(abandon);
+        try {
+            return future.get();
+        } catch (CancellationException e) {
+            task.abandon();
+            throw exceeded(stage);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            task.abandon();
+            throw exceeded(stage);
+        } finally {
+            removeListener(abandon);
+        }
+    }
+
+    // Runs the work on the calling thread with this deadline bound, without a thread hop.
+    // It is checked before it starts but not abandoned midway.
+    public <T> T inline(String stage, Supplier<T> work) {
+        check(stage);
+        Deadline previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return work.get();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    // Runs `listener` once when the deadline ends, unless removed first
+    public void onEnd(Runnable listener) {
+        if (this == NONE) {
+            return;
+        }
+        listeners.add(listener);
+        synchronized (this) {
+            if (bounded && timer == null && cancelled == null) {
+                timer = TIMER.schedule(this::fire, Math.max(0, expiresAt - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+        }
+        if (expired()) {
+            fire();
+        }
+    }
+
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    // Ends the timer of a request that finished before its deadline
+    public void close() {
+        listeners.clear();
+        synchronized (this) {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+        }
+    }
+
+    private void fire() {
+        for (Runnable listener : listeners) {
+            if (listeners.remove(listener)) {
+                listener.run();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (cancelled != null) {
+            return "cancelled (" + cancelled + ")";
+        }
+        return bounded ? String.format(Locale.ROOT, "%.0f ms left", remainingNanos() / 1e6) : "no deadline";
+    }
+
+    // Work run by call(); counted as abandoned from when its caller gives up until it returns
+    private static class Task<T> implements Callable<T> {
+        private static final int NEW = 0;
+        private static final int RUNNING = 1;
+        private static final int DONE = 2;
+        private static final int ABANDONED_RUNNING = 3;
+        private static final int ABANDONED_UNSTARTED = 4;
+
+        private final Deadline deadline;
+        private final Supplier<T> work;
+        private final AtomicInteger state = new AtomicInteger(NEW);
+
+        Task(Deadline deadline, Supplier<T> work) {
+            this.deadline = deadline;
+            this.work = work;
+        }
+
+        @Override
+        public T call() {
+            if (!state.compareAndSet(NEW, RUNNING)) {
+                return null;
+            }
+            BUSY.incrementAndGet();
+            Deadline previous = CURRENT.get();
+            CURRENT.set(deadline);
+            try {
+                return work.get();
+            } finally {
+                CURRENT.set(previous);
+                BUSY.decrementAndGet();
+                if (!state.compareAndSet(RUNNING, DONE)) {
+                    ABANDONED.decrementAndGet();
+                }
+            }
+        }
+
+        void abandon() {
+            if (state.compareAndSet(RUNNING, ABANDONED_RUNNING)) {
+                ABANDONED.incrementAndGet();
+            } else {
+                state.compareAndSet(NEW, ABANDONED_UNSTARTED);
+            }
+        }
+    }
+
+    // Thrown by stages that start or wait after the deadline ended
+    public static class ExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final String stage;
+
+        ExceededException(String stage, String message) {
+            super(message);
+            this.stage = stage;
+        }
+
+        public String stage() {
+            return stage;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.rag.project;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
+import dev.langchain4j.data.document.parser.TextDocumentParser;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Walks a directory tree and ingests every file matching the glob patterns.
+// Files are read and split in parallel on a bounded pool sized to the cores, and all of
+// their segments feed one shared IngestionPipeline, so the number of embedding calls in
+// flight is set by the pipeline (i.e. by the embedding backends), not by the file count.
+// Files over the streaming threshold are split as they are read, so a multi-GB file costs
+// no more memory than the segment queue.
+public class DirectoryIngestor {
+
+    public static final String SOURCE_METADATA = "source";
+    // Set on every segment, so searches can be scoped to them (see SearchScope)
+    public static final String COLLECTION_METADATA = "collection";
+    public static final String TENANT_METADATA = "tenant";
+
+    private static final TextSegment END_OF_FILES = TextSegment.from("<end-of-files>");
+
+    private final IngestionPipeline pipeline;
+    private final Supplier<DocumentSplitter> splitterFactory;
+    private final StreamingTextSplitter streamingSplitter;
+    private final int fileConcurrency;
+    private final int queueCapacity;
+
+    public DirectoryIngestor(IngestionPipeline pipeline,
+                             Supplier<DocumentSplitter> splitterFactory,
+                             StreamingTextSplitter streamingSplitter,
+                             int fileConcurrency,
+                             int queueCapacity) {
+        this.pipeline = pipeline;
+        this.splitterFactory = splitterFactory;
+        this.streamingSplitter = streamingSplitter;
+        this.fileConcurrency = Math.max(1, fileConcurrency);
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    public IngestionPipeline.Result ingest(Path root, List<String> globs) throws IOException {
+        List<Path> files = findFiles(root, globs);
+        System.out.println("Found " + files.size() + " files under " + root.toAbsolutePath() + " matching " + globs);
+        if (files.isEmpty()) {
+            return pipeline.ingest(new ArrayList<>());
+        }
+
+        BlockingQueue<TextSegment> segments = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicInteger remaining = new AtomicInteger(files.size());
+        AtomicInteger failed = new AtomicInteger();
+
+        ExecutorService readers = Executors.newFixedThreadPool(Math.min(fileConcurrency, files.size()), runnable -> {
+            Thread thread = new Thread(runnable, "ingest-reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (Path file : files) {
+                readers.execute(() -> readFile(root, file, segments, remaining, failed));
+            }
+            IngestionPipeline.Result result = pipeline.ingest(() -> new QueueIterator(segments));
+            System.out.println("Ingested " + (files.size() - failed.get()) + "/" + files.size() + " files: " + result);
+            return result;
+        } finally {
+            readers.shutdownNow();
+        }
+    }
+
+    public static List<Path> findFiles(Path root, List<String> globs) throws IOException {
+        if (!Files.isDirectory(root)) {
+            throw new IOException("Not a directory: " + root.toAbsolutePath());
+        }
+        Predicate<Path> matcher = matcher(root, globs);
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(matcher)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    // Matches paths under root against the globs, which are relative to root
+    public static Predicate<Path> matcher(Path root, List<String> globs) {
+        List<PathMatcher> matchers = new ArrayList<>();
+        for (String glob : globs) {
+            matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+            // "**/*.txt" needs at least one directory level, so also match files directly under root
+            if (glob.startsWith("**/")) {
+                matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + glob.substring(3)));
+            }
+        }
+        return path -> {
+            Path relative = root.relativize(path);
+            return matchers.stream().anyMatch(matcher -> matcher.matches(relative));
+        };
+    }
+
+    public static Document loadDocument(Path root, Path file) {
+        Document document = FileSystemDocumentLoader.loadDocument(file, new TextDocumentParser());
+        tag(document.metadata(), root, file);
+        return document;
+    }
+
+    // Source, collection and tenant of a file under root
+    public static Metadata tag(Metadata metadata, Path root, Path file) {
+        return metadata.add(SOURCE_METADATA, sourceOf(root, file))
+                .add(COLLECTION_METADATA, collectionOf(root, file))
+                .add(TENANT_METADATA, RAGConfig.ingestTenant());
+    }
+
+    // Source paths are stored with '/' separators so manifests are portable across platforms
+    public static String sourceOf(Path root, Path file) {
+        return root.relativize(file).toString().replace('\\', '/');
+    }
+
+    // The top-level folder under root, e.g. "manuals" for manuals/install/setup.txt
+    public static String collectionOf(Path root, Path file) {
+        Path relative = root.relativize(file);
+        return relative.getNameCount() > 1 ? relative.getName(0).toString() : RAGConfig.defaultDocumentCollection();
+    }
+
+    private void readFile(Path root, Path file,
+                          BlockingQueue<TextSegment> segments,
+                          AtomicInteger remaining,
+                          AtomicInteger failed) {
+        try {
+            Iterator<TextSegment> fileSegments = StreamingTextSplitter.shouldStream(file)
+                    ? streamingSplitter.split(root, file)
+                    : splitterFactory.get().split(loadDocument(root, file)).iterator();
+            while (fileSegments.hasNext()) {
+                segments.put(fileSegments.next());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            System.err.println("Failed to load " + file + ": " + e.getMessage());
+        } finally {
+            if (remaining.decrementAndGet() == 0) {
+                try {
+                    segments.put(END_OF_FILES);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    // Blocks on the reader queue until every file has been split
+    private static class QueueIterator implements Iterator<TextSegment> {
+        private final BlockingQueue<TextSegment> queue;
+        private TextSegment next;
+        private boolean done;
+
+        QueueIterator(BlockingQueue<TextSegment> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !done) {
+                try {
+                    TextSegment segment = queue.take();
+                    if (segment == END_OF_FILES) {
+                        done = true;
+                    } else {
+                        next = segment;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    done = true;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public TextSegment next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            TextSegment segment = next;
+            next = null;
+            return segment;
+        }
+    }
+}
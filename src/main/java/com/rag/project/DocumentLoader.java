@@ -1,8 +1,6 @@
 package com.rag.project;
 
 import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
-import dev.langchain4j.data.document.parser.TextDocumentParser;
 import dev.langchain4j.data.document.splitter.DocumentSplitters;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
@@ -11,46 +9,138 @@ import dev.langchain4j.store.embedding.EmbeddingStore;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 public class DocumentLoader {
     
+    private static final LatencyHistogram SYNC_TIME = Metrics.histogram(IncrementalIndexer.RUN_METRIC, IncrementalIndexer.RUN_HELP);
+    
     private final EmbeddingModel embeddingModel;
     private final EmbeddingStore<TextSegment> embeddingStore;
+    private final IngestionPipeline pipeline;
+    private final EmbeddingRemover remover;
+    private IncrementalIndexer indexer;
     
     public DocumentLoader(EmbeddingModel embeddingModel, EmbeddingStore<TextSegment> embeddingStore) {
+        this(embeddingModel, embeddingStore, null);
+    }
+    
+    public DocumentLoader(EmbeddingModel embeddingModel, EmbeddingStore<TextSegment> embeddingStore, EmbeddingRemover remover) {
+        this(embeddingModel, embeddingStore, IngestionPipeline.fromConfig(embeddingModel, embeddingStore), remover);
+    }
+    
+    public DocumentLoader(EmbeddingModel embeddingModel, EmbeddingStore<TextSegment> embeddingStore,
+                          IngestionPipeline pipeline, EmbeddingRemover remover) {
         this.embeddingModel = embeddingModel;
         this.embeddingStore = embeddingStore;
+        this.pipeline = pipeline;
+        this.remover = remover;
+    }
+    
+    // Ingests every file under rag.documents.dir matching rag.documents.globs
+    public void ingestDocuments() throws IOException {
+        Path root = Paths.get(RAGConfig.documentsDir());
+        if (RAGConfig.incrementalIndexing()) {
+            // Only new or changed chunks are embedded; stale ones are deleted
+            if (!root.toFile().isDirectory()) {
+                System.err.println("Directory not found: " + root.toAbsolutePath());
+                return;
+            }
+            indexer().sync(root, RAGConfig.documentGlobs());
+        } else {
+            long start = System.nanoTime();
+            ingestDirectory(root, RAGConfig.documentGlobs());
+            SYNC_TIME.recordSince(start);
+        }
+    }
+    
+    // Re-indexes files under rag.documents.dir in the background as they change
+    public DocumentWatcher watchDocuments() throws IOException {
+        DocumentWatcher watcher = new DocumentWatcher(indexer(), Paths.get(RAGConfig.documentsDir()), RAGConfig.documentGlobs());
+        watcher.start();
+        return watcher;
     }
     
-    public void ingestDocument() throws IOException {
-        Path path = Paths.get("documents/data.txt");
+    // Keeps the index in step with the store: inserted chunks are added, deleted ones removed,
+    // and on an incremental pass chunks already in the store are added from their files
+    public void indexLexically(LexicalIndex lexicalIndex) throws IOException {
+        pipeline.addInsertListener(lexicalIndex::addAll);
+        if (RAGConfig.incrementalIndexing()) {
+            indexer().addKeptListener(lexicalIndex::addAll);
+            indexer().addRemovalListener(lexicalIndex::removeAll);
+        }
+    }
+    
+    // Notified with the IDs of chunks deleted during incremental re-indexing
+    public void onChunksRemoved(Consumer<Collection<String>> listener) throws IOException {
+        indexer().addRemovalListener(listener);
+    }
+    
+    private synchronized IncrementalIndexer indexer() throws IOException {
+        if (indexer == null) {
+            IndexManifest manifest = IndexManifest.load(Paths.get(RAGConfig.indexManifestPath()));
+            indexer = new IncrementalIndexer(pipeline, remover, manifest,
+                    () -> DocumentSplitters.recursive(500, 100), new StreamingTextSplitter(500, 100),
+                    RAGConfig.fileConcurrency());
+        }
+        return indexer;
+    }
+    
+    public void ingestDirectory(Path root, List<String> globs) throws IOException {
+        // Check if directory exists
+        if (!root.toFile().isDirectory()) {
+            System.err.println("Directory not found: " + root.toAbsolutePath());
+            return;
+        }
         
+        if (RAGConfig.pipelinedIngestion()) {
+            // Files are read and split in parallel and share one embed/insert pipeline
+            DirectoryIngestor ingestor = new DirectoryIngestor(pipeline,
+                    () -> DocumentSplitters.recursive(500, 100),
+                    new StreamingTextSplitter(500, 100),
+                    RAGConfig.fileConcurrency(),
+                    RAGConfig.embedBatchSize() * RAGConfig.ingestQueueCapacity());
+            ingestor.ingest(root, globs);
+        } else {
+            for (Path file : DirectoryIngestor.findFiles(root, globs)) {
+                ingestFile(root, file);
+            }
+        }
+        
+        System.out.println("Documents ingested successfully into " + VectorStoreConfig.describe() + "!");
+    }
+    
+    public void ingestFile(Path root, Path file) throws IOException {
         // Check if file exists
-        if (!path.toFile().exists()) {
-            System.err.println("File not found: " + path.toAbsolutePath());
+        if (!file.toFile().exists()) {
+            System.err.println("File not found: " + file.toAbsolutePath());
             return;
         }
         
-        System.out.println("Loading document from: " + path.toAbsolutePath());
-        Document document = FileSystemDocumentLoader.loadDocument(path, new TextDocumentParser());
+        System.out.println("Loading document from: " + file.toAbsolutePath());
+        if (StreamingTextSplitter.shouldStream(file)) {
+            // Too large to hold in memory: segments go to the pipeline as the file is read
+            StreamingTextSplitter splitter = new StreamingTextSplitter(500, 100);
+            IngestionPipeline.Result result = pipeline.ingest(() -> splitter.split(root, file));
+            System.out.println("Ingested " + file.getFileName() + " (streamed): " + result);
+            return;
+        }
+        Document document = DirectoryIngestor.loadDocument(root, file);
         
-        // Split the document into chunks
         var splitter = DocumentSplitters.recursive(500, 100);
-        List<TextSegment> chunks = splitter.split(document);
-        
-        System.out.println("Document split into " + chunks.size() + " chunks");
+        IngestionPipeline.Result result;
         
-        // Generate embeddings and store them - Fixed for 0.26.1
-        for (int i = 0; i < chunks.size(); i++) {
-            TextSegment chunk = chunks.get(i);
-            System.out.println("Processing chunk " + (i + 1) + "/" + chunks.size());
-            
-            // Simple approach for 0.26.1
-            var embedding = embeddingModel.embed(chunk.text()).content();
-            embeddingStore.add(embedding, chunk);
+        if (RAGConfig.pipelinedIngestion()) {
+            // Split, embed and insert run concurrently with batched model and store calls
+            result = pipeline.ingest(document, splitter);
+        } else {
+            List<TextSegment> chunks = splitter.split(document);
+            System.out.println("Document split into " + chunks.size() + " chunks");
+            result = pipeline.ingestPerChunk(chunks);
         }
         
-        System.out.println("Document ingested successfully into Milvus!");
+        System.out.println("Ingested " + file.getFileName() + ": " + result);
     }
-}
\ No newline at end of file
+}
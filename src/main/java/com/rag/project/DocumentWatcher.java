@@ -0,0 +1,126 @@
+package com.rag.project;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Re-indexes files under the documents directory as they are created, modified or deleted.
+// Events are collected for a short quiet period so an editor save or a bulk copy becomes one sync.
+public class DocumentWatcher implements AutoCloseable {
+
+    private static final long DEBOUNCE_MILLIS = 500;
+
+    private final IncrementalIndexer indexer;
+    private final Path root;
+    private final List<String> globs;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private Thread thread;
+
+    public DocumentWatcher(IncrementalIndexer indexer, Path root, List<String> globs) throws IOException {
+        this.indexer = indexer;
+        this.root = root;
+        this.globs = globs;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        registerTree(root);
+    }
+
+    public void start() {
+        thread = new Thread(this::run, "document-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        System.out.println("Watching " + root.toAbsolutePath() + " for changes");
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                Set<Path> changed = new LinkedHashSet<>();
+                WatchKey key = watchService.take();
+                do {
+                    collect(key, changed);
+                    key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+                } while (key != null);
+
+                if (changed.isEmpty()) {
+                    continue;
+                }
+                try {
+                    if (changed.contains(root)) {
+                        indexer.sync(root, globs);
+                    } else {
+                        indexer.syncPaths(root, globs, changed);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Re-indexing failed: " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Shutting down
+        }
+    }
+
+    private void collect(WatchKey key, Set<Path> changed) {
+        Path directory = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                // Events were lost: fall back to checking the whole tree
+                changed.add(root);
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                try {
+                    registerTree(path);
+                    addFiles(path, changed);
+                } catch (IOException e) {
+                    System.err.println("Failed to watch " + path + ": " + e.getMessage());
+                }
+            } else {
+                changed.add(path);
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+    }
+
+    private void registerTree(Path start) throws IOException {
+        try (Stream<Path> paths = Files.walk(start)) {
+            for (Path directory : (Iterable<Path>) paths.filter(Files::isDirectory)::iterator) {
+                WatchKey key = directory.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+                directories.put(key, directory);
+            }
+        }
+    }
+
+    private static void addFiles(Path directory, Set<Path> changed) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.filter(Files::isRegularFile).forEach(changed::add);
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.rag.project;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+// Content-addressed embedding cache stored in a single memory-mapped file:
+//
+//   header  | magic, version, dimension, capacity            (16 bytes)
+//   index   | capacity x (128-bit key, all zero = empty slot,
+//           |             CRC32C of key and vector)          (24 bytes per slot)
+//   vectors | capacity x dimension raw float32               (4 * dimension bytes per slot)
+//
+// The index region is scanned at open to rebuild the in-memory key -> slot map. When the
+// cache is full, slots are reused with the CLOCK algorithm (an approximation of LRU).
+// The OS may write mapped pages back in any order, so after a crash a key can sit next to
+// another key's or a partly written vector; get() checks the CRC and drops such slots.
+public class EmbeddingCache implements Closeable {
+
+    private static final int MAGIC = 0x52414745; // "RAGE"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 16;
+    private static final int KEY_BYTES = 16;
+    private static final int ENTRY_BYTES = KEY_BYTES + 8;
+
+    private final Path file;
+    private final int dimension;
+    private final int capacity;
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final MappedByteBuffer buffer;
+    private final int vectorsOffset;
+
+    private final Map<Key, Integer> index = new HashMap<>();
+    private final Key[] slotKeys;
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private final BitSet referenced;
+    private int clockHand;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private EmbeddingCache(Path file, int dimension, int capacity, FileChannel channel, FileLock lock) throws IOException {
+        this.file = file;
+        this.dimension = dimension;
+        this.capacity = capacity;
+        this.channel = channel;
+        this.lock = lock;
+        this.vectorsOffset = HEADER_BYTES + capacity * ENTRY_BYTES;
+        this.slotKeys = new Key[capacity];
+        this.referenced = new BitSet(capacity);
+
+        long size = (long) vectorsOffset + (long) capacity * dimension * Float.BYTES;
+        boolean compatible = channel.size() == size && headerMatches();
+        if (!compatible) {
+            // Different layout (or a fresh file): start over rather than misread vectors
+            channel.truncate(0);
+        }
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        if (compatible) {
+            loadIndex();
+        } else {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, dimension);
+            buffer.putInt(12, capacity);
+            for (int slot = 0; slot < capacity; slot++) {
+                freeSlots.add(slot);
+            }
+        }
+    }
+
+    public static EmbeddingCache open(Path file, int dimension, int capacity) throws IOException {
+        if (dimension <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("dimension and capacity must be positive");
+        }
+        long size = HEADER_BYTES + (long) capacity * (ENTRY_BYTES + (long) dimension * Float.BYTES);
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cache of " + capacity + " x " + dimension
+                    + " floats exceeds the 2 GB mapping limit, lower the capacity");
+        }
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileLock lock = channel.tryLock();
+        if (lock == null) {
+            channel.close();
+            throw new IOException("Embedding cache " + file + " is in use by another process");
+        }
+        return new EmbeddingCache(file, dimension, capacity, channel, lock);
+    }
+
+    // 128 bits of SHA-256 over (model, dimension, text)
+    public static Key key(String modelName, int dimension, String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(modelName.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(Integer.toString(dimension).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            ByteBuffer hash = ByteBuffer.wrap(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+            return new Key(hash.getLong(), hash.getLong());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    public synchronized float[] get(Key key) {
+        Integer slot = index.get(key);
+        if (slot == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        int entryOffset = HEADER_BYTES + slot * ENTRY_BYTES;
+        if (buffer.getLong(entryOffset + KEY_BYTES) != checksum(key, slot)) {
+            // Torn or mismatched write from before a crash; recompute rather than serve it
+            clearSlot(slot);
+            freeSlots.add(slot);
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        referenced.set(slot);
+        float[] vector = new float[dimension];
+        int offset = vectorsOffset + slot * dimension * Float.BYTES;
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = buffer.getFloat(offset + i * Float.BYTES);
+        }
+        return vector;
+    }
+
+    public synchronized void put(Key key, float[] vector) {
+        if (vector.length != dimension || key.isEmpty()) {
+            return;
+        }
+        Integer existing = index.get(key);
+        int slot = existing != null ? existing : allocateSlot();
+
+        // The slot's old key is cleared first, then the vector and finally the key and its
+        // CRC are written; the CRC catches pages that reach the disk out of this order
+        int entryOffset = HEADER_BYTES + slot * ENTRY_BYTES;
+        buffer.putLong(entryOffset, 0);
+        buffer.putLong(entryOffset + 8, 0);
+        int offset = vectorsOffset + slot * dimension * Float.BYTES;
+        for (int i = 0; i < dimension; i++) {
+            buffer.putFloat(offset + i * Float.BYTES, vector[i]);
+        }
+        buffer.putLong(entryOffset + KEY_BYTES, checksum(key, slot));
+        buffer.putLong(entryOffset, key.high);
+        buffer.putLong(entryOffset + 8, key.low);
+
+        index.put(key, slot);
+        slotKeys[slot] = key;
+        referenced.set(slot);
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    public String stats() {
+        long total = hits() + misses();
+        return String.format("%d/%d entries, %d hits, %d misses (%.1f%% hit rate), %d evictions",
+                size(), capacity, hits(), misses(), total == 0 ? 0.0 : 100.0 * hits() / total, evictions());
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        lock.release();
+        channel.close();
+    }
+
+    private int allocateSlot() {
+        Integer free = freeSlots.poll();
+        if (free != null) {
+            return free;
+        }
+        while (referenced.get(clockHand)) {
+            referenced.clear(clockHand);
+            clockHand = (clockHand + 1) % capacity;
+        }
+        int victim = clockHand;
+        clockHand = (clockHand + 1) % capacity;
+        index.remove(slotKeys[victim]);
+        slotKeys[victim] = null;
+        evictions.incrementAndGet();
+        return victim;
+    }
+
+    private long checksum(Key key, int slot) {
+        CRC32C crc = new CRC32C();
+        ByteBuffer keyBytes = ByteBuffer.allocate(KEY_BYTES);
+        keyBytes.putLong(key.high).putLong(key.low).flip();
+        crc.update(keyBytes);
+        ByteBuffer vector = buffer.duplicate();
+        int offset = vectorsOffset + slot * dimension * Float.BYTES;
+        vector.limit(offset + dimension * Float.BYTES).position(offset);
+        crc.update(vector);
+        return crc.getValue();
+    }
+
+    private void clearSlot(int slot) {
+        Key key = slotKeys[slot];
+        if (key != null) {
+            index.remove(key);
+            slotKeys[slot] = null;
+        }
+        referenced.clear(slot);
+        int entryOffset = HEADER_BYTES + slot * ENTRY_BYTES;
+        buffer.putLong(entryOffset, 0);
+        buffer.putLong(entryOffset + 8, 0);
+    }
+
+    private boolean headerMatches() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        channel.read(header, 0);
+        header.flip();
+        return header.remaining() == HEADER_BYTES
+                && header.getInt() == MAGIC
+                && header.getInt() == VERSION
+                && header.getInt() == dimension
+                && header.getInt() == capacity;
+    }
+
+    private void loadIndex() {
+        for (int slot = 0; slot < capacity; slot++) {
+            int entryOffset = HEADER_BYTES + slot * ENTRY_BYTES;
+            Key key = new Key(buffer.getLong(entryOffset), buffer.getLong(entryOffset + 8));
+            if (key.isEmpty()) {
+                freeSlots.add(slot);
+            } else {
+                index.put(key, slot);
+                slotKeys[slot] = key;
+            }
+        }
+        System.out.println("Loaded " + index.size() + " cached embeddings from " + file.toAbsolutePath());
+    }
+
+    public static final class Key {
+        private final long high;
+        private final long low;
+
+        Key(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        boolean isEmpty() {
+            return high == 0 && low == 0;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return high == other.high && low == other.low;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(high * 31 + low);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.rag.project;
+
+import java.util.Collection;
+
+// Deletes stored embeddings by ID. EmbeddingStore has no remove operation in
+// langchain4j 0.26.1, so each backend provides its own implementation.
+public interface EmbeddingRemover {
+
+    void removeAll(Collection<String> ids);
+}
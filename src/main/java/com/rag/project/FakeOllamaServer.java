@@ -0,0 +1,181 @@
+package com.rag.project;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+
+// Stand-in for the Ollama HTTP API used by langchain4j (/api/embeddings, /api/chat,
+// /api/generate, /api/tags). Embeddings are derived from the request body; answers are
+// streamed word by word after a fixed delay and at a fixed token rate. Every request is
+// served on its own thread, so the fake is never the bottleneck of a load test.
+public class FakeOllamaServer implements AutoCloseable {
+
+    private static final Pattern STREAM_OFF = Pattern.compile("\"stream\"\\s*:\\s*false");
+    private static final String[] WORDS = {
+            "Paris", "is", "the", "capital", "of", "France", "and", "its", "largest", "city",
+            "according", "to", "the", "context", "provided", "above"
+    };
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final int dimension;
+    private final long embedLatencyMillis;
+    private final long firstTokenMillis;
+    private final long tokenIntervalNanos;
+    private final int answerTokens;
+    private final AtomicLong embedRequests = new AtomicLong();
+    private final AtomicLong chatRequests = new AtomicLong();
+
+    private FakeOllamaServer(HttpServer server, int dimension, long embedLatencyMillis,
+                             long firstTokenMillis, double tokensPerSecond, int answerTokens) {
+        this.server = server;
+        this.dimension = dimension;
+        this.embedLatencyMillis = embedLatencyMillis;
+        this.firstTokenMillis = firstTokenMillis;
+        this.tokenIntervalNanos = tokensPerSecond <= 0 ? 0 : (long) (1_000_000_000L / tokensPerSecond);
+        this.answerTokens = Math.max(1, answerTokens);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "fake-ollama");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Port 0 picks a free port
+    public static FakeOllamaServer start(int port, int dimension, long embedLatencyMillis,
+                                         long firstTokenMillis, double tokensPerSecond, int answerTokens) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", port), 1024);
+        FakeOllamaServer fake = new FakeOllamaServer(server, dimension, embedLatencyMillis,
+                firstTokenMillis, tokensPerSecond, answerTokens);
+        server.createContext("/api/embeddings", fake::embeddings);
+        server.createContext("/api/chat", exchange -> fake.generate(exchange, true));
+        server.createContext("/api/generate", exchange -> fake.generate(exchange, false));
+        server.createContext("/api/tags", fake::tags);
+        server.setExecutor(fake.executor);
+        server.start();
+        return fake;
+    }
+
+    public String url() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public long embedRequests() {
+        return embedRequests.get();
+    }
+
+    public long chatRequests() {
+        return chatRequests.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void embeddings(HttpExchange exchange) throws IOException {
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        embedRequests.incrementAndGet();
+        sleep(TimeUnit.MILLISECONDS.toNanos(embedLatencyMillis));
+
+        StringBuilder json = new StringBuilder(dimension * 12 + 16).append("{\"embedding\":[");
+        int seed = body.hashCode();
+        for (int i = 0; i < dimension; i++) {
+            seed = seed * 1103515245 + 12345;
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append((seed >>> 8) / (float) (1 << 24) - 0.5f);
+        }
+        json.append("]}");
+        send(exchange, "application/json", json.toString());
+    }
+
+    // /api/chat replies with a message object, /api/generate with a response string
+    private void generate(HttpExchange exchange, boolean chat) throws IOException {
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        chatRequests.incrementAndGet();
+        int promptTokens = Math.max(1, body.length() / 4);
+        sleep(TimeUnit.MILLISECONDS.toNanos(firstTokenMillis));
+
+        if (STREAM_OFF.matcher(body).find()) {
+            StringBuilder answer = new StringBuilder();
+            for (int i = 0; i < answerTokens; i++) {
+                answer.append(token(i));
+                if (i > 0) {
+                    sleep(tokenIntervalNanos);
+                }
+            }
+            send(exchange, "application/json", chunk(chat, answer.toString(), true, promptTokens));
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (int i = 0; i < answerTokens; i++) {
+                if (i > 0) {
+                    sleep(tokenIntervalNanos);
+                }
+                out.write((chunk(chat, token(i), false, promptTokens) + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+            out.write((chunk(chat, "", true, promptTokens) + "\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // Client went away mid-answer
+        }
+    }
+
+    private void tags(HttpExchange exchange) throws IOException {
+        send(exchange, "application/json", "{\"models\":[{\"name\":\"llama3.2:latest\"},{\"name\":\"nomic-embed-text:latest\"}]}");
+    }
+
+    private String chunk(boolean chat, String text, boolean done, int promptTokens) {
+        String content = JsonWriter.quote(text);
+        StringBuilder json = new StringBuilder(96 + content.length())
+                .append("{\"model\":\"llama3.2:latest\",\"created_at\":\"2024-01-01T00:00:00Z\",");
+        if (chat) {
+            json.append("\"message\":{\"role\":\"assistant\",\"content\":").append(content).append("},");
+        } else {
+            json.append("\"response\":").append(content).append(',');
+        }
+        json.append("\"done\":").append(done);
+        if (done) {
+            json.append(",\"prompt_eval_count\":").append(promptTokens).append(",\"eval_count\":").append(answerTokens);
+        }
+        return json.append('}').toString();
+    }
+
+    private static String token(int i) {
+        return (i == 0 ? "" : " ") + WORDS[i % WORDS.length];
+    }
+
+    private static void send(HttpExchange exchange, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sleep(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        long remaining = nanos;
+        while (remaining > 0) {
+            LockSupport.parkNanos(remaining);
+            remaining = deadline - System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package com.rag.project;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+// Hierarchical navigable small world graph over vectors the caller keeps in one contiguous
+// float[] (node i at offset i * dimension). Vectors must be L2-normalized so similarity is a
+// plain dot product. Not thread-safe; LocalEmbeddingStore guards it with its own lock.
+class HnswIndex {
+
+    private static final int MAX_LEVEL = 16;
+
+    private final int dimension;
+    private final int m;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    // links[node][level] holds the neighbour count at index 0, followed by the neighbours
+    private int[][][] links = new int[64][][];
+    private int size;
+    private int entryPoint = -1;
+    private int topLevel = -1;
+
+    HnswIndex(int dimension, int m, int efConstruction) {
+        this.dimension = dimension;
+        this.m = Math.max(2, m);
+        this.efConstruction = Math.max(this.m, efConstruction);
+        this.levelMultiplier = 1 / Math.log(this.m);
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Nodes are added in slot order, so `node` is always the current size
+    void add(float[] vectors, int node) {
+        if (node != size) {
+            throw new IllegalArgumentException("Expected node " + size + " but got " + node);
+        }
+        int level = randomLevel();
+        if (node == links.length) {
+            links = Arrays.copyOf(links, links.length * 2);
+        }
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[node][l] = new int[maxConnections(l) + 1];
+        }
+        size++;
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            topLevel = level;
+            return;
+        }
+
+        int offset = node * dimension;
+        int current = entryPoint;
+        for (int l = topLevel; l > level; l--) {
+            current = greedy(vectors, vectors, offset, current, l);
+        }
+        for (int l = Math.min(level, topLevel); l >= 0; l--) {
+            NodeHeap candidates = searchLayer(vectors, vectors, offset, current, efConstruction, l);
+            current = best(candidates);
+            int[] selected = selectNeighbours(vectors, candidates, m);
+            int[] own = links[node][l];
+            own[0] = selected.length;
+            System.arraycopy(selected, 0, own, 1, selected.length);
+            for (int neighbour : selected) {
+                connect(vectors, neighbour, node, l);
+            }
+        }
+        if (level > topLevel) {
+            topLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    // Returns up to `ef` nearest nodes as a min-heap on similarity; removed nodes are still
+    // walked through and must be filtered by the caller
+    NodeHeap search(float[] vectors, float[] query, int ef) {
+        if (entryPoint < 0) {
+            return new NodeHeap(1);
+        }
+        int current = entryPoint;
+        for (int l = topLevel; l > 0; l--) {
+            current = greedy(vectors, query, 0, current, l);
+        }
+        return searchLayer(vectors, query, 0, current, ef, 0);
+    }
+
+    private int greedy(float[] vectors, float[] query, int queryOffset, int start, int level) {
+        int current = start;
+        float currentScore = similarity(vectors, query, queryOffset, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] neighbours = links[current][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                float score = similarity(vectors, query, queryOffset, neighbours[i]);
+                if (score > currentScore) {
+                    currentScore = score;
+                    current = neighbours[i];
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    private NodeHeap searchLayer(float[] vectors, float[] query, int queryOffset, int entry, int ef, int level) {
+        BitSet visited = new BitSet(size);
+        // Candidates are ordered best-first by pushing negated scores into the min-heap
+        NodeHeap candidates = new NodeHeap(ef * 2);
+        NodeHeap results = new NodeHeap(ef + 1);
+
+        float entryScore = similarity(vectors, query, queryOffset, entry);
+        visited.set(entry);
+        candidates.push(-entryScore, entry);
+        results.push(entryScore, entry);
+
+        while (candidates.size() > 0) {
+            float candidateScore = -candidates.peekScore();
+            int candidate = candidates.pop();
+            if (results.size() >= ef && candidateScore < results.peekScore()) {
+                break;
+            }
+            int[] neighbours = links[candidate][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int neighbour = neighbours[i];
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                float score = similarity(vectors, query, queryOffset, neighbour);
+                if (results.size() < ef || score > results.peekScore()) {
+                    candidates.push(-score, neighbour);
+                    results.push(score, neighbour);
+                    if (results.size() > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    // Diversity heuristic: a candidate is kept only if it is closer to the base node than to
+    // any neighbour already kept; the remaining slots are then filled with the closest rejects
+    private int[] selectNeighbours(float[] vectors, NodeHeap candidates, int max) {
+        int count = candidates.size();
+        int[] nodes = new int[count];
+        float[] scores = new float[count];
+        for (int i = count - 1; i >= 0; i--) {
+            scores[i] = candidates.peekScore();
+            nodes[i] = candidates.pop();
+        }
+
+        int[] selected = new int[Math.min(max, count)];
+        boolean[] taken = new boolean[count];
+        int kept = 0;
+        for (int i = 0; i < count && kept < selected.length; i++) {
+            boolean diverse = true;
+            for (int j = 0; j < kept; j++) {
+                if (similarity(vectors, vectors, nodes[i] * dimension, selected[j]) > scores[i]) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[kept++] = nodes[i];
+                taken[i] = true;
+            }
+        }
+        for (int i = 0; i < count && kept < selected.length; i++) {
+            if (!taken[i]) {
+                selected[kept++] = nodes[i];
+            }
+        }
+        return selected;
+    }
+
+    private void connect(float[] vectors, int node, int neighbour, int level) {
+        int[] own = links[node][level];
+        int capacity = own.length - 1;
+        if (own[0] < capacity) {
+            own[++own[0]] = neighbour;
+            return;
+        }
+        // Full: re-select among the existing neighbours plus the new one, unless the new one
+        // is further away than all of them, which is the common case once the graph is dense
+        int offset = node * dimension;
+        float score = similarity(vectors, vectors, offset, neighbour);
+        NodeHeap candidates = new NodeHeap(capacity + 1);
+        for (int i = 1; i <= own[0]; i++) {
+            candidates.push(similarity(vectors, vectors, offset, own[i]), own[i]);
+        }
+        if (score <= candidates.peekScore()) {
+            return;
+        }
+        candidates.push(score, neighbour);
+        int[] selected = selectNeighbours(vectors, candidates, capacity);
+        own[0] = selected.length;
+        System.arraycopy(selected, 0, own, 1, selected.length);
+    }
+
+    private static int best(NodeHeap results) {
+        int best = -1;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < results.size(); i++) {
+            if (results.scoreAt(i) > bestScore) {
+                bestScore = results.scoreAt(i);
+                best = results.nodeAt(i);
+            }
+        }
+        return best;
+    }
+
+    private float similarity(float[] vectors, float[] query, int queryOffset, int node) {
+        return dot(query, queryOffset, vectors, node * dimension, dimension);
+    }
+
+    // Four independent accumulators let the JIT overlap the multiply-adds
+    static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0;
+        float s1 = 0;
+        float s2 = 0;
+        float s3 = 0;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    private int maxConnections(int level) {
+        return level == 0 ? m * 2 : m;
+    }
+
+    private int randomLevel() {
+        double level = -Math.log(1 - random.nextDouble()) * levelMultiplier;
+        return (int) Math.min(level, MAX_LEVEL);
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeInt(m);
+        out.writeInt(efConstruction);
+        out.writeInt(size);
+        out.writeInt(entryPoint);
+        out.writeInt(topLevel);
+        for (int node = 0; node < size; node++) {
+            out.writeInt(links[node].length);
+            for (int[] neighbours : links[node]) {
+                out.writeInt(neighbours[0]);
+                for (int i = 1; i <= neighbours[0]; i++) {
+                    out.writeInt(neighbours[i]);
+                }
+            }
+        }
+    }
+
+    static HnswIndex read(ByteBuffer in, int dimension) {
+        HnswIndex index = new HnswIndex(dimension, in.getInt(), in.getInt());
+        int size = in.getInt();
+        index.entryPoint = in.getInt();
+        index.topLevel = in.getInt();
+        index.links = new int[Math.max(64, size)][][];
+        for (int node = 0; node < size; node++) {
+            int levels = in.getInt();
+            index.links[node] = new int[levels][];
+            for (int l = 0; l < levels; l++) {
+                int[] neighbours = new int[index.maxConnections(l) + 1];
+                neighbours[0] = in.getInt();
+                for (int i = 1; i <= neighbours[0]; i++) {
+                    neighbours[i] = in.getInt();
+                }
+                index.links[node][l] = neighbours;
+            }
+        }
+        index.size = size;
+        return index;
+    }
+
+    // Binary min-heap of (score, node) pairs in two primitive arrays
+    static class NodeHeap {
+        private float[] scores;
+        private int[] nodes;
+        private int size;
+
+        NodeHeap(int capacity) {
+            scores = new float[Math.max(1, capacity)];
+            nodes = new int[Math.max(1, capacity)];
+        }
+
+        int size() {
+            return size;
+        }
+
+        float peekScore() {
+            return scores[0];
+        }
+
+        float scoreAt(int i) {
+            return scores[i];
+        }
+
+        int nodeAt(int i) {
+            return nodes[i];
+        }
+
+        void push(float score, int node) {
+            if (size == scores.length) {
+                scores = Arrays.copyOf(scores, size * 2);
+                nodes = Arrays.copyOf(nodes, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (scores[parent] <= score) {
+                    break;
+                }
+                scores[i] = scores[parent];
+                nodes[i] = nodes[parent];
+                i = parent;
+            }
+            scores[i] = score;
+            nodes[i] = node;
+        }
+
+        // Removes the lowest-scored entry and returns its node
+        int pop() {
+            int top = nodes[0];
+            float score = scores[--size];
+            int node = nodes[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && scores[child + 1] < scores[child]) {
+                    child++;
+                }
+                if (score <= scores[child]) {
+                    break;
+                }
+                scores[i] = scores[child];
+                nodes[i] = nodes[child];
+                i = child;
+            }
+            scores[i] = score;
+            nodes[i] = node;
+            return top;
+        }
+    }
+}
@@ -0,0 +1,515 @@
+package com.rag.project;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+// Keeps the embedding store in step with a directory using an IndexManifest:
+// unchanged files are skipped, only new or changed chunks are embedded and inserted,
+// and chunks that disappeared are deleted.
+public class IncrementalIndexer {
+
+    public static final String CHUNK_HASH_METADATA = "chunk_hash";
+    static final String RUN_METRIC = "rag_ingest_run_seconds";
+    static final String RUN_HELP = "Duration of a document ingestion or index sync run";
+    private static final LatencyHistogram SYNC_TIME = Metrics.histogram(RUN_METRIC, RUN_HELP);
+    private static final int HASH_WINDOW_BYTES = 32 * 1024 * 1024;
+    private static final int KEPT_BATCH_SIZE = 512;
+
+    private final IngestionPipeline pipeline;
+    private final EmbeddingRemover remover;
+    private final IndexManifest manifest;
+    private final Supplier<DocumentSplitter> splitterFactory;
+    private final StreamingTextSplitter streamingSplitter;
+    private final int fileConcurrency;
+    private final List<Consumer<Collection<String>>> removalListeners = new CopyOnWriteArrayList<>();
+    private final List<IngestionPipeline.InsertListener> keptListeners = new CopyOnWriteArrayList<>();
+
+    public IncrementalIndexer(IngestionPipeline pipeline,
+                              EmbeddingRemover remover,
+                              IndexManifest manifest,
+                              Supplier<DocumentSplitter> splitterFactory,
+                              StreamingTextSplitter streamingSplitter,
+                              int fileConcurrency) {
+        this.pipeline = pipeline;
+        this.remover = remover;
+        this.manifest = manifest;
+        this.splitterFactory = splitterFactory;
+        this.streamingSplitter = streamingSplitter;
+        this.fileConcurrency = Math.max(1, fileConcurrency);
+    }
+
+    // Notified with the IDs of chunks deleted from the store
+    public void addRemovalListener(Consumer<Collection<String>> listener) {
+        removalListeners.add(listener);
+    }
+
+    // Notified with the chunks a pass finds already in the store, and their IDs, so in-memory
+    // indexes can be rebuilt without embedding anything. Called from the planner threads in
+    // batches of up to KEPT_BATCH_SIZE as each file is split. With a listener registered,
+    // unchanged files are split again instead of being skipped.
+    public void addKeptListener(IngestionPipeline.InsertListener listener) {
+        keptListeners.add(listener);
+    }
+
+    // Full pass: every matching file is checked, sources that no longer exist are removed
+    public synchronized SyncResult sync(Path root, List<String> globs) throws IOException {
+        List<Path> files = DirectoryIngestor.findFiles(root, globs);
+        Set<String> removed = manifest.sources();
+        for (Path file : files) {
+            removed.remove(DirectoryIngestor.sourceOf(root, file));
+        }
+        return apply(root, files, removed);
+    }
+
+    // Partial pass for the given paths only, e.g. from a file watcher
+    public synchronized SyncResult syncPaths(Path root, List<String> globs, Collection<Path> paths) throws IOException {
+        Predicate<Path> matcher = DirectoryIngestor.matcher(root, globs);
+        List<Path> files = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        for (Path path : paths) {
+            if (Files.isRegularFile(path)) {
+                if (matcher.test(path)) {
+                    files.add(path);
+                }
+            } else if (!Files.exists(path)) {
+                // A deleted file, or a deleted directory and everything that was under it
+                String source = DirectoryIngestor.sourceOf(root, path);
+                for (String indexed : manifest.sources()) {
+                    if (indexed.equals(source) || indexed.startsWith(source + "/")) {
+                        removed.add(indexed);
+                    }
+                }
+            }
+        }
+        return apply(root, files, removed);
+    }
+
+    private SyncResult apply(Path root, List<Path> files, Collection<String> removedSources) throws IOException {
+        long start = System.nanoTime();
+        List<FilePlan> plans = plan(root, files);
+
+        int toInsert = 0;
+        for (FilePlan plan : plans) {
+            toInsert += plan.newSegmentCount();
+        }
+
+        // IDs are assigned by the store as batches are inserted
+        Map<String, List<IndexManifest.ChunkEntry>> inserted = new HashMap<>();
+        boolean completed = false;
+        try {
+            if (toInsert > 0) {
+                pipeline.ingest(() -> new NewSegments(root, plans), (segments, ids) -> {
+                    for (int i = 0; i < segments.size(); i++) {
+                        TextSegment segment = segments.get(i);
+                        inserted.computeIfAbsent(segment.metadata(DirectoryIngestor.SOURCE_METADATA), k -> new ArrayList<>())
+                                .add(new IndexManifest.ChunkEntry(segment.metadata(CHUNK_HASH_METADATA), ids.get(i)));
+                    }
+                });
+            }
+            completed = true;
+        } finally {
+            for (FilePlan plan : plans) {
+                List<IndexManifest.ChunkEntry> chunks = new ArrayList<>(plan.keptChunks);
+                chunks.addAll(inserted.getOrDefault(plan.source, new ArrayList<>()));
+                // After a failed insert the file hash is cleared so the next pass re-plans it;
+                // chunks that did make it in are recorded and will not be inserted twice
+                manifest.put(plan.source, new IndexManifest.FileEntry(completed ? plan.fileHash : "", chunks));
+                // Stale chunks are no longer in the new entry, so they are recorded even after a
+                // failure; the next completed pass deletes them
+                manifest.addPendingDeletes(plan.staleIds);
+            }
+            if (completed) {
+                for (String source : removedSources) {
+                    IndexManifest.FileEntry entry = manifest.remove(source);
+                    if (entry != null) {
+                        manifest.addPendingDeletes(entry.ids());
+                    }
+                }
+            }
+            manifest.save();
+        }
+
+        int deleted = deletePending();
+        int unchanged = 0;
+        for (FilePlan plan : plans) {
+            if (plan.unchanged) {
+                unchanged++;
+            }
+        }
+        SyncResult result = new SyncResult(files.size(), unchanged, removedSources.size(),
+                toInsert, deleted, System.nanoTime() - start);
+        SYNC_TIME.recordSince(start);
+        System.out.println("Index sync: " + result);
+        return result;
+    }
+
+    private int deletePending() throws IOException {
+        Set<String> pending = manifest.pendingDeletes();
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        if (remover == null) {
+            System.err.println("No remover configured, " + pending.size() + " stale chunks left in the store");
+            return 0;
+        }
+        try {
+            remover.removeAll(pending);
+        } catch (RuntimeException e) {
+            // Kept as pending and retried on the next pass
+            System.err.println("Failed to delete " + pending.size() + " stale chunks: " + e.getMessage());
+            return 0;
+        }
+        manifest.clearPendingDeletes(pending);
+        manifest.save();
+        for (Consumer<Collection<String>> listener : removalListeners) {
+            listener.accept(pending);
+        }
+        return pending.size();
+    }
+
+    private List<FilePlan> plan(Path root, List<Path> files) throws IOException {
+        if (files.isEmpty()) {
+            return new ArrayList<>();
+        }
+        ExecutorService planners = Executors.newFixedThreadPool(Math.min(fileConcurrency, files.size()), runnable -> {
+            Thread thread = new Thread(runnable, "index-planner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<FilePlan>> futures = new ArrayList<>();
+            for (Path file : files) {
+                IndexManifest.FileEntry previous = manifest.get(DirectoryIngestor.sourceOf(root, file));
+                futures.add(planners.submit(() -> planFile(root, file, previous)));
+            }
+            List<FilePlan> plans = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    plans.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    System.err.println("Failed to load " + files.get(i) + ": " + e.getCause().getMessage());
+                }
+            }
+            return plans;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Index planning interrupted", e);
+        } finally {
+            planners.shutdownNow();
+        }
+    }
+
+    private FilePlan planFile(Path root, Path file, IndexManifest.FileEntry previous) {
+        String source = DirectoryIngestor.sourceOf(root, file);
+        if (StreamingTextSplitter.shouldStream(file)) {
+            return planStreamed(root, file, source, previous);
+        }
+        Document document = DirectoryIngestor.loadDocument(root, file);
+        String fileHash = contentHash(document.text());
+
+        boolean unchanged = previous != null && previous.fileHash.equals(fileHash);
+        if (unchanged && keptListeners.isEmpty()) {
+            return FilePlan.unchanged(source, fileHash, previous.chunks);
+        }
+
+        // Reuse stored chunks whose content is unchanged; identical chunks are matched one-to-one
+        Map<String, Deque<IndexManifest.ChunkEntry>> available = new HashMap<>();
+        if (previous != null) {
+            for (IndexManifest.ChunkEntry chunk : previous.chunks) {
+                available.computeIfAbsent(chunk.hash, k -> new ArrayDeque<>()).add(chunk);
+            }
+        }
+
+        List<IndexManifest.ChunkEntry> kept = new ArrayList<>();
+        KeptBatch keptBatch = new KeptBatch();
+        List<TextSegment> newSegments = new ArrayList<>();
+        for (TextSegment segment : splitterFactory.get().split(document)) {
+            String chunkHash = contentHash(segment.text());
+            Deque<IndexManifest.ChunkEntry> matches = available.get(chunkHash);
+            if (matches != null && !matches.isEmpty()) {
+                IndexManifest.ChunkEntry chunk = matches.poll();
+                kept.add(chunk);
+                keptBatch.add(segment, chunk.id);
+            } else {
+                segment.metadata().add(CHUNK_HASH_METADATA, chunkHash);
+                newSegments.add(segment);
+            }
+        }
+        keptBatch.flush();
+        return unchanged
+                ? FilePlan.unchanged(source, fileHash, previous.chunks)
+                : new FilePlan(source, fileHash, kept, newSegments, staleIds(available), false);
+    }
+
+    // Same as planFile, but only the positions of new segments are kept; their text is read
+    // again from the file while inserting
+    private FilePlan planStreamed(Path root, Path file, String source, IndexManifest.FileEntry previous) {
+        String fileHash = contentHash(file);
+        boolean unchanged = previous != null && previous.fileHash.equals(fileHash);
+        if (unchanged && keptListeners.isEmpty()) {
+            return FilePlan.unchanged(source, fileHash, previous.chunks);
+        }
+
+        Map<String, Deque<IndexManifest.ChunkEntry>> available = new HashMap<>();
+        if (previous != null) {
+            for (IndexManifest.ChunkEntry chunk : previous.chunks) {
+                available.computeIfAbsent(chunk.hash, k -> new ArrayDeque<>()).add(chunk);
+            }
+        }
+
+        List<IndexManifest.ChunkEntry> kept = new ArrayList<>();
+        KeptBatch keptBatch = new KeptBatch();
+        BitSet newPositions = new BitSet();
+        Iterator<TextSegment> segments = streamingSplitter.split(root, file);
+        for (int position = 0; segments.hasNext(); position++) {
+            TextSegment segment = segments.next();
+            Deque<IndexManifest.ChunkEntry> matches = available.get(contentHash(segment.text()));
+            if (matches != null && !matches.isEmpty()) {
+                IndexManifest.ChunkEntry chunk = matches.poll();
+                kept.add(chunk);
+                keptBatch.add(segment, chunk.id);
+            } else {
+                newPositions.set(position);
+            }
+        }
+        keptBatch.flush();
+        return unchanged
+                ? FilePlan.unchanged(source, fileHash, previous.chunks)
+                : new FilePlan(source, fileHash, kept, new ArrayList<>(), staleIds(available), false, file, newPositions);
+    }
+
+    private static List<String> staleIds(Map<String, Deque<IndexManifest.ChunkEntry>> available) {
+        List<String> staleIds = new ArrayList<>();
+        for (Deque<IndexManifest.ChunkEntry> remaining : available.values()) {
+            for (IndexManifest.ChunkEntry chunk : remaining) {
+                staleIds.add(chunk.id);
+            }
+        }
+        return staleIds;
+    }
+
+    static String contentHash(String text) {
+        MessageDigest digest = sha256();
+        return hex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // Hashes the raw bytes window by window instead of decoding the file first
+    static String contentHash(Path file) {
+        MessageDigest digest = sha256();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += HASH_WINDOW_BYTES) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(HASH_WINDOW_BYTES, size - position));
+                digest.update(window);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + file, e);
+        }
+        return hex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String hex(byte[] digest) {
+        StringBuilder hex = new StringBuilder(32);
+        for (int i = 0; i < 16; i++) {
+            hex.append(Character.forDigit((digest[i] >> 4) & 0xF, 16)).append(Character.forDigit(digest[i] & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    // Kept chunks of one file on their way to the kept listeners; nothing is held without a
+    // listener, and at most KEPT_BATCH_SIZE with one
+    private class KeptBatch {
+        private List<TextSegment> segments = new ArrayList<>();
+        private List<String> ids = new ArrayList<>();
+
+        void add(TextSegment segment, String id) {
+            if (keptListeners.isEmpty()) {
+                return;
+            }
+            segments.add(segment);
+            ids.add(id);
+            if (segments.size() == KEPT_BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (segments.isEmpty()) {
+                return;
+            }
+            for (IngestionPipeline.InsertListener listener : keptListeners) {
+                listener.onInserted(segments, ids);
+            }
+            segments = new ArrayList<>();
+            ids = new ArrayList<>();
+        }
+    }
+
+    // New segments of every plan in order; streamed files are split a second time and only
+    // the positions marked during planning are kept. If such a file changed in between, the
+    // hashes recorded are still those of the text inserted, and its stale file hash makes
+    // the next pass plan it again.
+    private class NewSegments implements Iterator<TextSegment> {
+        private final Path root;
+        private final Iterator<FilePlan> plans;
+        private FilePlan plan;
+        private Iterator<TextSegment> current;
+        private int position;
+        private TextSegment next;
+
+        NewSegments(Path root, List<FilePlan> plans) {
+            this.root = root;
+            this.plans = plans.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (current != null && current.hasNext()) {
+                    TextSegment segment = current.next();
+                    if (plan.file == null) {
+                        next = segment;
+                    } else if (plan.newPositions.get(position++)) {
+                        segment.metadata().add(CHUNK_HASH_METADATA, contentHash(segment.text()));
+                        next = segment;
+                    }
+                } else if (plans.hasNext()) {
+                    plan = plans.next();
+                    position = 0;
+                    if (plan.file == null) {
+                        current = plan.newSegments.iterator();
+                    } else {
+                        current = plan.newPositions.isEmpty() ? null : streamingSplitter.split(root, plan.file);
+                    }
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public TextSegment next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            TextSegment segment = next;
+            next = null;
+            return segment;
+        }
+    }
+
+    private static class FilePlan {
+        final String source;
+        final String fileHash;
+        final List<IndexManifest.ChunkEntry> keptChunks;
+        final List<TextSegment> newSegments;
+        final List<String> staleIds;
+        final boolean unchanged;
+        // Set for streamed files, whose new segments are not held in newSegments
+        final Path file;
+        final BitSet newPositions;
+
+        FilePlan(String source, String fileHash, List<IndexManifest.ChunkEntry> keptChunks,
+                 List<TextSegment> newSegments, List<String> staleIds, boolean unchanged) {
+            this(source, fileHash, keptChunks, newSegments, staleIds, unchanged, null, null);
+        }
+
+        FilePlan(String source, String fileHash, List<IndexManifest.ChunkEntry> keptChunks,
+                 List<TextSegment> newSegments, List<String> staleIds, boolean unchanged,
+                 Path file, BitSet newPositions) {
+            this.source = source;
+            this.fileHash = fileHash;
+            this.keptChunks = keptChunks;
+            this.newSegments = newSegments;
+            this.staleIds = staleIds;
+            this.unchanged = unchanged;
+            this.file = file;
+            this.newPositions = newPositions;
+        }
+
+        int newSegmentCount() {
+            return file == null ? newSegments.size() : newPositions.cardinality();
+        }
+
+        static FilePlan unchanged(String source, String fileHash, List<IndexManifest.ChunkEntry> chunks) {
+            return new FilePlan(source, fileHash, chunks, new ArrayList<>(), new ArrayList<>(), true);
+        }
+    }
+
+    public static class SyncResult {
+        private final int files;
+        private final int unchangedFiles;
+        private final int removedFiles;
+        private final int insertedChunks;
+        private final int deletedChunks;
+        private final long elapsedNanos;
+
+        SyncResult(int files, int unchangedFiles, int removedFiles, int insertedChunks, int deletedChunks, long elapsedNanos) {
+            this.files = files;
+            this.unchangedFiles = unchangedFiles;
+            this.removedFiles = removedFiles;
+            this.insertedChunks = insertedChunks;
+            this.deletedChunks = deletedChunks;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int insertedChunks() {
+            return insertedChunks;
+        }
+
+        public int deletedChunks() {
+            return deletedChunks;
+        }
+
+        public boolean changed() {
+            return insertedChunks > 0 || deletedChunks > 0 || removedFiles > 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d files checked (%d unchanged, %d removed), %d chunks inserted, %d deleted in %d ms",
+                    files, unchangedFiles, removedFiles, insertedChunks, deletedChunks, elapsedNanos / 1_000_000);
+        }
+    }
+}
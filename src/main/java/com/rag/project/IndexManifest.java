@@ -0,0 +1,186 @@
+package com.rag.project;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Records which chunks of which file are stored under which IDs, so re-ingestion only touches
+// what changed. Stored as tab-separated lines:
+//
+//   F <source> <file hash>
+//   C <source> <chunk hash> <id>
+//   D <id>                         (stale ID whose delete has not been confirmed yet)
+public class IndexManifest {
+
+    private final Path path;
+    private final Map<String, FileEntry> files = new TreeMap<>();
+    private final Set<String> pendingDeletes = new LinkedHashSet<>();
+
+    private IndexManifest(Path path) {
+        this.path = path;
+    }
+
+    public static IndexManifest load(Path path) throws IOException {
+        IndexManifest manifest = new IndexManifest(path);
+        if (!Files.exists(path)) {
+            return manifest;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // -1 keeps a trailing empty field: a file whose insert failed is saved with an
+                // empty hash so the next pass plans it again
+                String[] fields = line.split("\t", -1);
+                if (fields.length < minimumFields(fields[0])) {
+                    System.err.println("Ignoring malformed manifest line: " + line);
+                    continue;
+                }
+                switch (fields[0]) {
+                    case "F":
+                        manifest.files.put(unescape(fields[1]), new FileEntry(fields[2], new ArrayList<>()));
+                        break;
+                    case "C":
+                        FileEntry entry = manifest.files.get(unescape(fields[1]));
+                        if (entry != null) {
+                            entry.chunks.add(new ChunkEntry(fields[2], fields[3]));
+                        }
+                        break;
+                    case "D":
+                        manifest.pendingDeletes.add(fields[1]);
+                        break;
+                    default:
+                        System.err.println("Ignoring unknown manifest line: " + line);
+                }
+            }
+        }
+        return manifest;
+    }
+
+    private static int minimumFields(String type) {
+        switch (type) {
+            case "F":
+                return 3;
+            case "C":
+                return 4;
+            case "D":
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    public void save() throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        // Write to a temp file and move it into place so a crash never leaves a torn manifest
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, FileEntry> file : files.entrySet()) {
+                String source = escape(file.getKey());
+                writer.write("F\t" + source + "\t" + file.getValue().fileHash + "\n");
+                for (ChunkEntry chunk : file.getValue().chunks) {
+                    writer.write("C\t" + source + "\t" + chunk.hash + "\t" + chunk.id + "\n");
+                }
+            }
+            for (String id : pendingDeletes) {
+                writer.write("D\t" + id + "\n");
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public FileEntry get(String source) {
+        return files.get(source);
+    }
+
+    public void put(String source, FileEntry entry) {
+        files.put(source, entry);
+    }
+
+    public FileEntry remove(String source) {
+        return files.remove(source);
+    }
+
+    public Set<String> sources() {
+        return new HashSet<>(files.keySet());
+    }
+
+    public int chunkCount() {
+        int count = 0;
+        for (FileEntry entry : files.values()) {
+            count += entry.chunks.size();
+        }
+        return count;
+    }
+
+    public Set<String> pendingDeletes() {
+        return new LinkedHashSet<>(pendingDeletes);
+    }
+
+    public void addPendingDeletes(Collection<String> ids) {
+        pendingDeletes.addAll(ids);
+    }
+
+    public void clearPendingDeletes(Collection<String> ids) {
+        pendingDeletes.removeAll(ids);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+    }
+
+    private static String unescape(String value) {
+        StringBuilder result = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                result.append(next == 't' ? '\t' : next == 'n' ? '\n' : next);
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    public static class FileEntry {
+        final String fileHash;
+        final List<ChunkEntry> chunks;
+
+        public FileEntry(String fileHash, List<ChunkEntry> chunks) {
+            this.fileHash = fileHash;
+            this.chunks = chunks;
+        }
+
+        public List<String> ids() {
+            List<String> ids = new ArrayList<>(chunks.size());
+            for (ChunkEntry chunk : chunks) {
+                ids.add(chunk.id);
+            }
+            return ids;
+        }
+    }
+
+    public static class ChunkEntry {
+        final String hash;
+        final String id;
+
+        public ChunkEntry(String hash, String id) {
+            this.hash = hash;
+            this.id = id;
+        }
+    }
+}
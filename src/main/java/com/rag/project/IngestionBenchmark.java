@@ -0,0 +1,136 @@
+package com.rag.project;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Compares the per-chunk ingest loop against the pipeline across batch sizes and concurrency.
+// Writes go to an in-memory store so repeated runs do not pollute the Milvus collection.
+//
+//   mvn compile exec:java -Dexec.mainClass="com.rag.project.IngestionBenchmark"
+//   mvn compile exec:java -Dexec.mainClass="com.rag.project.IngestionBenchmark" -Dexec.args="--simulated"
+public class IngestionBenchmark {
+
+    private static final int[] BATCH_SIZES = {1, 8, 32};
+    private static final int[] CONCURRENCY = {1, 2, 4};
+
+    public static void main(String[] args) throws IOException {
+        boolean simulated = List.of(args).contains("--simulated");
+        int minChunks = RAGConfig.getInt("rag.bench.chunks", 200);
+
+        EmbeddingModel embeddingModel = simulated
+                ? new SimulatedEmbeddingModel(768, 20, 2)
+                : OllamaBackendPool.fromConfig("nomic-embed-text", "llama3.2");
+
+        List<TextSegment> chunks = loadChunks(Paths.get("documents"), minChunks);
+        System.out.println("Benchmarking ingestion of " + chunks.size() + " chunks"
+                + (simulated ? " (simulated embedding model)" : ""));
+
+        // Silence per-chunk progress output so only the results table is printed
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            IngestionPipeline baseline = new IngestionPipeline(embeddingModel, new InMemoryEmbeddingStore<>(), 1, 1, 1, 1);
+            IngestionPipeline.Result perChunk = baseline.ingestPerChunk(chunks);
+            out.printf("%-28s %10s %12s %8s%n", "mode", "ms", "chunks/sec", "speedup");
+            out.printf("%-28s %10d %12.1f %8s%n", "per-chunk", perChunk.elapsedMillis(), perChunk.chunksPerSecond(), "1.0x");
+
+            for (int batchSize : BATCH_SIZES) {
+                for (int concurrency : CONCURRENCY) {
+                    IngestionPipeline pipeline = new IngestionPipeline(
+                            embeddingModel, new InMemoryEmbeddingStore<>(), batchSize, 256, concurrency, 8);
+                    IngestionPipeline.Result result = pipeline.ingest(chunks);
+                    out.printf("%-28s %10d %12.1f %7.1fx%n",
+                            "pipeline batch=" + batchSize + " inflight=" + concurrency,
+                            result.elapsedMillis(),
+                            result.chunksPerSecond(),
+                            result.chunksPerSecond() / perChunk.chunksPerSecond());
+                }
+            }
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static List<TextSegment> loadChunks(Path directory, int minChunks) throws IOException {
+        String text;
+        try (Stream<Path> files = Files.list(directory)) {
+            text = files.filter(file -> file.toString().endsWith(".txt"))
+                    .sorted()
+                    .map(IngestionBenchmark::read)
+                    .collect(Collectors.joining("\n\n"));
+        }
+        List<TextSegment> chunks = DocumentSplitters.recursive(500, 100).split(Document.from(text));
+        if (chunks.isEmpty()) {
+            throw new IOException("No text found under " + directory.toAbsolutePath());
+        }
+
+        // Repeat the corpus until the run is long enough to measure
+        List<TextSegment> result = new ArrayList<>(chunks);
+        while (result.size() < minChunks) {
+            result.addAll(chunks);
+        }
+        return result;
+    }
+
+    private static String read(Path file) {
+        try {
+            return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read " + file, e);
+        }
+    }
+
+    // Models a remote embedding call: a fixed round-trip cost plus a small per-segment cost
+    static class SimulatedEmbeddingModel implements EmbeddingModel {
+        private final int dimension;
+        private final long roundTripMillis;
+        private final long perSegmentMillis;
+
+        SimulatedEmbeddingModel(int dimension, long roundTripMillis, long perSegmentMillis) {
+            this.dimension = dimension;
+            this.roundTripMillis = roundTripMillis;
+            this.perSegmentMillis = perSegmentMillis;
+        }
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            long delay = roundTripMillis + perSegmentMillis * segments.size();
+            try {
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            List<Embedding> embeddings = new ArrayList<>(segments.size());
+            for (TextSegment segment : segments) {
+                float[] vector = new float[dimension];
+                int seed = segment.text().hashCode();
+                for (int i = 0; i < dimension; i++) {
+                    seed = seed * 1103515245 + 12345;
+                    vector[i] = (seed >>> 8) / (float) (1 << 24) - 0.5f;
+                }
+                embeddings.add(Embedding.from(vector));
+            }
+            return Response.from(embeddings);
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package com.rag.project;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+// Three-stage ingestion: split -> embed -> insert, joined by bounded queues.
+// The split stage groups segments into embedAll batches, several embed workers keep
+// requests in flight, and the insert stage writes to the store with addAll.
+public class IngestionPipeline {
+
+    private static final String STAGE_METRIC = "rag_ingest_stage_seconds";
+    private static final String STAGE_HELP = "Time spent per ingestion batch in each stage";
+    private static final LatencyHistogram EMBED_TIME = Metrics.histogram(STAGE_METRIC, STAGE_HELP, "stage", "embed");
+    private static final LatencyHistogram INSERT_TIME = Metrics.histogram(STAGE_METRIC, STAGE_HELP, "stage", "insert");
+    private static final Metrics.Counter CHUNKS = Metrics.counter("rag_ingest_chunks_total", "Chunks embedded and inserted");
+    private static final Metrics.Counter ERRORS = Metrics.counter("rag_ingest_errors_total", "Ingestion runs that failed");
+    private static final Set<BlockingQueue<?>> ACTIVE_QUEUES = ConcurrentHashMap.newKeySet();
+
+    static {
+        Metrics.gauge("rag_ingest_queued_batches", "Batches waiting between pipeline stages", "gauge", () -> {
+            long queued = 0;
+            for (BlockingQueue<?> queue : ACTIVE_QUEUES) {
+                queued += queue.size();
+            }
+            return queued;
+        });
+    }
+
+    private static final List<TextSegment> END_OF_SEGMENTS = new ArrayList<>();
+    private static final EmbeddedBatch END_OF_BATCHES = new EmbeddedBatch(new ArrayList<>(), new ArrayList<>());
+
+    private final EmbeddingModel embeddingModel;
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final int embedBatchSize;
+    private final int insertBatchSize;
+    private final int embedConcurrency;
+    private final int queueCapacity;
+    private final List<InsertListener> insertListeners = new CopyOnWriteArrayList<>();
+
+    public IngestionPipeline(EmbeddingModel embeddingModel,
+                             EmbeddingStore<TextSegment> embeddingStore,
+                             int embedBatchSize,
+                             int insertBatchSize,
+                             int embedConcurrency,
+                             int queueCapacity) {
+        this.embeddingModel = embeddingModel;
+        this.embeddingStore = embeddingStore;
+        this.embedBatchSize = Math.max(1, embedBatchSize);
+        this.insertBatchSize = Math.max(1, insertBatchSize);
+        this.embedConcurrency = Math.max(1, embedConcurrency);
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    public static IngestionPipeline fromConfig(EmbeddingModel embeddingModel, EmbeddingStore<TextSegment> embeddingStore) {
+        return new IngestionPipeline(embeddingModel, embeddingStore,
+                RAGConfig.embedBatchSize(),
+                RAGConfig.insertBatchSize(),
+                RAGConfig.embedConcurrency(),
+                RAGConfig.ingestQueueCapacity());
+    }
+
+    // Notified after every insert, whichever ingest method it came from
+    public void addInsertListener(InsertListener listener) {
+        insertListeners.add(listener);
+    }
+
+    public Result ingest(Document document, DocumentSplitter splitter) throws IOException {
+        // Splitting runs on the split stage thread, not on the caller
+        return ingest(() -> splitter.split(document).iterator());
+    }
+
+    public Result ingest(List<TextSegment> segments) throws IOException {
+        return ingest(segments::iterator);
+    }
+
+    public Result ingest(List<TextSegment> segments, InsertListener listener) throws IOException {
+        return ingest(segments::iterator, listener);
+    }
+
+    public Result ingest(Supplier<Iterator<TextSegment>> source) throws IOException {
+        return ingest(source, null);
+    }
+
+    public Result ingest(Supplier<Iterator<TextSegment>> source, InsertListener listener) throws IOException {
+        BlockingQueue<List<TextSegment>> embedQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<EmbeddedBatch> insertQueue = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicInteger embedCalls = new AtomicInteger();
+
+        ExecutorService workers = Executors.newFixedThreadPool(embedConcurrency + 1, runnable -> {
+            Thread thread = new Thread(runnable, "ingest-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long start = System.nanoTime();
+        ACTIVE_QUEUES.add(embedQueue);
+        ACTIVE_QUEUES.add(insertQueue);
+        try {
+            workers.execute(() -> split(source, embedQueue, failure));
+            for (int i = 0; i < embedConcurrency; i++) {
+                workers.execute(() -> embed(embedQueue, insertQueue, failure, embedCalls));
+            }
+            return insert(insertQueue, failure, embedCalls, listener, start);
+        } catch (InterruptedException e) {
+            ERRORS.increment();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Ingestion interrupted");
+        } catch (IOException e) {
+            ERRORS.increment();
+            throw e;
+        } finally {
+            ACTIVE_QUEUES.remove(embedQueue);
+            ACTIVE_QUEUES.remove(insertQueue);
+            workers.shutdownNow();
+            persistStore();
+        }
+    }
+
+    // Baseline mode: one embed call and one insert per chunk
+    public Result ingestPerChunk(List<TextSegment> chunks) {
+        long start = System.nanoTime();
+        for (int i = 0; i < chunks.size(); i++) {
+            TextSegment chunk = chunks.get(i);
+            System.out.println("Processing chunk " + (i + 1) + "/" + chunks.size());
+
+            long embedStart = System.nanoTime();
+            var embedding = embeddingModel.embed(chunk.text()).content();
+            EMBED_TIME.recordSince(embedStart);
+            long insertStart = System.nanoTime();
+            String id = embeddingStore.add(embedding, chunk);
+            INSERT_TIME.recordSince(insertStart);
+            CHUNKS.increment();
+            for (InsertListener listener : insertListeners) {
+                listener.onInserted(List.of(chunk), List.of(id));
+            }
+        }
+        persistStore();
+        return new Result(chunks.size(), chunks.size(), chunks.size(), System.nanoTime() - start);
+    }
+
+    private void split(Supplier<Iterator<TextSegment>> source,
+                       BlockingQueue<List<TextSegment>> embedQueue,
+                       AtomicReference<Throwable> failure) {
+        try {
+            Iterator<TextSegment> segments = source.get();
+            List<TextSegment> batch = new ArrayList<>(embedBatchSize);
+            while (segments.hasNext() && failure.get() == null) {
+                batch.add(segments.next());
+                if (batch.size() == embedBatchSize) {
+                    embedQueue.put(batch);
+                    batch = new ArrayList<>(embedBatchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                embedQueue.put(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            try {
+                for (int i = 0; i < embedConcurrency; i++) {
+                    embedQueue.put(END_OF_SEGMENTS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void embed(BlockingQueue<List<TextSegment>> embedQueue,
+                       BlockingQueue<EmbeddedBatch> insertQueue,
+                       AtomicReference<Throwable> failure,
+                       AtomicInteger embedCalls) {
+        try {
+            while (true) {
+                List<TextSegment> batch = embedQueue.take();
+                if (batch == END_OF_SEGMENTS) {
+                    break;
+                }
+                if (failure.get() != null) {
+                    continue;
+                }
+                long embedStart = System.nanoTime();
+                List<Embedding> embeddings = embeddingModel.embedAll(batch).content();
+                EMBED_TIME.recordSince(embedStart);
+                embedCalls.incrementAndGet();
+                insertQueue.put(new EmbeddedBatch(embeddings, batch));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            try {
+                insertQueue.put(END_OF_BATCHES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private Result insert(BlockingQueue<EmbeddedBatch> insertQueue,
+                          AtomicReference<Throwable> failure,
+                          AtomicInteger embedCalls,
+                          InsertListener listener,
+                          long start) throws IOException, InterruptedException {
+        List<Embedding> pendingEmbeddings = new ArrayList<>(insertBatchSize);
+        List<TextSegment> pendingSegments = new ArrayList<>(insertBatchSize);
+        int finishedWorkers = 0;
+        int inserted = 0;
+        int insertCalls = 0;
+
+        while (finishedWorkers < embedConcurrency) {
+            throwIfFailed(failure);
+            EmbeddedBatch batch = insertQueue.poll(100, TimeUnit.MILLISECONDS);
+            if (batch == null) {
+                continue;
+            }
+            if (batch == END_OF_BATCHES) {
+                finishedWorkers++;
+                continue;
+            }
+            pendingEmbeddings.addAll(batch.embeddings);
+            pendingSegments.addAll(batch.segments);
+            if (pendingSegments.size() >= insertBatchSize) {
+                inserted += flush(pendingEmbeddings, pendingSegments, listener);
+                insertCalls++;
+                System.out.printf("Inserted %d chunks (%.1f chunks/sec)%n", inserted, perSecond(inserted, start));
+            }
+        }
+        throwIfFailed(failure);
+        if (!pendingSegments.isEmpty()) {
+            inserted += flush(pendingEmbeddings, pendingSegments, listener);
+            insertCalls++;
+        }
+        return new Result(inserted, embedCalls.get(), insertCalls, System.nanoTime() - start);
+    }
+
+    private int flush(List<Embedding> embeddings, List<TextSegment> segments, InsertListener listener) {
+        int count = segments.size();
+        List<TextSegment> batch = new ArrayList<>(segments);
+        long insertStart = System.nanoTime();
+        List<String> ids = embeddingStore.addAll(new ArrayList<>(embeddings), batch);
+        INSERT_TIME.recordSince(insertStart);
+        CHUNKS.add(count);
+        if (listener != null) {
+            listener.onInserted(batch, ids);
+        }
+        for (InsertListener insertListener : insertListeners) {
+            insertListener.onInserted(batch, ids);
+        }
+        embeddings.clear();
+        segments.clear();
+        return count;
+    }
+
+    // Stores that write to disk on demand (LocalEmbeddingStore) save what was inserted, including
+    // after a failure, before the caller records the inserted IDs
+    private void persistStore() {
+        if (embeddingStore instanceof Flushable) {
+            try {
+                ((Flushable) embeddingStore).flush();
+            } catch (IOException e) {
+                System.err.println("Failed to save the vector store: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void throwIfFailed(AtomicReference<Throwable> failure) throws IOException {
+        Throwable cause = failure.get();
+        if (cause != null) {
+            throw new IOException("Ingestion failed: " + cause.getMessage(), cause);
+        }
+    }
+
+    private static double perSecond(int count, long startNanos) {
+        double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+        return seconds <= 0 ? 0 : count / seconds;
+    }
+
+    // Receives the store IDs assigned to each inserted batch, in segment order
+    public interface InsertListener {
+        void onInserted(List<TextSegment> segments, List<String> ids);
+    }
+
+    private static class EmbeddedBatch {
+        final List<Embedding> embeddings;
+        final List<TextSegment> segments;
+
+        EmbeddedBatch(List<Embedding> embeddings, List<TextSegment> segments) {
+            this.embeddings = embeddings;
+            this.segments = segments;
+        }
+    }
+
+    public static class Result {
+        private final int chunks;
+        private final int embedCalls;
+        private final int insertCalls;
+        private final long elapsedNanos;
+
+        Result(int chunks, int embedCalls, int insertCalls, long elapsedNanos) {
+            this.chunks = chunks;
+            this.embedCalls = embedCalls;
+            this.insertCalls = insertCalls;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int chunks() {
+            return chunks;
+        }
+
+        public int embedCalls() {
+            return embedCalls;
+        }
+
+        public int insertCalls() {
+            return insertCalls;
+        }
+
+        public long elapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        }
+
+        public double chunksPerSecond() {
+            double seconds = elapsedNanos / 1_000_000_000.0;
+            return seconds <= 0 ? 0 : chunks / seconds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d chunks in %d ms (%.1f chunks/sec, %d embed calls, %d inserts)",
+                    chunks, elapsedMillis(), chunksPerSecond(), embedCalls, insertCalls);
+        }
+    }
+}
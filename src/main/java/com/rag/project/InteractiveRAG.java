@@ -3,12 +3,10 @@ package com.rag.project;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.chat.ChatLanguageModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.model.ollama.OllamaChatModel;
-import dev.langchain4j.model.ollama.OllamaEmbeddingModel;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 
 import java.io.File;
-import java.time.Duration;
+import java.io.IOException;
 import java.util.Scanner;
 
 public class InteractiveRAG {
@@ -16,6 +14,7 @@ public class InteractiveRAG {
     private RAGService ragService;
     private EmbeddingStore<TextSegment> embeddingStore;
     private EmbeddingModel embeddingModel;
+    private LexicalIndex lexicalIndex;
     
     public static void main(String[] args) {
         new InteractiveRAG().run();
@@ -41,29 +40,20 @@ public class InteractiveRAG {
         }
     }
     
-    private void initializeSystem() {
+    private void initializeSystem() throws IOException {
         System.out.println("🚀 Initializing system...");
         
-        String ollamaHost = "http://localhost:11435";
+        // Initialize models, spread over the rag.ollama.baseUrls servers
+        OllamaBackendPool ollama = OllamaBackendPool.fromConfig("nomic-embed-text", "llama3.2");
+        embeddingModel = ollama;
+        ChatLanguageModel chatModel = ollama;
         
-        // Initialize models
-        embeddingModel = OllamaEmbeddingModel.builder()
-                .baseUrl(ollamaHost)
-                .modelName("nomic-embed-text")
-                .timeout(Duration.ofMinutes(3))
-                .build();
+        // Initialize the vector store (Milvus unless rag.store=local)
+        embeddingStore = VectorStoreConfig.createEmbeddingStore();
         
-        ChatLanguageModel chatModel = OllamaChatModel.builder()
-                .baseUrl(ollamaHost)
-                .modelName("llama3.2")
-                .timeout(Duration.ofMinutes(3))
-                .build();
-        
-        // Initialize Milvus
-        embeddingStore = MilvusConfig.createMilvusEmbeddingStore();
-        
-        // Create RAG service
-        ragService = new RAGService(embeddingStore, embeddingModel, chatModel);
+        // Create RAG service; the BM25 index is filled while documents load (rag.retrieval.mode)
+        lexicalIndex = LexicalIndex.fromConfig(embeddingStore);
+        ragService = new RAGService(embeddingStore, embeddingModel, chatModel, null, lexicalIndex);
         
         System.out.println("✅ System ready!");
     }
@@ -71,30 +61,23 @@ public class InteractiveRAG {
     private void loadAllDocuments() {
         System.out.println("📚 Loading documents...");
         
-        File documentsDir = new File("documents");
+        File documentsDir = new File(RAGConfig.documentsDir());
         if (!documentsDir.exists()) {
             System.out.println("⚠️  No documents directory found");
             return;
         }
         
-        File[] files = documentsDir.listFiles((dir, name) -> name.endsWith(".txt"));
-        
-        if (files == null || files.length == 0) {
-            System.out.println("⚠️  No .txt files found in documents directory");
-            return;
-        }
-        
-        DocumentLoader loader = new DocumentLoader(embeddingModel, embeddingStore);
+        // Chunks already embedded on a previous run are read from the on-disk cache
+        EmbeddingModel ingestionEmbeddingModel = CachingEmbeddingModel.wrap(embeddingModel, "nomic-embed-text");
+        DocumentLoader loader = new DocumentLoader(ingestionEmbeddingModel, embeddingStore, VectorStoreConfig.createEmbeddingRemover(embeddingStore));
         
-        for (File file : files) {
-            try {
-                System.out.println("Loading: " + file.getName());
-                // You might want to modify DocumentLoader to accept file parameter
-                // For now, it loads documents/data.txt
-                loader.ingestDocument();
-            } catch (Exception e) {
-                System.err.println("Failed to load " + file.getName() + ": " + e.getMessage());
+        try {
+            if (lexicalIndex != null) {
+                loader.indexLexically(lexicalIndex);
             }
+            loader.ingestDocuments();
+        } catch (Exception e) {
+            System.err.println("Failed to load documents: " + e.getMessage());
         }
         
         System.out.println("✅ Documents loaded!");
@@ -0,0 +1,406 @@
+package com.rag.project;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Pull parser that decodes UTF-8 JSON straight from a stream through a fixed byte buffer.
+// Instances are pooled, so a request body is parsed without copying it into a String first;
+// the only allocations are the strings and numbers the caller asks for.
+//
+//   JsonReader json = JsonReader.acquire(in, maxBytes);
+//   try {
+//       json.beginObject();
+//       while (json.hasNext()) { switch (json.nextName()) { ... default: json.skipValue(); } }
+//       json.endObject();
+//   } finally {
+//       json.release();
+//   }
+public class JsonReader {
+
+    public enum Token { BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, STRING, NUMBER, BOOLEAN, NULL, END }
+
+    private static final int MAX_DEPTH = 32;
+    private static final Queue<JsonReader> POOL = new ConcurrentLinkedQueue<>();
+
+    private final byte[] buffer = new byte[8192];
+    private final StringBuilder string = new StringBuilder(256);
+    // needsComma[d]: an element has already been read at depth d
+    private final boolean[] needsComma = new boolean[MAX_DEPTH + 1];
+    private InputStream in;
+    private long maxBytes;
+    private long consumed;
+    private int pos;
+    private int limit;
+    private int depth;
+
+    public static JsonReader acquire(InputStream in, long maxBytes) {
+        JsonReader reader = POOL.poll();
+        if (reader == null) {
+            reader = new JsonReader();
+        }
+        reader.in = in;
+        reader.maxBytes = maxBytes;
+        reader.consumed = 0;
+        reader.pos = 0;
+        reader.limit = 0;
+        reader.depth = 0;
+        reader.needsComma[0] = false;
+        return reader;
+    }
+
+    public void release() {
+        in = null;
+        if (string.capacity() > 64 * 1024) {
+            // Do not keep a huge builder alive because of one large request
+            string.setLength(0);
+            string.trimToSize();
+        }
+        POOL.offer(this);
+    }
+
+    public Token peek() throws IOException {
+        int c = peekByte();
+        switch (c) {
+            case -1: return Token.END;
+            case '{': return Token.BEGIN_OBJECT;
+            case '}': return Token.END_OBJECT;
+            case '[': return Token.BEGIN_ARRAY;
+            case ']': return Token.END_ARRAY;
+            case '"': return Token.STRING;
+            case 't':
+            case 'f': return Token.BOOLEAN;
+            case 'n': return Token.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return Token.NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    public void beginObject() throws IOException {
+        begin('{');
+    }
+
+    public void endObject() throws IOException {
+        end('}');
+    }
+
+    public void beginArray() throws IOException {
+        begin('[');
+    }
+
+    public void endArray() throws IOException {
+        end(']');
+    }
+
+    // True if the current object or array has another element; consumes the separating comma
+    public boolean hasNext() throws IOException {
+        int c = peekByte();
+        if (c == '}' || c == ']' || c == -1) {
+            return false;
+        }
+        if (needsComma[depth]) {
+            if (c != ',') {
+                throw syntaxError("Expected ','");
+            }
+            pos++;
+            needsComma[depth] = false;
+        }
+        return true;
+    }
+
+    public String nextName() throws IOException {
+        if (peekByte() != '"') {
+            throw syntaxError("Expected a property name");
+        }
+        pos++;
+        String name = readString();
+        if (peekByte() != ':') {
+            throw syntaxError("Expected ':'");
+        }
+        pos++;
+        return name;
+    }
+
+    // JSON null is returned as null
+    public String nextString() throws IOException {
+        int c = peekByte();
+        if (c == 'n') {
+            nextNull();
+            return null;
+        }
+        if (c != '"') {
+            throw syntaxError("Expected a string");
+        }
+        pos++;
+        String value = readString();
+        valueRead();
+        return value;
+    }
+
+    public boolean nextBoolean() throws IOException {
+        int c = peekByte();
+        if (c == 't') {
+            expectLiteral("true");
+            valueRead();
+            return true;
+        }
+        if (c == 'f') {
+            expectLiteral("false");
+            valueRead();
+            return false;
+        }
+        throw syntaxError("Expected a boolean");
+    }
+
+    public double nextDouble() throws IOException {
+        String number = readNumber();
+        valueRead();
+        try {
+            return Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            throw syntaxError("Invalid number " + number);
+        }
+    }
+
+    public int nextInt() throws IOException {
+        double value = nextDouble();
+        if (value != Math.rint(value) || value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw syntaxError("Expected an integer but got " + value);
+        }
+        return (int) value;
+    }
+
+    public void nextNull() throws IOException {
+        if (peekByte() != 'n') {
+            throw syntaxError("Expected null");
+        }
+        expectLiteral("null");
+        valueRead();
+    }
+
+    public void skipValue() throws IOException {
+        switch (peek()) {
+            case BEGIN_OBJECT:
+                beginObject();
+                while (hasNext()) {
+                    nextName();
+                    skipValue();
+                }
+                endObject();
+                break;
+            case BEGIN_ARRAY:
+                beginArray();
+                while (hasNext()) {
+                    skipValue();
+                }
+                endArray();
+                break;
+            case STRING:
+                nextString();
+                break;
+            case NUMBER:
+                readNumber();
+                valueRead();
+                break;
+            case BOOLEAN:
+                nextBoolean();
+                break;
+            case NULL:
+                nextNull();
+                break;
+            default:
+                throw syntaxError("Expected a value");
+        }
+    }
+
+    private void begin(char open) throws IOException {
+        if (peekByte() != open) {
+            throw syntaxError("Expected '" + open + "'");
+        }
+        if (depth == MAX_DEPTH) {
+            throw syntaxError("Nesting too deep");
+        }
+        pos++;
+        needsComma[++depth] = false;
+    }
+
+    private void end(char close) throws IOException {
+        if (peekByte() != close || depth == 0) {
+            throw syntaxError("Expected '" + close + "'");
+        }
+        pos++;
+        depth--;
+        valueRead();
+    }
+
+    private void valueRead() {
+        needsComma[depth] = true;
+    }
+
+    // Reads after the opening quote up to and including the closing one
+    private String readString() throws IOException {
+        string.setLength(0);
+        while (true) {
+            if (pos == limit && !fill()) {
+                throw syntaxError("Unterminated string");
+            }
+            int b = buffer[pos++] & 0xFF;
+            if (b == '"') {
+                return string.toString();
+            }
+            if (b == '\\') {
+                readEscape();
+            } else if (b < 0x20) {
+                throw syntaxError("Unescaped control character in string");
+            } else if (b < 0x80) {
+                string.append((char) b);
+            } else {
+                readMultiByte(b);
+            }
+        }
+    }
+
+    private void readEscape() throws IOException {
+        int c = nextByte();
+        switch (c) {
+            case '"': string.append('"'); break;
+            case '\\': string.append('\\'); break;
+            case '/': string.append('/'); break;
+            case 'b': string.append('\b'); break;
+            case 'f': string.append('\f'); break;
+            case 'n': string.append('\n'); break;
+            case 'r': string.append('\r'); break;
+            case 't': string.append('\t'); break;
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(nextByte(), 16);
+                    if (digit < 0) {
+                        throw syntaxError("Invalid \\u escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                // Surrogate pairs arrive as two escapes and are appended one half at a time
+                string.append((char) value);
+                break;
+            default:
+                throw syntaxError("Invalid escape '\\" + (char) c + "'");
+        }
+    }
+
+    // Malformed sequences decode to U+FFFD, like new String(bytes, UTF_8)
+    private void readMultiByte(int lead) throws IOException {
+        int extra;
+        int codePoint;
+        if (lead >= 0xC2 && lead <= 0xDF) {
+            extra = 1;
+            codePoint = lead & 0x1F;
+        } else if (lead >= 0xE0 && lead <= 0xEF) {
+            extra = 2;
+            codePoint = lead & 0x0F;
+        } else if (lead >= 0xF0 && lead <= 0xF4) {
+            extra = 3;
+            codePoint = lead & 0x07;
+        } else {
+            string.append('\uFFFD');
+            return;
+        }
+        for (int i = 0; i < extra; i++) {
+            if (pos == limit && !fill()) {
+                throw syntaxError("Unterminated string");
+            }
+            int b = buffer[pos] & 0xFF;
+            if ((b & 0xC0) != 0x80) {
+                string.append('\uFFFD');
+                return;
+            }
+            pos++;
+            codePoint = (codePoint << 6) | (b & 0x3F);
+        }
+        if ((extra == 2 && (codePoint < 0x800 || (codePoint >= 0xD800 && codePoint <= 0xDFFF)))
+                || (extra == 3 && (codePoint < 0x10000 || codePoint > 0x10FFFF))) {
+            string.append('\uFFFD');
+        } else {
+            string.appendCodePoint(codePoint);
+        }
+    }
+
+    private String readNumber() throws IOException {
+        if (peek() != Token.NUMBER) {
+            throw syntaxError("Expected a number");
+        }
+        string.setLength(0);
+        while (pos < limit || fill()) {
+            int c = buffer[pos];
+            if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+                string.append((char) c);
+                pos++;
+            } else {
+                break;
+            }
+        }
+        return string.toString();
+    }
+
+    private void expectLiteral(String literal) throws IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (nextByte() != literal.charAt(i)) {
+                throw syntaxError("Expected " + literal);
+            }
+        }
+    }
+
+    // Skips whitespace and returns the next byte without consuming it, or -1 at the end
+    private int peekByte() throws IOException {
+        while (pos < limit || fill()) {
+            int c = buffer[pos];
+            if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                pos++;
+            } else {
+                return c & 0xFF;
+            }
+        }
+        return -1;
+    }
+
+    private int nextByte() throws IOException {
+        if (pos == limit && !fill()) {
+            throw syntaxError("Unexpected end of input");
+        }
+        return buffer[pos++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        if (in == null) {
+            return false;
+        }
+        int read = in.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        consumed += read;
+        if (consumed > maxBytes) {
+            throw new MalformedJsonException("Request body larger than " + maxBytes + " bytes");
+        }
+        pos = 0;
+        limit = read;
+        return true;
+    }
+
+    private MalformedJsonException syntaxError(String message) {
+        return new MalformedJsonException(message + " at byte " + (consumed - limit + pos));
+    }
+
+    // Invalid input, as opposed to a failure reading the stream
+    public static class MalformedJsonException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        MalformedJsonException(String message) {
+            super(message);
+        }
+    }
+}
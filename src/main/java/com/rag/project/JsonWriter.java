@@ -0,0 +1,247 @@
+package com.rag.project;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Writes UTF-8 JSON straight to a stream through a fixed byte buffer, escaping strings as
+// they are encoded, so a long answer is never copied into an intermediate String or byte[].
+// Instances are pooled like JsonReader: acquire(out), write, then release(), which flushes.
+public class JsonWriter {
+
+    private static final int MAX_DEPTH = 32;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final Queue<JsonWriter> POOL = new ConcurrentLinkedQueue<>();
+
+    private final byte[] buffer = new byte[8192];
+    // first[d]: nothing has been written yet at depth d, so no comma is needed
+    private final boolean[] first = new boolean[MAX_DEPTH + 1];
+    private OutputStream out;
+    private int count;
+    private int depth;
+    private boolean afterName;
+
+    public static JsonWriter acquire(OutputStream out) {
+        JsonWriter writer = POOL.poll();
+        if (writer == null) {
+            writer = new JsonWriter();
+        }
+        writer.out = out;
+        writer.count = 0;
+        writer.depth = 0;
+        writer.first[0] = true;
+        writer.afterName = false;
+        return writer;
+    }
+
+    // `value` as a JSON string, quotes included, for the few places that build JSON as text
+    // (error bodies, SSE frames, /ready); escaped by the same code as every other string
+    public static String quote(String value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(value.length() + 16);
+        try {
+            JsonWriter json = acquire(bytes);
+            try {
+                json.value(value);
+            } finally {
+                json.release();
+            }
+        } catch (IOException e) {
+            // Not thrown by a ByteArrayOutputStream
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    // Flushes what is left and returns the writer to the pool; the stream is not closed
+    public void release() throws IOException {
+        try {
+            flush();
+        } finally {
+            out = null;
+            POOL.offer(this);
+        }
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    public JsonWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    public JsonWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    public JsonWriter name(String name) throws IOException {
+        separator();
+        writeString(name);
+        writeByte(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        separator();
+        writeString(value);
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        separator();
+        writeAscii(value ? "true" : "false");
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        separator();
+        writeAscii(Long.toString(value));
+        return this;
+    }
+
+    // NaN and infinities have no JSON form and are written as null
+    public JsonWriter value(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return nullValue();
+        }
+        separator();
+        writeAscii(Double.toString(value));
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        separator();
+        writeAscii("null");
+        return this;
+    }
+
+    // Ends a top-level value for newline-delimited JSON and sends it
+    public void newline() throws IOException {
+        if (depth != 0) {
+            throw new IllegalStateException("Unclosed object or array");
+        }
+        writeByte('\n');
+        first[0] = true;
+        flush();
+    }
+
+    public void flush() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+        out.flush();
+    }
+
+    private JsonWriter open(char bracket) throws IOException {
+        if (depth == MAX_DEPTH) {
+            throw new IllegalStateException("Nesting too deep");
+        }
+        separator();
+        writeByte(bracket);
+        first[++depth] = true;
+        return this;
+    }
+
+    private JsonWriter close(char bracket) throws IOException {
+        if (depth == 0) {
+            throw new IllegalStateException("Nothing to close");
+        }
+        depth--;
+        writeByte(bracket);
+        return this;
+    }
+
+    private void separator() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (!first[depth]) {
+            writeByte(',');
+        }
+        first[depth] = false;
+    }
+
+    private void writeString(String value) throws IOException {
+        writeByte('"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (count + 12 > buffer.length) {
+                drain();
+            }
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+                buffer[count++] = (byte) c;
+            } else if (c < 0x80) {
+                escape(c);
+            } else if (c < 0x800) {
+                buffer[count++] = (byte) (0xC0 | (c >> 6));
+                buffer[count++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[count++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[count++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate, encoded the way String.getBytes(UTF_8) does
+                buffer[count++] = '?';
+            } else {
+                buffer[count++] = (byte) (0xE0 | (c >> 12));
+                buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[count++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        writeByte('"');
+    }
+
+    private void escape(char c) {
+        buffer[count++] = '\\';
+        switch (c) {
+            case '"': buffer[count++] = '"'; break;
+            case '\\': buffer[count++] = '\\'; break;
+            case '\n': buffer[count++] = 'n'; break;
+            case '\r': buffer[count++] = 'r'; break;
+            case '\t': buffer[count++] = 't'; break;
+            case '\b': buffer[count++] = 'b'; break;
+            case '\f': buffer[count++] = 'f'; break;
+            default:
+                buffer[count++] = 'u';
+                buffer[count++] = '0';
+                buffer[count++] = '0';
+                buffer[count++] = HEX[(c >> 4) & 0xF];
+                buffer[count++] = HEX[c & 0xF];
+        }
+    }
+
+    private void writeAscii(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            writeByte(text.charAt(i));
+        }
+    }
+
+    private void writeByte(char c) throws IOException {
+        if (count == buffer.length) {
+            drain();
+        }
+        buffer[count++] = (byte) c;
+    }
+
+    private void drain() throws IOException {
+        out.write(buffer, 0, count);
+        count = 0;
+    }
+}
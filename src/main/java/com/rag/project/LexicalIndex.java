@@ -0,0 +1,465 @@
+package com.rag.project;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// In-memory BM25 index over the ingested segments, kept in step with the vector store by
+// DocumentLoader. Documents are numbered densely; each term's posting list is a pair of int
+// arrays (document numbers, term frequencies). Removed documents are skipped at query time
+// and dropped when more than half of the index is dead.
+//
+// The text is not held: only the IDs, lengths, the posting lists each document is in (so a
+// removal keeps document frequencies exact) and the metadata a SearchScope filters on, shared
+// by every segment of a file. The top matches are read back from the store by ID. Stores
+// that are not a SegmentLookup fall back to keeping the segments here.
+public class LexicalIndex {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final int MAX_TERM_LENGTH = 64;
+    // Kept out of the index so they neither bloat posting lists nor count towards confidence
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "by", "can", "do", "does", "for", "from", "how",
+            "in", "is", "it", "its", "of", "on", "or", "that", "the", "this", "to", "was", "what",
+            "when", "where", "which", "who", "why", "with");
+    // Differ between segments of one file, and are not worth a scope filter
+    private static final Set<String> PER_SEGMENT_METADATA = Set.of("index", IncrementalIndexer.CHUNK_HASH_METADATA);
+    private static final Postings[] NO_POSTINGS = new Postings[0];
+    // Per-thread score accumulator, reused across queries and cleared after each
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final SegmentLookup lookup;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final Map<String, Integer> documentsById = new HashMap<>();
+    // Equal scope metadata is stored once; rebuilt from the live documents on compaction
+    private final Map<Map<String, String>, Map<String, String>> scopeMetadata = new HashMap<>();
+    private String[] ids = new String[1024];
+    private int[] lengths = new int[1024];
+    private Postings[][] documentPostings = new Postings[1024][];
+    private Map<String, String>[] scopes = newScopes(1024);
+    // Only used without a lookup
+    private TextSegment[] segments;
+    private final BitSet removed = new BitSet();
+    private int documents;
+    private int live;
+    private long totalLength;
+
+    // `lookup` reads the text of matches back from the store; null keeps the segments here
+    public LexicalIndex(SegmentLookup lookup) {
+        this.lookup = lookup;
+        this.segments = lookup == null ? new TextSegment[1024] : null;
+        Metrics.gauge("rag_lexical_documents", "Segments in the lexical index", "gauge", this::size);
+    }
+
+    // Null when rag.retrieval.mode is "vector", so nothing is indexed
+    public static LexicalIndex fromConfig(EmbeddingStore<TextSegment> store) {
+        if ("vector".equals(RAGConfig.retrievalMode())) {
+            return null;
+        }
+        return new LexicalIndex(store instanceof SegmentLookup ? (SegmentLookup) store : null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, String>[] newScopes(int capacity) {
+        return (Map<String, String>[]) new Map<?, ?>[capacity];
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return live;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Same signature as IngestionPipeline.InsertListener; an ID already indexed is replaced
+    public void addAll(List<TextSegment> segments, List<String> ids) {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < segments.size(); i++) {
+                remove(ids.get(i));
+                add(ids.get(i), segments.get(i));
+            }
+            compactIfSparse();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeAll(Collection<String> ids) {
+        lock.writeLock().lock();
+        try {
+            for (String id : ids) {
+                remove(id);
+            }
+            compactIfSparse();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void add(String id, TextSegment segment) {
+        Map<String, int[]> frequencies = new HashMap<>();
+        int length = 0;
+        for (String term : terms(segment.text())) {
+            frequencies.computeIfAbsent(term, key -> new int[1])[0]++;
+            length++;
+        }
+        grow();
+        int document = documents++;
+        ids[document] = id;
+        lengths[document] = length;
+        scopes[document] = scopeMetadata(segment);
+        if (segments != null) {
+            segments[document] = segment;
+        }
+        documentsById.put(id, document);
+        Postings[] lists = frequencies.isEmpty() ? NO_POSTINGS : new Postings[frequencies.size()];
+        int i = 0;
+        for (Map.Entry<String, int[]> entry : frequencies.entrySet()) {
+            Postings list = postings.computeIfAbsent(entry.getKey(), key -> new Postings());
+            list.add(document, entry.getValue()[0]);
+            lists[i++] = list;
+        }
+        documentPostings[document] = lists;
+        live++;
+        totalLength += length;
+    }
+
+    private void grow() {
+        if (documents < ids.length) {
+            return;
+        }
+        int capacity = documents * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        documentPostings = Arrays.copyOf(documentPostings, capacity);
+        scopes = Arrays.copyOf(scopes, capacity);
+        if (segments != null) {
+            segments = Arrays.copyOf(segments, capacity);
+        }
+    }
+
+    private Map<String, String> scopeMetadata(TextSegment segment) {
+        Map<String, String> metadata = new HashMap<>(segment.metadata().asMap());
+        metadata.keySet().removeAll(PER_SEGMENT_METADATA);
+        return scopeMetadata.computeIfAbsent(metadata, key -> key);
+    }
+
+    private void remove(String id) {
+        Integer document = documentsById.remove(id);
+        if (document == null) {
+            return;
+        }
+        // Document frequencies must stay exact for IDF
+        for (Postings list : documentPostings[document]) {
+            list.live--;
+        }
+        removed.set(document);
+        documentPostings[document] = null;
+        scopes[document] = null;
+        if (segments != null) {
+            segments[document] = null;
+        }
+        live--;
+        totalLength -= lengths[document];
+    }
+
+    private void compactIfSparse() {
+        if (documents > 1024 && documents - live > live) {
+            compact();
+        }
+    }
+
+    // Renumbers the live documents and rewrites every posting list without the removed ones;
+    // the text is not needed, as each list is remapped in place
+    private void compact() {
+        int capacity = Math.max(1024, live * 2);
+        int[] renumbered = new int[documents];
+        String[] liveIds = new String[capacity];
+        int[] liveLengths = new int[capacity];
+        Postings[][] livePostings = new Postings[capacity][];
+        Map<String, String>[] liveScopes = newScopes(capacity);
+        TextSegment[] liveSegments = segments == null ? null : new TextSegment[capacity];
+        scopeMetadata.clear();
+        int count = 0;
+        for (int document = 0; document < documents; document++) {
+            if (removed.get(document)) {
+                renumbered[document] = -1;
+                continue;
+            }
+            renumbered[document] = count;
+            liveIds[count] = ids[document];
+            liveLengths[count] = lengths[document];
+            livePostings[count] = documentPostings[document];
+            liveScopes[count] = scopeMetadata.computeIfAbsent(scopes[document], key -> key);
+            if (liveSegments != null) {
+                liveSegments[count] = segments[document];
+            }
+            documentsById.put(liveIds[count], count);
+            count++;
+        }
+        postings.values().removeIf(list -> !list.renumber(renumbered));
+        removed.clear();
+        ids = liveIds;
+        lengths = liveLengths;
+        documentPostings = livePostings;
+        scopes = liveScopes;
+        segments = liveSegments;
+        documents = count;
+    }
+
+    public Result search(String query, int maxResults) {
+        return search(query, maxResults, SearchScope.ALL);
+    }
+
+    // Documents outside the scope are skipped as they are first reached in a posting list
+    public Result search(String query, int maxResults, SearchScope scope) {
+        long start = System.nanoTime();
+        boolean filtered = !scope.isAll();
+        List<String> queryTerms = new ArrayList<>(new LinkedHashSet<>(terms(query)));
+        if (queryTerms.isEmpty() || maxResults <= 0) {
+            return new Result(new ArrayList<>(), 0, System.nanoTime() - start);
+        }
+        Hits hits;
+        lock.readLock().lock();
+        try {
+            if (live == 0) {
+                return new Result(new ArrayList<>(), 0, System.nanoTime() - start);
+            }
+            Scratch scratch = SCRATCH.get();
+            scratch.ensure(documents);
+            float[] scores = scratch.scores;
+            int[] touched = scratch.touched;
+            int touchedCount = 0;
+
+            float averageLength = (float) totalLength / live;
+            float[] idfs = new float[queryTerms.size()];
+            float totalIdf = 0;
+            for (int t = 0; t < queryTerms.size(); t++) {
+                Postings list = postings.get(queryTerms.get(t));
+                int frequency = list == null ? 0 : list.live;
+                // Terms missing from the corpus keep their full weight, so they lower confidence
+                idfs[t] = (float) Math.log(1 + (live - frequency + 0.5) / (frequency + 0.5));
+                totalIdf += idfs[t];
+                if (list == null) {
+                    continue;
+                }
+                for (int i = 0; i < list.size; i++) {
+                    int document = list.documents[i];
+                    if (removed.get(document)) {
+                        continue;
+                    }
+                    if (scores[document] < 0) {
+                        continue;
+                    }
+                    if (scores[document] == 0) {
+                        touched[touchedCount++] = document;
+                        if (filtered && !scope.matches(scopes[document])) {
+                            scores[document] = -1;
+                            continue;
+                        }
+                    }
+                    int tf = list.frequencies[i];
+                    float norm = K1 * (1 - B + B * lengths[document] / averageLength);
+                    scores[document] += idfs[t] * tf * (K1 + 1) / (tf + norm);
+                }
+            }
+
+            // Top maxResults by insertion into a short sorted array
+            int k = Math.min(maxResults, touchedCount);
+            int[] topDocuments = new int[k];
+            float[] topScores = new float[k];
+            int filled = 0;
+            for (int i = 0; i < touchedCount; i++) {
+                int document = touched[i];
+                float score = scores[document];
+                scores[document] = 0;
+                if (score < 0 || filled == k && score <= topScores[k - 1]) {
+                    continue;
+                }
+                int position = filled < k ? filled++ : k - 1;
+                while (position > 0 && topScores[position - 1] < score) {
+                    topScores[position] = topScores[position - 1];
+                    topDocuments[position] = topDocuments[position - 1];
+                    position--;
+                }
+                topScores[position] = score;
+                topDocuments[position] = document;
+            }
+
+            String[] topIds = new String[filled];
+            TextSegment[] topSegments = new TextSegment[filled];
+            for (int i = 0; i < filled; i++) {
+                topIds[i] = ids[topDocuments[i]];
+                topSegments[i] = segments == null ? null : segments[topDocuments[i]];
+            }
+            double confidence = 0;
+            if (filled > 0 && totalIdf > 0) {
+                float covered = 0;
+                for (int t = 0; t < queryTerms.size(); t++) {
+                    Postings list = postings.get(queryTerms.get(t));
+                    if (list != null && list.contains(topDocuments[0])) {
+                        covered += idfs[t];
+                    }
+                }
+                double runnerUp = filled > 1 ? topScores[1] / topScores[0] : 0;
+                confidence = covered / totalIdf * (1 - runnerUp);
+            }
+            hits = new Hits(topIds, topScores, topSegments, confidence);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return new Result(hits.matches(lookup), hits.confidence, System.nanoTime() - start);
+    }
+
+    // Lower-cased runs of letters, digits and underscores, so identifiers like ERR_4512 stay whole
+    static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            boolean termChar = Character.isLetterOrDigit(c) || c == '_';
+            if (termChar && start < 0) {
+                start = i;
+            } else if (!termChar && start >= 0) {
+                int length = i - start;
+                if (length <= MAX_TERM_LENGTH && (length > 1 || Character.isDigit(text.charAt(start)))) {
+                    String term = text.substring(start, i).toLowerCase(Locale.ROOT);
+                    if (!STOP_WORDS.contains(term)) {
+                        terms.add(term);
+                    }
+                }
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    // Best matches first, scored by BM25. Confidence is the IDF-weighted share of query terms
+    // found in the top match, scaled down by how close the runner-up scored: 1 for a single
+    // match containing every term, near 0 when many segments match about equally.
+    public static class Result {
+        private final List<EmbeddingMatch<TextSegment>> matches;
+        private final double confidence;
+        private final long searchNanos;
+
+        Result(List<EmbeddingMatch<TextSegment>> matches, double confidence, long searchNanos) {
+            this.matches = matches;
+            this.confidence = confidence;
+            this.searchNanos = searchNanos;
+        }
+
+        public List<EmbeddingMatch<TextSegment>> matches() {
+            return matches;
+        }
+
+        public double confidence() {
+            return confidence;
+        }
+
+        public long searchNanos() {
+            return searchNanos;
+        }
+    }
+
+    // The top matches found under the read lock; their text is looked up after it is released
+    private static class Hits {
+        final String[] ids;
+        final float[] scores;
+        final TextSegment[] segments;
+        final double confidence;
+
+        Hits(String[] ids, float[] scores, TextSegment[] segments, double confidence) {
+            this.ids = ids;
+            this.scores = scores;
+            this.segments = segments;
+            this.confidence = confidence;
+        }
+
+        // A match removed from the store since it was scored is dropped
+        List<EmbeddingMatch<TextSegment>> matches(SegmentLookup lookup) {
+            Map<String, TextSegment> found = lookup == null || ids.length == 0
+                    ? new HashMap<>()
+                    : lookup.findAll(Arrays.asList(ids));
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(ids.length);
+            for (int i = 0; i < ids.length; i++) {
+                TextSegment segment = lookup == null ? segments[i] : found.get(ids[i]);
+                if (segment != null) {
+                    matches.add(new EmbeddingMatch<>((double) scores[i], ids[i], null, segment));
+                }
+            }
+            return matches;
+        }
+    }
+
+    private static class Postings {
+        int[] documents = new int[4];
+        int[] frequencies = new int[4];
+        int size;
+        // Entries whose document has not been removed, i.e. the document frequency
+        int live;
+
+        void add(int document, int frequency) {
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            documents[size] = document;
+            frequencies[size] = frequency;
+            size++;
+            live++;
+        }
+
+        // Keeps the entries of live documents under their new numbers; false if none is left
+        boolean renumber(int[] renumbered) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int document = renumbered[documents[i]];
+                if (document >= 0) {
+                    documents[kept] = document;
+                    frequencies[kept] = frequencies[i];
+                    kept++;
+                }
+            }
+            size = kept;
+            if (size < documents.length / 4) {
+                documents = Arrays.copyOf(documents, Math.max(4, size));
+                frequencies = Arrays.copyOf(frequencies, documents.length);
+            }
+            return size > 0;
+        }
+
+        // Documents are numbered in insertion order, so each list is sorted
+        boolean contains(int document) {
+            return Arrays.binarySearch(documents, 0, size, document) >= 0;
+        }
+    }
+
+    private static class Scratch {
+        float[] scores = new float[0];
+        int[] touched = new int[0];
+
+        void ensure(int documents) {
+            if (scores.length < documents) {
+                scores = new float[Math.max(documents, scores.length * 2)];
+                touched = new int[scores.length];
+            }
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package com.rag.project;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+// Open-loop load generator for RAGWebServer. By default it starts the server in this JVM,
+// wired to a FakeOllamaServer and the in-memory vector store, so no external services are
+// needed. Requests are sent at a constant arrival rate whether or not earlier ones have
+// finished, and latency is measured from the scheduled send time, so a stalled server
+// shows up as latency instead of silently lowering the offered load.
+//
+//   mvn compile exec:java -Dexec.mainClass="com.rag.project.LoadTest" -Dexec.args="--rates 5,10,20,40 --duration 30"
+//   mvn compile exec:java -Dexec.mainClass="com.rag.project.LoadTest" -Dexec.args="--rates 10 --duration 3600 --report 60"
+//   mvn compile exec:java -Dexec.mainClass="com.rag.project.LoadTest" -Dexec.args="--target http://localhost:8081"
+public class LoadTest {
+
+    private final String target;
+    private final boolean stream;
+    private final int maxOutstanding;
+    private final HttpClient client;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicReference<Stats> interval = new AtomicReference<>(new Stats());
+    private final AtomicReference<Stats> step = new AtomicReference<>(new Stats());
+
+    LoadTest(String target, boolean stream, int maxOutstanding) {
+        this.target = target;
+        this.stream = stream;
+        this.maxOutstanding = maxOutstanding;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newCachedThreadPool(runnable -> {
+                    Thread thread = new Thread(runnable, "load-client");
+                    thread.setDaemon(true);
+                    return thread;
+                }))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        List<FakeOllamaServer> ollamas = new ArrayList<>();
+        RAGWebServer server = null;
+        String target = options.target;
+
+        if (target == null) {
+            // Several fake servers exercise OllamaBackendPool's balancing
+            StringBuilder urls = new StringBuilder();
+            for (int i = 0; i < options.backends; i++) {
+                FakeOllamaServer ollama = FakeOllamaServer.start(0, RAGConfig.embeddingDimension(), options.embedLatencyMillis,
+                        options.firstTokenMillis, options.tokensPerSecond, options.answerTokens);
+                ollamas.add(ollama);
+                urls.append(urls.length() == 0 ? "" : ",").append(ollama.url());
+            }
+            int port = freePort();
+            Path documents = writeDocuments(options.documents);
+            setDefault("rag.ollama.baseUrls", urls.toString());
+            setDefault("rag.store", "memory");
+            setDefault("rag.documents.dir", documents.toString());
+            setDefault("rag.embeddingCache.enabled", "false");
+            // Every question is new, but the semantic cache could still match paraphrases
+            setDefault("rag.answerCache.enabled", "false");
+            System.setProperty("rag.server.port", String.valueOf(port));
+
+            System.out.printf("Fake Ollama at %s: embed %d ms, first token %d ms, %.0f tokens/s, %d tokens per answer%n",
+                    urls, options.embedLatencyMillis, options.firstTokenMillis,
+                    options.tokensPerSecond, options.answerTokens);
+            server = new RAGWebServer();
+            server.start();
+            target = "http://localhost:" + port;
+        }
+
+        LoadTest test = new LoadTest(target, options.stream, options.maxOutstanding);
+        test.awaitHealthy(Duration.ofSeconds(60));
+        System.out.println("Target " + target + (options.stream ? "/ask/stream" : "/ask")
+                + ", " + options.rates.size() + " step(s) of " + options.durationSeconds + " s"
+                + (target.equals(options.target) ? "" : " (heap and GC figures include the server)"));
+
+        List<String> summaries = new ArrayList<>();
+        try {
+            for (double rate : options.rates) {
+                if (options.warmupSeconds > 0) {
+                    test.run(rate, options.warmupSeconds, 0);
+                }
+                Stats result = test.run(rate, options.durationSeconds, options.reportSeconds);
+                summaries.add(result.summary(rate, options.durationSeconds, options.sloP99Seconds));
+            }
+        } finally {
+            System.out.println();
+            System.out.println(Stats.SUMMARY_HEADER);
+            summaries.forEach(System.out::println);
+            if (server != null) {
+                server.stop();
+            }
+            ollamas.forEach(FakeOllamaServer::close);
+        }
+        System.exit(0);
+    }
+
+    // Sends `rate` requests per second for `seconds`; reports every `reportSeconds` (0 = silent warm-up)
+    Stats run(double rate, int seconds, int reportSeconds) {
+        step.set(new Stats());
+        interval.set(new Stats());
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "load-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long started = System.nanoTime();
+        if (reportSeconds > 0) {
+            System.out.printf("%n--- %.1f req/s for %d s ---%n", rate, seconds);
+            reporter.scheduleAtFixedRate(() -> System.out.println(interval.getAndSet(new Stats())
+                            .line(rate, (System.nanoTime() - started) / 1_000_000_000L, outstanding.get())),
+                    reportSeconds, reportSeconds, TimeUnit.SECONDS);
+        }
+
+        long intervalNanos = (long) (1_000_000_000L / rate);
+        long end = started + TimeUnit.SECONDS.toNanos(seconds);
+        for (long next = started; next < end; next += intervalNanos) {
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            fire(next);
+        }
+
+        // Give requests still in flight a chance to finish before closing the step
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (outstanding.get() > 0 && System.nanoTime() < drainDeadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+        }
+        reporter.shutdownNow();
+        return step.get();
+    }
+
+    private void fire(long scheduledNanos) {
+        Stats intervalStats = interval.get();
+        Stats stepStats = step.get();
+        intervalStats.sent.incrementAndGet();
+        stepStats.sent.incrementAndGet();
+        if (outstanding.incrementAndGet() > maxOutstanding) {
+            // The generator would run out of memory long before the server; count it as a failure
+            outstanding.decrementAndGet();
+            interval.get().dropped.incrementAndGet();
+            stepStats.dropped.incrementAndGet();
+            return;
+        }
+
+        String query = "What is the capital of France? (request " + sequence.incrementAndGet() + ")";
+        HttpRequest request = HttpRequest.newBuilder(URI.create(target + (stream ? "/ask/stream" : "/ask")))
+                .timeout(Duration.ofSeconds(120))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"query\":" + JsonWriter.quote(query) + "}"))
+                .build();
+        client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, error) -> {
+            long latency = System.nanoTime() - scheduledNanos;
+            outstanding.decrementAndGet();
+            int status;
+            if (error != null) {
+                status = -1;
+            } else if (response.statusCode() == 200 && (stream ? response.body().contains("event: error")
+                    : response.body().contains("Error processing query"))) {
+                // RAGService reports model failures inside a 200 answer
+                status = 500;
+            } else {
+                status = response.statusCode();
+            }
+            interval.get().record(status, latency);
+            stepStats.record(status, latency);
+        });
+    }
+
+    private void awaitHealthy(Duration timeout) throws InterruptedException, IOException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        HttpRequest health = HttpRequest.newBuilder(URI.create(target + "/health")).timeout(Duration.ofSeconds(2)).build();
+        while (true) {
+            try {
+                if (client.send(health, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return;
+                }
+            } catch (IOException e) {
+                // Not listening yet
+            }
+            if (System.nanoTime() > deadline) {
+                throw new IOException("Server at " + target + " did not become healthy within " + timeout.getSeconds() + " s");
+            }
+            Thread.sleep(200);
+        }
+    }
+
+    private static Path writeDocuments(int count) throws IOException {
+        Path directory = Files.createTempDirectory("rag-loadtest-docs");
+        directory.toFile().deleteOnExit();
+        String paragraph = "Paris is the capital and most populous city of France. It is located on the Seine river, "
+                + "in the north of the country. The city is a major centre of finance, diplomacy, commerce, "
+                + "fashion, science and the arts.\n\n";
+        for (int i = 0; i < count; i++) {
+            Path file = directory.resolve("doc" + i + ".txt");
+            Files.write(file, (i + ". " + paragraph.repeat(8)).getBytes(StandardCharsets.UTF_8));
+            file.toFile().deleteOnExit();
+        }
+        return directory;
+    }
+
+    private static void setDefault(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    // Counts and latencies for one reporting interval or one rate step, plus the JVM
+    // heap and GC state when it started so deltas can be reported
+    static class Stats {
+        static final String SUMMARY_HEADER = String.format(Locale.ROOT, "%8s %8s %9s %8s %8s %8s %7s %7s %7s %9s  %s",
+                "rate", "sent", "thr/s", "p50", "p95", "p99", "429%", "err%", "drop%", "live MB", "verdict");
+
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong sent = new AtomicLong();
+        final AtomicLong ok = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+        final long startNanos = System.nanoTime();
+        final long gcCountAtStart = gcCount();
+        final long gcMillisAtStart = gcMillis();
+
+        void record(int status, long latencyNanos) {
+            if (status == 200) {
+                ok.incrementAndGet();
+                latency.recordNanos(latencyNanos);
+            } else if (status == 429) {
+                rejected.incrementAndGet();
+            } else {
+                errors.incrementAndGet();
+            }
+        }
+
+        String line(double rate, long elapsedSeconds, int inFlight) {
+            double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+            MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+            return String.format(Locale.ROOT,
+                    "t=%4ds sent %5d ok %5d 429 %4d err %4d drop %4d | %6.1f ok/s p50 %s p95 %s p99 %s | in flight %4d"
+                            + " | heap %4d/%4d MB live %4d MB gc %3d (%4d ms)",
+                    elapsedSeconds, sent.get(), ok.get(), rejected.get(), errors.get(), dropped.get(),
+                    ok.get() / seconds, format(latency.quantileSeconds(0.5)), format(latency.quantileSeconds(0.95)),
+                    format(latency.quantileSeconds(0.99)), inFlight,
+                    heap.getUsed() >> 20, heap.getMax() >> 20, liveHeapBytes() >> 20,
+                    gcCount() - gcCountAtStart, gcMillis() - gcMillisAtStart);
+        }
+
+        String summary(double rate, int seconds, double sloP99) {
+            long total = Math.max(1, sent.get());
+            double p99 = latency.quantileSeconds(0.99);
+            double failed = (rejected.get() + errors.get() + dropped.get()) / (double) total;
+            String verdict = p99 <= sloP99 && failed < 0.01 ? "ok" : "over limit";
+            return String.format(Locale.ROOT, "%8.1f %8d %9.1f %8s %8s %8s %6.2f%% %6.2f%% %6.2f%% %9d  %s",
+                    rate, sent.get(), ok.get() / (double) seconds,
+                    format(latency.quantileSeconds(0.5)), format(latency.quantileSeconds(0.95)), format(p99),
+                    100.0 * rejected.get() / total, 100.0 * errors.get() / total, 100.0 * dropped.get() / total,
+                    liveHeapBytes() >> 20, verdict);
+        }
+
+        private static String format(double seconds) {
+            return seconds < 1 ? String.format(Locale.ROOT, "%.0fms", seconds * 1000) : String.format(Locale.ROOT, "%.2fs", seconds);
+        }
+
+        private static long gcCount() {
+            long count = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, gc.getCollectionCount());
+            }
+            return count;
+        }
+
+        private static long gcMillis() {
+            long millis = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                millis += Math.max(0, gc.getCollectionTime());
+            }
+            return millis;
+        }
+
+        // Heap still in use right after the last collection; steady growth over a soak run means a leak
+        private static long liveHeapBytes() {
+            long live = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                MemoryUsage usage = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+                if (usage != null) {
+                    live += usage.getUsed();
+                }
+            }
+            return live;
+        }
+    }
+
+    static class Options {
+        String target;
+        List<Double> rates = new ArrayList<>(List.of(5.0, 10.0, 20.0, 40.0));
+        int durationSeconds = 30;
+        int warmupSeconds = 5;
+        int reportSeconds = 5;
+        boolean stream;
+        int maxOutstanding = 10_000;
+        double sloP99Seconds = 5.0;
+        long embedLatencyMillis = 20;
+        long firstTokenMillis = 200;
+        double tokensPerSecond = 50;
+        int answerTokens = 60;
+        int documents = 20;
+        int backends = 1;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if ("--stream".equals(arg)) {
+                    options.stream = true;
+                    continue;
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--target":
+                        options.target = value.endsWith("/") ? value.substring(0, value.length() - 1) : value;
+                        break;
+                    case "--rates":
+                        options.rates.clear();
+                        for (String rate : value.split(",")) {
+                            options.rates.add(Double.parseDouble(rate.trim()));
+                        }
+                        break;
+                    case "--duration":
+                        options.durationSeconds = Integer.parseInt(value);
+                        break;
+                    case "--warmup":
+                        options.warmupSeconds = Integer.parseInt(value);
+                        break;
+                    case "--report":
+                        options.reportSeconds = Math.max(1, Integer.parseInt(value));
+                        break;
+                    case "--max-outstanding":
+                        options.maxOutstanding = Integer.parseInt(value);
+                        break;
+                    case "--slo-p99":
+                        options.sloP99Seconds = Double.parseDouble(value);
+                        break;
+                    case "--embed-ms":
+                        options.embedLatencyMillis = Long.parseLong(value);
+                        break;
+                    case "--first-token-ms":
+                        options.firstTokenMillis = Long.parseLong(value);
+                        break;
+                    case "--tokens-per-second":
+                        options.tokensPerSecond = Double.parseDouble(value);
+                        break;
+                    case "--answer-tokens":
+                        options.answerTokens = Integer.parseInt(value);
+                        break;
+                    case "--documents":
+                        options.documents = Integer.parseInt(value);
+                        break;
+                    case "--backends":
+                        options.backends = Math.max(1, Integer.parseInt(value));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+            return options;
+        }
+    }
+}
@@ -0,0 +1,585 @@
+package com.rag.project;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// In-process EmbeddingStore for running without a Milvus server. Vectors are kept
+// L2-normalized in one contiguous float[] (slot i at offset i * dimension), with IDs, text
+// and metadata in parallel arrays. Search is either an exact dot-product scan or an HNSW
+// graph walk. The store is saved to a single file, which is memory-mapped on startup and
+// bulk-copied, so the graph does not have to be rebuilt. Removed entries are marked deleted
+// and dropped when the file is rewritten.
+//
+// File layout: header (magic "RAGS", version, dimension, count, deleted, has index), then
+// count x dimension float32 vectors, the deleted bitmap, the records, and the HNSW graph.
+public class LocalEmbeddingStore implements EmbeddingStore<TextSegment>, EmbeddingRemover, ScopedSearcher, SegmentLookup,
+        Flushable, AutoCloseable {
+
+    private static final int MAGIC = 0x52414753; // "RAGS"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+
+    private final Path file;
+    private final int dimension;
+    private final boolean approximate;
+    private final int hnswM;
+    private final int efConstruction;
+    private final int efSearch;
+    private final int exactThreshold;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private FileChannel lockChannel;
+    private FileLock fileLock;
+
+    private float[] vectors;
+    private String[] ids;
+    private String[] texts;
+    private Map<String, String>[] metadata;
+    private final BitSet deleted = new BitSet();
+    private final Map<String, Integer> slots = new HashMap<>();
+    private int count;
+    private int deletedCount;
+    private HnswIndex index;
+    private boolean dirty;
+
+    // `file` may be null for a purely in-memory store
+    @SuppressWarnings("unchecked")
+    public LocalEmbeddingStore(Path file, int dimension, boolean approximate,
+                               int hnswM, int efConstruction, int efSearch, int exactThreshold) {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("dimension must be positive");
+        }
+        this.file = file;
+        this.dimension = dimension;
+        this.approximate = approximate;
+        this.hnswM = hnswM;
+        this.efConstruction = efConstruction;
+        this.efSearch = Math.max(1, efSearch);
+        this.exactThreshold = Math.max(0, exactThreshold);
+        this.vectors = new float[64 * dimension];
+        this.ids = new String[64];
+        this.texts = new String[64];
+        this.metadata = (Map<String, String>[]) new Map<?, ?>[64];
+        this.index = approximate ? new HnswIndex(dimension, hnswM, efConstruction) : null;
+    }
+
+    // Opens the store at `file`, loading it if it exists. Only one process can hold it at a time.
+    public static LocalEmbeddingStore open(Path file, int dimension, boolean approximate,
+                                           int hnswM, int efConstruction, int efSearch, int exactThreshold) throws IOException {
+        LocalEmbeddingStore store = new LocalEmbeddingStore(file, dimension, approximate,
+                hnswM, efConstruction, efSearch, exactThreshold);
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        Path lockFile = file.resolveSibling(file.getFileName() + ".lock");
+        store.lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            store.fileLock = store.lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Already held by this JVM
+            store.fileLock = null;
+        }
+        if (store.fileLock == null) {
+            store.lockChannel.close();
+            throw new IOException("Vector store " + file + " is in use by another process");
+        }
+        try {
+            if (Files.exists(file)) {
+                store.load();
+            }
+        } catch (IOException | RuntimeException e) {
+            store.close();
+            throw e;
+        }
+        return store;
+    }
+
+    public static LocalEmbeddingStore fromConfig() throws IOException {
+        return open(Paths.get(RAGConfig.localStorePath()),
+                RAGConfig.embeddingDimension(),
+                "hnsw".equalsIgnoreCase(RAGConfig.localStoreIndex()),
+                RAGConfig.localStoreHnswM(),
+                RAGConfig.localStoreEfConstruction(),
+                RAGConfig.localStoreEfSearch(),
+                RAGConfig.localStoreExactThreshold());
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        lock.writeLock().lock();
+        try {
+            insert(id, embedding, null);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        String id = UUID.randomUUID().toString();
+        lock.writeLock().lock();
+        try {
+            insert(id, embedding, segment);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        return addAll(embeddings, null);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> segments) {
+        if (segments != null && segments.size() != embeddings.size()) {
+            throw new IllegalArgumentException("embeddings and segments must have the same size");
+        }
+        List<String> added = new ArrayList<>(embeddings.size());
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < embeddings.size(); i++) {
+                String id = UUID.randomUUID().toString();
+                insert(id, embeddings.get(i), segments == null ? null : segments.get(i));
+                added.add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return added;
+    }
+
+    // Marks the entries deleted and saves the store, so the caller can record the removal as done
+    @Override
+    public void removeAll(Collection<String> removedIds) {
+        lock.writeLock().lock();
+        try {
+            for (String id : removedIds) {
+                Integer slot = slots.remove(id);
+                if (slot != null) {
+                    deleted.set(slot);
+                    deletedCount++;
+                    dirty = true;
+                }
+            }
+            flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to save vector store: " + e.getMessage(), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore) {
+        return findRelevant(referenceEmbedding, maxResults, minScore, SearchScope.ALL);
+    }
+
+    // A scoped search scans only the entries whose metadata matches; the graph is not used,
+    // as a walk that skips most nodes would miss matches the scan finds
+    @Override
+    public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore,
+                                                          SearchScope scope) {
+        float[] query = normalized(referenceEmbedding.vector());
+        lock.readLock().lock();
+        try {
+            int live = count - deletedCount;
+            if (live == 0 || maxResults <= 0) {
+                return new ArrayList<>();
+            }
+
+            HnswIndex.NodeHeap top;
+            if (!scope.isAll()) {
+                top = exactSearch(query, maxResults, scope);
+            } else if (index != null && live > exactThreshold) {
+                top = index.search(vectors, query, Math.max(efSearch, maxResults));
+            } else {
+                top = exactSearch(query, maxResults, scope);
+            }
+
+            // The heap pops lowest first, so collect and walk it backwards
+            int found = top.size();
+            int[] nodes = new int[found];
+            float[] scores = new float[found];
+            for (int i = found - 1; i >= 0; i--) {
+                scores[i] = top.peekScore();
+                nodes[i] = top.pop();
+            }
+
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(Math.min(found, maxResults));
+            for (int i = 0; i < found && matches.size() < maxResults; i++) {
+                int slot = nodes[i];
+                if (deleted.get(slot)) {
+                    continue;
+                }
+                double score = RelevanceScore.fromCosineSimilarity(Math.min(1.0, scores[i]));
+                if (score < minScore) {
+                    break;
+                }
+                matches.add(new EmbeddingMatch<>(score, ids[slot], Embedding.from(vector(slot)), segment(slot)));
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, TextSegment> findAll(Collection<String> wanted) {
+        Map<String, TextSegment> found = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (String id : wanted) {
+                Integer slot = slots.get(id);
+                TextSegment segment = slot == null ? null : segment(slot);
+                if (segment != null) {
+                    found.put(id, segment);
+                }
+            }
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Writes the store to disk if anything changed since the last save
+    @Override
+    public void flush() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (file == null || !dirty) {
+                return;
+            }
+            // The exact scan compacts cheaply; the graph is rebuilt only once enough entries are dead
+            if (deletedCount > 0 && (index == null || deletedCount * 5 > count)) {
+                compact();
+            }
+            save();
+            dirty = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            if (fileLock != null) {
+                fileLock.release();
+                fileLock = null;
+            }
+            if (lockChannel != null) {
+                lockChannel.close();
+                lockChannel = null;
+            }
+        }
+    }
+
+    private void insert(String id, Embedding embedding, TextSegment segment) {
+        float[] vector = embedding.vector();
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected an embedding of dimension " + dimension + " but got " + vector.length);
+        }
+        Integer existing = slots.get(id);
+        if (existing != null) {
+            deleted.set(existing);
+            deletedCount++;
+        }
+        ensureCapacity(count + 1);
+        normalizeInto(vector, vectors, count * dimension);
+        ids[count] = id;
+        texts[count] = segment == null ? null : segment.text();
+        metadata[count] = segment == null ? null : new HashMap<>(segment.metadata().asMap());
+        slots.put(id, count);
+        if (index != null) {
+            index.add(vectors, count);
+        }
+        count++;
+        dirty = true;
+    }
+
+    private HnswIndex.NodeHeap exactSearch(float[] query, int maxResults, SearchScope scope) {
+        HnswIndex.NodeHeap top = new HnswIndex.NodeHeap(maxResults + 1);
+        boolean filtered = !scope.isAll();
+        for (int slot = 0; slot < count; slot++) {
+            if (deleted.get(slot) || filtered && !scope.matches(metadata[slot])) {
+                continue;
+            }
+            float score = HnswIndex.dot(query, 0, vectors, slot * dimension, dimension);
+            if (top.size() < maxResults) {
+                top.push(score, slot);
+            } else if (score > top.peekScore()) {
+                top.pop();
+                top.push(score, slot);
+            }
+        }
+        return top;
+    }
+
+    private float[] vector(int slot) {
+        return Arrays.copyOfRange(vectors, slot * dimension, (slot + 1) * dimension);
+    }
+
+    private TextSegment segment(int slot) {
+        if (texts[slot] == null) {
+            return null;
+        }
+        return TextSegment.from(texts[slot], new Metadata(metadata[slot] == null ? new HashMap<>() : metadata[slot]));
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= ids.length) {
+            return;
+        }
+        int capacity = Math.max(required, ids.length + (ids.length >> 1));
+        if ((long) capacity * dimension > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Vector store is full at " + count + " entries of dimension " + dimension);
+        }
+        vectors = Arrays.copyOf(vectors, capacity * dimension);
+        ids = Arrays.copyOf(ids, capacity);
+        texts = Arrays.copyOf(texts, capacity);
+        metadata = Arrays.copyOf(metadata, capacity);
+    }
+
+    // Moves live entries to the front and rebuilds the graph over them
+    private void compact() {
+        int live = 0;
+        for (int slot = 0; slot < count; slot++) {
+            if (deleted.get(slot)) {
+                continue;
+            }
+            if (live != slot) {
+                System.arraycopy(vectors, slot * dimension, vectors, live * dimension, dimension);
+                ids[live] = ids[slot];
+                texts[live] = texts[slot];
+                metadata[live] = metadata[slot];
+            }
+            slots.put(ids[live], live);
+            live++;
+        }
+        for (int slot = live; slot < count; slot++) {
+            ids[slot] = null;
+            texts[slot] = null;
+            metadata[slot] = null;
+        }
+        count = live;
+        deleted.clear();
+        deletedCount = 0;
+        if (index != null) {
+            index = new HnswIndex(dimension, hnswM, efConstruction);
+            for (int slot = 0; slot < count; slot++) {
+                index.add(vectors, slot);
+            }
+        }
+    }
+
+    private void save() throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putInt(dimension).putInt(count)
+                    .putInt(deletedCount).putInt(index != null ? 1 : 0);
+            header.flip();
+            writeFully(channel, header);
+
+            // Vectors go out in 1 MB slices straight from the float[]
+            ByteBuffer slice = ByteBuffer.allocate(1 << 20);
+            FloatBuffer floats = slice.asFloatBuffer();
+            int total = count * dimension;
+            for (int position = 0; position < total; ) {
+                int n = Math.min(floats.capacity(), total - position);
+                floats.clear();
+                floats.put(vectors, position, n);
+                slice.clear();
+                slice.limit(n * Float.BYTES);
+                writeFully(channel, slice);
+                position += n;
+            }
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            long[] words = deleted.toLongArray();
+            out.writeInt(words.length);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+            for (int slot = 0; slot < count; slot++) {
+                writeString(out, ids[slot]);
+                writeString(out, texts[slot]);
+                Map<String, String> entries = metadata[slot];
+                out.writeInt(entries == null ? -1 : entries.size());
+                if (entries != null) {
+                    for (Map.Entry<String, String> entry : entries.entrySet()) {
+                        writeString(out, entry.getKey());
+                        writeString(out, entry.getValue());
+                    }
+                }
+            }
+            if (index != null) {
+                index.write(out);
+            }
+            out.flush();
+            channel.force(false);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void load() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Vector store " + file + " is too large to map (" + size + " bytes)");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (size < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Vector store " + file + " is not a valid store file");
+            }
+            int storedDimension = buffer.getInt();
+            if (storedDimension != dimension) {
+                throw new IOException("Vector store " + file + " has dimension " + storedDimension + ", expected " + dimension);
+            }
+            int storedCount = buffer.getInt();
+            int storedDeleted = buffer.getInt();
+            boolean hasIndex = buffer.getInt() == 1;
+
+            ensureCapacity(storedCount);
+            int total = storedCount * dimension;
+            buffer.asFloatBuffer().get(vectors, 0, total);
+            buffer.position(buffer.position() + total * Float.BYTES);
+
+            long[] words = new long[buffer.getInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = buffer.getLong();
+            }
+            deleted.or(BitSet.valueOf(words));
+
+            for (int slot = 0; slot < storedCount; slot++) {
+                ids[slot] = readString(buffer);
+                texts[slot] = readString(buffer);
+                int entries = buffer.getInt();
+                if (entries >= 0) {
+                    Map<String, String> values = new HashMap<>();
+                    for (int i = 0; i < entries; i++) {
+                        values.put(readString(buffer), readString(buffer));
+                    }
+                    metadata[slot] = values;
+                }
+                if (!deleted.get(slot)) {
+                    slots.put(ids[slot], slot);
+                }
+            }
+            count = storedCount;
+            deletedCount = storedDeleted;
+
+            if (approximate && hasIndex) {
+                index = HnswIndex.read(buffer, dimension);
+            } else if (approximate) {
+                // Saved by an exact store: build the graph once and save it with the next write
+                index = new HnswIndex(dimension, hnswM, efConstruction);
+                for (int slot = 0; slot < count; slot++) {
+                    index.add(vectors, slot);
+                }
+                dirty = true;
+            } else {
+                index = null;
+                dirty = hasIndex;
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private float[] normalized(float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected an embedding of dimension " + dimension + " but got " + vector.length);
+        }
+        float[] result = new float[dimension];
+        normalizeInto(vector, result, 0);
+        return result;
+    }
+
+    private static void normalizeInto(float[] vector, float[] target, int offset) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        for (int i = 0; i < vector.length; i++) {
+            target[offset + i] = norm == 0 ? 0 : (float) (vector[i] / norm);
+        }
+    }
+}
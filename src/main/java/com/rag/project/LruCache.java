@@ -0,0 +1,108 @@
+package com.rag.project;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded LRU map with a time-to-live per entry. Operations are short and synchronized,
+// which is cheap next to the model and store calls the cache sits in front of.
+public class LruCache<K, V> {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public LruCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (isExpired(entry, System.nanoTime())) {
+            entries.remove(key);
+            evictions.incrementAndGet();
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, new Entry<>(value, System.nanoTime()));
+        if (entries.size() > maxEntries) {
+            evictExpired();
+        }
+        Iterator<K> eldest = entries.keySet().iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    public synchronized void remove(K key) {
+        entries.remove(key);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    public double hitRate() {
+        long total = hits() + misses();
+        return total == 0 ? 0.0 : (double) hits() / total;
+    }
+
+    private void evictExpired() {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (isExpired(iterator.next().getValue(), now)) {
+                iterator.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private boolean isExpired(Entry<V> entry, long now) {
+        return ttlNanos > 0 && now - entry.createdNanos > ttlNanos;
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final long createdNanos;
+
+        Entry(V value, long createdNanos) {
+            this.value = value;
+            this.createdNanos = createdNanos;
+        }
+    }
+}
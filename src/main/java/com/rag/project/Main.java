@@ -3,28 +3,20 @@ package com.rag.project;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.chat.ChatLanguageModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.model.ollama.OllamaChatModel;
-import dev.langchain4j.model.ollama.OllamaEmbeddingModel;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 
-import java.time.Duration;
-
 public class Main {
     public static void main(String[] args) {
         
         System.out.println("Starting RAG-Milvus application...");
         
         try {
-            // Configuration - using port 11435
-            String ollamaHost = "http://localhost:11435";
+            // Ollama servers come from rag.ollama.baseUrls (default localhost:11435)
+            OllamaBackendPool ollama = OllamaBackendPool.fromConfig("nomic-embed-text", "llama3.2");
             
             // Initialize Embedding Model
-            System.out.println("Initializing Ollama Embedding Model...");
-            EmbeddingModel embeddingModel = OllamaEmbeddingModel.builder()
-                    .baseUrl(ollamaHost)
-                    .modelName("nomic-embed-text")
-                    .timeout(Duration.ofMinutes(3))
-                    .build();
+            System.out.println("Initializing Ollama Embedding Model (" + ollama.describe() + ")...");
+            EmbeddingModel embeddingModel = ollama;
             
             // Test embedding model first
             System.out.println("Testing embedding model...");
@@ -39,11 +31,7 @@ public class Main {
             
             // Initialize Chat Model
             System.out.println("Initializing Ollama Chat Model...");
-            ChatLanguageModel chatLanguageModel = OllamaChatModel.builder()
-                    .baseUrl(ollamaHost)
-                    .modelName("llama3.2")
-                    .timeout(Duration.ofMinutes(3))
-                    .build();
+            ChatLanguageModel chatLanguageModel = ollama;
             
             // Test chat model
             System.out.println("Testing chat model...");
@@ -56,24 +44,33 @@ public class Main {
                 return;
             }
             
-            // Initialize Milvus Embedding Store
-            System.out.println("Initializing Milvus Embedding Store...");
+            // Initialize the vector store (Milvus unless rag.store=local)
+            System.out.println("Initializing " + VectorStoreConfig.describe() + "...");
             EmbeddingStore<TextSegment> embeddingStore;
             try {
-                embeddingStore = MilvusConfig.createMilvusEmbeddingStore();
-                System.out.println("✓ Milvus connection established!");
+                embeddingStore = VectorStoreConfig.createEmbeddingStore();
+                System.out.println("✓ Vector store ready!");
             } catch (Exception e) {
-                System.err.println("✗ Milvus connection failed: " + e.getMessage());
-                System.err.println("Make sure Milvus is running on port 19530");
+                System.err.println("✗ Vector store failed: " + e.getMessage());
+                if (!VectorStoreConfig.isLocal()) {
+                    System.err.println("Make sure Milvus is running on port 19530, or run with -Drag.store=local");
+                }
                 return;
             }
             
             // Create DocumentLoader
             System.out.println("Ingesting documents...");
-            DocumentLoader documentLoader = new DocumentLoader(embeddingModel, embeddingStore);
+            // Chunks already embedded on a previous run are read from the on-disk cache
+            EmbeddingModel ingestionEmbeddingModel = CachingEmbeddingModel.wrap(embeddingModel, "nomic-embed-text");
+            DocumentLoader documentLoader = new DocumentLoader(ingestionEmbeddingModel, embeddingStore, VectorStoreConfig.createEmbeddingRemover(embeddingStore));
+            // BM25 index built alongside the vector store (rag.retrieval.mode)
+            LexicalIndex lexicalIndex = LexicalIndex.fromConfig(embeddingStore);
             
             try {
-                documentLoader.ingestDocument();
+                if (lexicalIndex != null) {
+                    documentLoader.indexLexically(lexicalIndex);
+                }
+                documentLoader.ingestDocuments();
                 System.out.println("✓ Document ingestion completed!");
             } catch (Exception e) {
                 System.err.println("✗ Document ingestion failed: " + e.getMessage());
@@ -82,7 +79,7 @@ public class Main {
             
             // Initialize RAG Service
             System.out.println("Initializing RAG Service...");
-            RAGService ragService = new RAGService(embeddingStore, embeddingModel, chatLanguageModel);
+            RAGService ragService = new RAGService(embeddingStore, embeddingModel, chatLanguageModel, null, lexicalIndex);
             
             // Example queries
             String query = "What is the capital of France?";
@@ -0,0 +1,135 @@
+package com.rag.project;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+// Process-wide metric registry rendered in the Prometheus text format on /metrics.
+// Histograms and counters are looked up once (e.g. into static final fields) and then
+// recorded without allocation or locking; registration is the only synchronized step.
+public final class Metrics {
+
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+    private static final Map<String, Family> FAMILIES = new LinkedHashMap<>();
+
+    private Metrics() {
+    }
+
+    // Labels are given as name/value pairs, e.g. histogram("rag_query_stage_seconds", help, "stage", "embed")
+    public static LatencyHistogram histogram(String name, String help, String... labels) {
+        return (LatencyHistogram) register(name, help, "summary", labels, LatencyHistogram::new);
+    }
+
+    public static Counter counter(String name, String help, String... labels) {
+        return (Counter) register(name, help, "counter", labels, Counter::new);
+    }
+
+    // Values read at scrape time, e.g. queue depth; `type` is "gauge" or "counter"
+    public static void gauge(String name, String help, String type, LongSupplier value, String... labels) {
+        synchronized (FAMILIES) {
+            family(name, help, type).metrics.put(labelString(labels), value);
+        }
+    }
+
+    public static String render() {
+        StringBuilder out = new StringBuilder(4096);
+        synchronized (FAMILIES) {
+            for (Family family : FAMILIES.values()) {
+                out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+                out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+                for (Map.Entry<String, Object> entry : family.metrics.entrySet()) {
+                    renderMetric(out, family.name, entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static void renderMetric(StringBuilder out, String name, String labels, Object metric) {
+        if (metric instanceof LatencyHistogram) {
+            LatencyHistogram histogram = (LatencyHistogram) metric;
+            for (double q : QUANTILES) {
+                String quantile = "quantile=\"" + q + "\"";
+                sample(out, name, labels.isEmpty() ? quantile : labels + "," + quantile, histogram.quantileSeconds(q));
+            }
+            sample(out, name + "_sum", labels, histogram.sumSeconds());
+            sample(out, name + "_count", labels, histogram.count());
+        } else if (metric instanceof Counter) {
+            sample(out, name, labels, ((Counter) metric).get());
+        } else {
+            sample(out, name, labels, ((LongSupplier) metric).getAsLong());
+        }
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value == Math.rint(value) && Math.abs(value) < 1e15
+                ? Long.toString((long) value)
+                : Double.toString(value)).append('\n');
+    }
+
+    private static Object register(String name, String help, String type, String[] labels,
+                                   Supplier<Object> factory) {
+        synchronized (FAMILIES) {
+            return family(name, help, type).metrics.computeIfAbsent(labelString(labels), k -> factory.get());
+        }
+    }
+
+    private static Family family(String name, String help, String type) {
+        Family family = FAMILIES.computeIfAbsent(name, k -> new Family(name, help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type);
+        }
+        return family;
+    }
+
+    private static String labelString(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+        }
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return out.toString();
+    }
+
+    public static class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    private static class Family {
+        final String name;
+        final String help;
+        final String type;
+        final Map<String, Object> metrics = new LinkedHashMap<>();
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
@@ -3,15 +3,68 @@ package com.rag.project;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.milvus.MilvusEmbeddingStore;
+import io.milvus.client.MilvusServiceClient;
+import io.milvus.param.ConnectParam;
+import io.milvus.param.IndexType;
+import io.milvus.param.collection.ShowCollectionsParam;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Connection, collection and index settings come from rag.milvus.* (see RAGConfig)
 public class MilvusConfig {
-    
+
+    private static MilvusServiceClient client;
+
     public static EmbeddingStore<TextSegment> createMilvusEmbeddingStore() {
-        return MilvusEmbeddingStore.builder()
-                .host("localhost")
-                .port(19530)
-                .collectionName("rag_collection")
-                .dimension(768) // For nomic-embed-text model
+        return createMilvusEmbeddingStore(RAGConfig.milvusCollection(), MilvusIndexSettings.fromConfig());
+    }
+
+    public static MilvusSearchStore createMilvusEmbeddingStore(String collection, MilvusIndexSettings settings) {
+        // A new collection is created with a FLAT index, which needs no parameters,
+        // and apply() then builds the configured one
+        EmbeddingStore<TextSegment> writer = MilvusEmbeddingStore.builder()
+                .host(RAGConfig.milvusHost())
+                .port(RAGConfig.milvusPort())
+                .collectionName(collection)
+                .dimension(RAGConfig.embeddingDimension()) // 768 for nomic-embed-text
+                .indexType(IndexType.FLAT)
+                .metricType(settings.metricType())
+                .consistencyLevel(settings.consistencyLevel())
                 .build();
+        settings.apply(client(), collection);
+        return new MilvusSearchStore(writer, client(), collection, settings);
+    }
+
+    public static EmbeddingRemover createEmbeddingRemover() {
+        return new MilvusEmbeddingRemover(client(), RAGConfig.milvusCollection());
+    }
+
+    // One collection per partition, named <rag.milvus.collection>_<partition>
+    public static PartitionedEmbeddingStore createPartitionedEmbeddingStore(String key) throws IOException {
+        MilvusIndexSettings settings = MilvusIndexSettings.fromConfig();
+        String prefix = RAGConfig.milvusCollection() + "_";
+        List<String> existing = new ArrayList<>();
+        for (String name : MilvusIndexSettings.check(client().showCollections(ShowCollectionsParam.newBuilder().build()),
+                "list collections").getCollectionNamesList()) {
+            if (name.startsWith(prefix) && name.length() > prefix.length()) {
+                existing.add(name.substring(prefix.length()));
+            }
+        }
+        return new PartitionedEmbeddingStore(key, partition -> new PartitionedEmbeddingStore.Partition(
+                createMilvusEmbeddingStore(prefix + partition, settings),
+                new MilvusEmbeddingRemover(client(), prefix + partition)), existing);
+    }
+
+    // One gRPC connection shared by searches, index management and deletes
+    public static synchronized MilvusServiceClient client() {
+        if (client == null) {
+            client = new MilvusServiceClient(ConnectParam.newBuilder()
+                    .withHost(RAGConfig.milvusHost())
+                    .withPort(RAGConfig.milvusPort())
+                    .build());
+        }
+        return client;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,67 @@
+package com.rag.project;
+
+import io.milvus.client.MilvusServiceClient;
+import io.milvus.grpc.MutationResult;
+import io.milvus.param.ConnectParam;
+import io.milvus.param.R;
+import io.milvus.param.dml.DeleteParam;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// Deletes rows from the langchain4j Milvus collection, whose primary key field is "id"
+public class MilvusEmbeddingRemover implements EmbeddingRemover {
+
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    private final MilvusServiceClient client;
+    private final String collectionName;
+
+    public MilvusEmbeddingRemover(MilvusServiceClient client, String collectionName) {
+        this.client = client;
+        this.collectionName = collectionName;
+    }
+
+    public static MilvusEmbeddingRemover create(String host, int port, String collectionName) {
+        ConnectParam connectParam = ConnectParam.newBuilder()
+                .withHost(host)
+                .withPort(port)
+                .build();
+        return new MilvusEmbeddingRemover(new MilvusServiceClient(connectParam), collectionName);
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        List<String> batch = new ArrayList<>(Math.min(ids.size(), DELETE_BATCH_SIZE));
+        for (String id : ids) {
+            batch.add(id);
+            if (batch.size() == DELETE_BATCH_SIZE) {
+                delete(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            delete(batch);
+        }
+    }
+
+    private void delete(List<String> ids) {
+        StringBuilder expr = new StringBuilder("id in [");
+        for (int i = 0; i < ids.size(); i++) {
+            if (i > 0) {
+                expr.append(',');
+            }
+            expr.append('"').append(ids.get(i).replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        }
+        expr.append(']');
+
+        R<MutationResult> response = client.delete(DeleteParam.newBuilder()
+                .withCollectionName(collectionName)
+                .withExpr(expr.toString())
+                .build());
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            throw new IllegalStateException("Milvus delete failed: " + response.getMessage(), response.getException());
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.rag.project;
+
+import dev.langchain4j.store.embedding.RelevanceScore;
+import io.milvus.client.MilvusServiceClient;
+import io.milvus.common.clientenum.ConsistencyLevelEnum;
+import io.milvus.grpc.DescribeIndexResponse;
+import io.milvus.grpc.IndexDescription;
+import io.milvus.grpc.KeyValuePair;
+import io.milvus.param.IndexType;
+import io.milvus.param.MetricType;
+import io.milvus.param.R;
+import io.milvus.param.RpcStatus;
+import io.milvus.param.collection.LoadCollectionParam;
+import io.milvus.param.collection.ReleaseCollectionParam;
+import io.milvus.param.index.CreateIndexParam;
+import io.milvus.param.index.DescribeIndexParam;
+import io.milvus.param.index.DropIndexParam;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Index type, metric, consistency level and the build and search parameters of the
+// collection's vector field. langchain4j 0.26 passes only the index type and metric to
+// Milvus, so apply() recreates the index with the build parameters (nlist, M, efConstruction)
+// and MilvusSearchStore sends the search parameters (nprobe, ef) with every query.
+public class MilvusIndexSettings {
+
+    static final String VECTOR_FIELD = "vector";
+
+    private final IndexType indexType;
+    private final MetricType metricType;
+    private final ConsistencyLevelEnum consistencyLevel;
+    private final Map<String, Integer> buildParams;
+    private final Map<String, Integer> searchParams;
+
+    public MilvusIndexSettings(IndexType indexType, MetricType metricType, ConsistencyLevelEnum consistencyLevel,
+                               Map<String, Integer> buildParams, Map<String, Integer> searchParams) {
+        this.indexType = indexType;
+        this.metricType = metricType;
+        this.consistencyLevel = consistencyLevel;
+        this.buildParams = Collections.unmodifiableMap(new LinkedHashMap<>(buildParams));
+        this.searchParams = Collections.unmodifiableMap(new LinkedHashMap<>(searchParams));
+    }
+
+    public static MilvusIndexSettings fromConfig() {
+        IndexType indexType = parse(IndexType.class, "rag.milvus.indexType", RAGConfig.milvusIndexType());
+        return new MilvusIndexSettings(indexType,
+                parse(MetricType.class, "rag.milvus.metricType", RAGConfig.milvusMetricType()),
+                parse(ConsistencyLevelEnum.class, "rag.milvus.consistencyLevel", RAGConfig.milvusConsistencyLevel()),
+                defaultBuildParams(indexType, RAGConfig.embeddingDimension()),
+                defaultSearchParams(indexType));
+    }
+
+    // The rag.milvus.* build parameters that apply to the index type
+    public static Map<String, Integer> defaultBuildParams(IndexType indexType, int dimension) {
+        Map<String, Integer> params = new LinkedHashMap<>();
+        switch (indexType) {
+            case FLAT:
+                break;
+            case IVF_FLAT:
+            case IVF_SQ8:
+                params.put("nlist", RAGConfig.milvusNlist());
+                break;
+            case IVF_PQ:
+                params.put("nlist", RAGConfig.milvusNlist());
+                params.put("m", pqM(dimension));
+                params.put("nbits", 8);
+                break;
+            case HNSW:
+                params.put("M", RAGConfig.milvusHnswM());
+                params.put("efConstruction", RAGConfig.milvusEfConstruction());
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported Milvus index type " + indexType);
+        }
+        return params;
+    }
+
+    public static Map<String, Integer> defaultSearchParams(IndexType indexType) {
+        Map<String, Integer> params = new LinkedHashMap<>();
+        if (indexType == IndexType.HNSW) {
+            params.put("ef", RAGConfig.milvusEf());
+        } else if (indexType != IndexType.FLAT) {
+            params.put("nprobe", RAGConfig.milvusNprobe());
+        }
+        return params;
+    }
+
+    private static int pqM(int dimension) {
+        int m = RAGConfig.milvusPqM();
+        if (m > 0) {
+            if (dimension % m != 0) {
+                throw new IllegalArgumentException("rag.milvus.pqM=" + m + " does not divide the dimension " + dimension);
+            }
+            return m;
+        }
+        for (m = Math.max(1, dimension / 8); m > 1; m--) {
+            if (dimension % m == 0) {
+                return m;
+            }
+        }
+        return 1;
+    }
+
+    private static <E extends Enum<E>> E parse(Class<E> type, String key, String value) {
+        try {
+            return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid value for " + key + ": " + value);
+        }
+    }
+
+    public MilvusIndexSettings withSearchParams(Map<String, Integer> searchParams) {
+        return new MilvusIndexSettings(indexType, metricType, consistencyLevel, buildParams, searchParams);
+    }
+
+    public IndexType indexType() {
+        return indexType;
+    }
+
+    public MetricType metricType() {
+        return metricType;
+    }
+
+    public ConsistencyLevelEnum consistencyLevel() {
+        return consistencyLevel;
+    }
+
+    public Map<String, Integer> buildParams() {
+        return buildParams;
+    }
+
+    public Map<String, Integer> searchParams() {
+        return searchParams;
+    }
+
+    // HNSW rejects an ef below the number of results, so it is raised to topK
+    public String searchParamJson(int topK) {
+        Map<String, Integer> params = searchParams;
+        if (params.containsKey("ef") && params.get("ef") < topK) {
+            params = new LinkedHashMap<>(params);
+            params.put("ef", topK);
+        }
+        return json(params);
+    }
+
+    // Milvus scores are similarities for COSINE and IP and squared distances for L2. The
+    // embeddings are unit length, so all three map onto the same 0..1 relevance as cosine.
+    public double relevance(float score) {
+        double cosine = metricType == MetricType.L2 ? 1 - score / 2.0 : score;
+        return RelevanceScore.fromCosineSimilarity(Math.max(-1.0, Math.min(1.0, cosine)));
+    }
+
+    public String describe() {
+        StringBuilder text = new StringBuilder(indexType.name());
+        buildParams.forEach((name, value) -> text.append(' ').append(name).append('=').append(value));
+        searchParams.forEach((name, value) -> text.append(' ').append(name).append('=').append(value));
+        return text.append(" (").append(metricType).append(", ").append(consistencyLevel).append(')').toString();
+    }
+
+    // Rebuilds the vector index when its type, metric or build parameters differ from these
+    // settings, then loads the collection. Returns false if the index was already up to date.
+    public boolean apply(MilvusServiceClient client, String collection) {
+        R<DescribeIndexResponse> described = client.describeIndex(DescribeIndexParam.newBuilder()
+                .withCollectionName(collection)
+                .withFieldName(VECTOR_FIELD)
+                .build());
+        // describeIndex fails when the field has no index yet
+        IndexDescription current = null;
+        if (described.getStatus() == R.Status.Success.getCode()
+                && !described.getData().getIndexDescriptionsList().isEmpty()) {
+            current = described.getData().getIndexDescriptionsList().get(0);
+            if (matches(current)) {
+                return false;
+            }
+        }
+
+        System.out.println("🔧 Building Milvus index on " + collection + ": " + describe());
+        check(client.releaseCollection(ReleaseCollectionParam.newBuilder()
+                .withCollectionName(collection)
+                .build()), "release");
+        if (current != null) {
+            check(client.dropIndex(DropIndexParam.newBuilder()
+                    .withCollectionName(collection)
+                    .withIndexName(current.getIndexName())
+                    .build()), "drop index");
+        }
+        check(client.createIndex(CreateIndexParam.newBuilder()
+                .withCollectionName(collection)
+                .withFieldName(VECTOR_FIELD)
+                .withIndexType(indexType)
+                .withMetricType(metricType)
+                .withExtraParam(json(buildParams))
+                .withSyncMode(Boolean.TRUE)
+                .build()), "create index");
+        check(client.loadCollection(LoadCollectionParam.newBuilder()
+                .withCollectionName(collection)
+                .build()), "load");
+        return true;
+    }
+
+    // Milvus reports the build parameters either as a "params" JSON string or as separate
+    // key-value pairs, with values as strings or numbers depending on the version
+    private boolean matches(IndexDescription index) {
+        Map<String, String> actual = new HashMap<>();
+        for (KeyValuePair pair : index.getParamsList()) {
+            if ("params".equals(pair.getKey())) {
+                actual.putAll(parseParams(pair.getValue()));
+            } else {
+                actual.put(pair.getKey(), pair.getValue());
+            }
+        }
+        if (!indexType.name().equalsIgnoreCase(actual.get("index_type"))
+                || !metricType.name().equalsIgnoreCase(actual.get("metric_type"))) {
+            return false;
+        }
+        for (Map.Entry<String, Integer> param : buildParams.entrySet()) {
+            if (!String.valueOf(param.getValue()).equals(actual.get(param.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Map<String, String> parseParams(String value) {
+        Map<String, String> params = new HashMap<>();
+        JsonReader json = JsonReader.acquire(new ByteArrayInputStream(value.getBytes(StandardCharsets.UTF_8)), Long.MAX_VALUE);
+        try {
+            json.beginObject();
+            while (json.hasNext()) {
+                String name = json.nextName();
+                switch (json.peek()) {
+                    case STRING:
+                        params.put(name, json.nextString());
+                        break;
+                    case NUMBER:
+                        double number = json.nextDouble();
+                        params.put(name, number == Math.rint(number) ? Long.toString((long) number) : Double.toString(number));
+                        break;
+                    default:
+                        json.skipValue();
+                }
+            }
+            json.endObject();
+        } catch (IOException e) {
+            // Unreadable parameters never match, so the index is rebuilt
+            params.clear();
+        } finally {
+            json.release();
+        }
+        return params;
+    }
+
+    private static String json(Map<String, Integer> params) {
+        StringBuilder json = new StringBuilder("{");
+        params.forEach((name, value) -> {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append('"').append(name).append("\":").append(value);
+        });
+        return json.append('}').toString();
+    }
+
+    static <T> T check(R<T> response, String action) {
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            throw new IllegalStateException("Milvus " + action + " failed: " + response.getMessage(), response.getException());
+        }
+        return response.getData();
+    }
+}
@@ -0,0 +1,224 @@
+package com.rag.project;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import io.milvus.client.MilvusServiceClient;
+import io.milvus.param.dml.QueryParam;
+import io.milvus.param.dml.SearchParam;
+import io.milvus.response.QueryResultsWrapper;
+import io.milvus.response.SearchResultsWrapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Writes go through langchain4j's MilvusEmbeddingStore, which owns the collection schema
+// (id, text, metadata, vector); searches are sent from here so the index's search parameters
+// and the configured consistency level reach Milvus with every query. A SearchScope becomes a
+// filter expression on the metadata JSON field.
+public class MilvusSearchStore implements EmbeddingStore<TextSegment>, ScopedSearcher, SegmentLookup {
+
+    private static final String ID_FIELD = "id";
+    private static final String TEXT_FIELD = "text";
+    private static final String METADATA_FIELD = "metadata";
+    private static final List<String> OUTPUT_FIELDS = List.of(TEXT_FIELD, METADATA_FIELD);
+    private static final List<String> LOOKUP_FIELDS = List.of(ID_FIELD, TEXT_FIELD, METADATA_FIELD);
+    private static final int LOOKUP_BATCH_SIZE = 1000;
+
+    private final EmbeddingStore<TextSegment> writer;
+    private final MilvusServiceClient client;
+    private final String collection;
+    private final MilvusIndexSettings settings;
+
+    public MilvusSearchStore(EmbeddingStore<TextSegment> writer, MilvusServiceClient client,
+                             String collection, MilvusIndexSettings settings) {
+        this.writer = writer;
+        this.client = client;
+        this.collection = collection;
+        this.settings = settings;
+    }
+
+    // Same data, different search parameters; used by RecallSweep
+    public MilvusSearchStore withSettings(MilvusIndexSettings settings) {
+        return new MilvusSearchStore(writer, client, collection, settings);
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        return writer.add(embedding);
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        writer.add(id, embedding);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        return writer.add(embedding, segment);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        return writer.addAll(embeddings);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> segments) {
+        return writer.addAll(embeddings, segments);
+    }
+
+    // Matches come back best first; like langchain4j's store they carry no embedding
+    @Override
+    public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore) {
+        return findRelevant(referenceEmbedding, maxResults, minScore, SearchScope.ALL);
+    }
+
+    @Override
+    public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore,
+                                                          SearchScope scope) {
+        if (maxResults <= 0) {
+            return new ArrayList<>();
+        }
+        SearchParam.Builder search = SearchParam.newBuilder()
+                .withCollectionName(collection)
+                .withVectorFieldName(MilvusIndexSettings.VECTOR_FIELD)
+                .withVectors(Collections.singletonList(referenceEmbedding.vectorAsList()))
+                .withTopK(maxResults)
+                .withMetricType(settings.metricType())
+                .withConsistencyLevel(settings.consistencyLevel())
+                .withParams(settings.searchParamJson(maxResults))
+                .withOutFields(OUTPUT_FIELDS);
+        if (!scope.isAll()) {
+            search.withExpr(filterExpression(scope));
+        }
+        SearchResultsWrapper results = new SearchResultsWrapper(MilvusIndexSettings.check(client.search(search.build()), "search").getResults());
+
+        List<SearchResultsWrapper.IDScore> scores = results.getIDScore(0);
+        if (scores.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<?> texts = results.getFieldData(TEXT_FIELD, 0);
+        List<?> metadata = results.getFieldData(METADATA_FIELD, 0);
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(scores.size());
+        for (int i = 0; i < scores.size(); i++) {
+            double score = settings.relevance(scores.get(i).getScore());
+            if (score < minScore) {
+                break;
+            }
+            Object text = texts.get(i);
+            TextSegment segment = text == null || text.toString().isBlank()
+                    ? null
+                    : TextSegment.from(text.toString(), new Metadata(parseMetadata(metadata.get(i))));
+            matches.add(new EmbeddingMatch<>(score, scores.get(i).getStrID(), null, segment));
+        }
+        return matches;
+    }
+
+    // One query per LOOKUP_BATCH_SIZE IDs; rows come back in no particular order
+    @Override
+    public Map<String, TextSegment> findAll(Collection<String> ids) {
+        Map<String, TextSegment> found = new HashMap<>();
+        List<String> batch = new ArrayList<>(Math.min(ids.size(), LOOKUP_BATCH_SIZE));
+        for (String id : ids) {
+            batch.add(id);
+            if (batch.size() == LOOKUP_BATCH_SIZE) {
+                query(batch, found);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            query(batch, found);
+        }
+        return found;
+    }
+
+    private void query(List<String> ids, Map<String, TextSegment> found) {
+        StringBuilder expr = new StringBuilder(ID_FIELD).append(" in [");
+        for (int i = 0; i < ids.size(); i++) {
+            if (i > 0) {
+                expr.append(',');
+            }
+            expr.append(quote(ids.get(i)));
+        }
+        expr.append(']');
+        QueryResultsWrapper results = new QueryResultsWrapper(MilvusIndexSettings.check(client.query(QueryParam.newBuilder()
+                .withCollectionName(collection)
+                .withConsistencyLevel(settings.consistencyLevel())
+                .withExpr(expr.toString())
+                .withOutFields(LOOKUP_FIELDS)
+                .build()), "query"));
+
+        List<?> rowIds = results.getFieldWrapper(ID_FIELD).getFieldData();
+        List<?> texts = results.getFieldWrapper(TEXT_FIELD).getFieldData();
+        List<?> metadata = results.getFieldWrapper(METADATA_FIELD).getFieldData();
+        for (int i = 0; i < rowIds.size(); i++) {
+            Object text = texts.get(i);
+            if (text != null && !text.toString().isBlank()) {
+                found.put(rowIds.get(i).toString(), TextSegment.from(text.toString(), new Metadata(parseMetadata(metadata.get(i)))));
+            }
+        }
+    }
+
+    // metadata["collection"] in ["manuals"] && metadata["tenant"] in ["acme"]
+    static String filterExpression(SearchScope scope) {
+        StringBuilder expr = new StringBuilder();
+        for (Map.Entry<String, Set<String>> filter : scope.filters().entrySet()) {
+            if (expr.length() > 0) {
+                expr.append(" && ");
+            }
+            expr.append(METADATA_FIELD).append('[').append(quote(filter.getKey())).append("] in [");
+            boolean first = true;
+            for (String value : filter.getValue()) {
+                if (!first) {
+                    expr.append(',');
+                }
+                first = false;
+                expr.append(quote(value));
+            }
+            expr.append(']');
+        }
+        return expr.toString();
+    }
+
+    private static String quote(String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    // The JSON field comes back as a JSON object (or its text); langchain4j stores every value as a string
+    private static Map<String, String> parseMetadata(Object value) {
+        Map<String, String> metadata = new HashMap<>();
+        if (value == null) {
+            return metadata;
+        }
+        byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+        JsonReader json = JsonReader.acquire(new ByteArrayInputStream(bytes), bytes.length);
+        try {
+            json.beginObject();
+            while (json.hasNext()) {
+                String name = json.nextName();
+                if (json.peek() == JsonReader.Token.STRING) {
+                    metadata.put(name, json.nextString());
+                } else {
+                    json.skipValue();
+                }
+            }
+            json.endObject();
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable Milvus metadata: " + e.getMessage());
+        } finally {
+            json.release();
+        }
+        return metadata;
+    }
+}
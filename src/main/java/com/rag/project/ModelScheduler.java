@@ -0,0 +1,386 @@
+package com.rag.project;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// Admits model calls from two priority classes into a fixed number of slots. When slots are
+// contended, waiting classes are served in proportion to their weights (stride scheduling:
+// each grant advances the class's pass by 1/weight and the lowest pass goes next), and
+// neither class runs more calls than its own cap. The background cap adapts: it is halved
+// whenever interactive embedding latency is above target, and grows back by one slot per
+// interval otherwise. Callers get scheduled views of their models from the facade methods.
+public class ModelScheduler implements AutoCloseable {
+
+    public enum Priority { INTERACTIVE, BACKGROUND }
+
+    private static final String WAIT_METRIC = "rag_scheduler_wait_seconds";
+    private static final String WAIT_HELP = "Time a model call waited for a scheduler slot";
+    private static final Metrics.Counter BACKOFFS = Metrics.counter("rag_scheduler_backoffs_total",
+            "Times the background limit was halved because interactive latency was above target");
+    // Weight of each new interactive embedding latency sample
+    private static final double EWMA_ALPHA = 0.2;
+
+    private final boolean enabled;
+    private final int maxConcurrency;
+    private final long latencyTargetNanos;
+    private final Lane[] lanes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ScheduledExecutorService controller;
+    private int running;
+    private double virtualTime;
+    // Guarded by lock; negative until the first sample
+    private double interactiveLatencyNanos = -1;
+    private boolean sampled;
+
+    public ModelScheduler(boolean enabled, int maxConcurrency, int interactiveWeight, int backgroundWeight,
+                          int backgroundMaxConcurrency, long interactiveTimeoutMillis,
+                          long latencyTargetMillis, long adjustMillis) {
+        this.enabled = enabled;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.latencyTargetNanos = TimeUnit.MILLISECONDS.toNanos(latencyTargetMillis);
+        this.lanes = new Lane[] {
+                new Lane(Priority.INTERACTIVE, interactiveWeight, this.maxConcurrency, interactiveTimeoutMillis),
+                new Lane(Priority.BACKGROUND, backgroundWeight, Math.min(this.maxConcurrency, backgroundMaxConcurrency), 0)
+        };
+        for (Lane lane : lanes) {
+            String name = lane.priority.name().toLowerCase(Locale.ROOT);
+            Metrics.gauge("rag_scheduler_queued", "Model calls waiting for a scheduler slot", "gauge",
+                    () -> locked(() -> lane.queue.size()), "class", name);
+            Metrics.gauge("rag_scheduler_active", "Model calls holding a scheduler slot", "gauge",
+                    () -> locked(() -> lane.active), "class", name);
+            Metrics.gauge("rag_scheduler_limit", "Concurrent model calls allowed per class", "gauge",
+                    () -> locked(() -> lane.limit), "class", name);
+        }
+        if (enabled && latencyTargetMillis > 0 && adjustMillis > 0) {
+            controller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "model-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            controller.scheduleWithFixedDelay(this::adjust, adjustMillis, adjustMillis, TimeUnit.MILLISECONDS);
+        } else {
+            controller = null;
+        }
+    }
+
+    public static ModelScheduler fromConfig() {
+        return new ModelScheduler(RAGConfig.schedulerEnabled(),
+                RAGConfig.schedulerMaxConcurrency(),
+                RAGConfig.schedulerInteractiveWeight(),
+                RAGConfig.schedulerBackgroundWeight(),
+                RAGConfig.schedulerBackgroundMaxConcurrency(),
+                RAGConfig.ollamaAcquireTimeoutMillis(),
+                RAGConfig.schedulerLatencyTargetMillis(),
+                RAGConfig.schedulerAdjustMillis());
+    }
+
+    // Interactive embedding latency feeds the background limit
+    public EmbeddingModel embeddingModel(EmbeddingModel model, Priority priority) {
+        if (!enabled) {
+            return model;
+        }
+        return new EmbeddingModel() {
+            @Override
+            public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+                return call(priority, priority == Priority.INTERACTIVE, () -> model.embedAll(segments));
+            }
+        };
+    }
+
+    public ChatLanguageModel chatModel(ChatLanguageModel model, Priority priority) {
+        if (!enabled) {
+            return model;
+        }
+        return new ChatLanguageModel() {
+            @Override
+            public Response<AiMessage> generate(List<ChatMessage> messages) {
+                return call(priority, false, () -> model.generate(messages));
+            }
+        };
+    }
+
+    // The slot is held until the stream completes or fails
+    public StreamingChatLanguageModel streamingChatModel(StreamingChatLanguageModel model, Priority priority) {
+        if (!enabled || model == null) {
+            return model;
+        }
+        return new StreamingChatLanguageModel() {
+            @Override
+            public void generate(List<ChatMessage> messages, StreamingResponseHandler<AiMessage> handler) {
+                Lane lane = acquire(priority);
+                AtomicBoolean released = new AtomicBoolean();
+                Runnable release = () -> {
+                    if (released.compareAndSet(false, true)) {
+                        release(lane);
+                    }
+                };
+                try {
+                    model.generate(messages, new StreamingResponseHandler<AiMessage>() {
+                        @Override
+                        public void onNext(String token) {
+                            handler.onNext(token);
+                        }
+
+                        @Override
+                        public void onComplete(Response<AiMessage> response) {
+                            release.run();
+                            handler.onComplete(response);
+                        }
+
+                        @Override
+                        public void onError(Throwable error) {
+                            release.run();
+                            handler.onError(error);
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    release.run();
+                    throw e;
+                }
+            }
+        };
+    }
+
+    private <T> T call(Priority priority, boolean latencySignal, Supplier<T> action) {
+        long start = System.nanoTime();
+        Lane lane = acquire(priority);
+        try {
+            return action.get();
+        } finally {
+            release(lane);
+            if (latencySignal) {
+                sample(System.nanoTime() - start);
+            }
+        }
+    }
+
+    private Lane acquire(Priority priority) {
+        Lane lane = lanes[priority.ordinal()];
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            if (lane.queue.isEmpty() && running < maxConcurrency && lane.active < lane.limit) {
+                lane.pass = Math.max(lane.pass, virtualTime);
+                grant(lane);
+                lane.waitTime.recordSince(start);
+                return lane;
+            }
+            if (lane.queue.isEmpty()) {
+                // A class returning from idle starts level with the others instead of
+                // spending credit saved while it had nothing to run
+                lane.pass = Math.max(lane.pass, virtualTime);
+            }
+            Ticket ticket = new Ticket(lock.newCondition());
+            lane.queue.add(ticket);
+            // The request's deadline can end the wait before the class timeout
+            Deadline deadline = Deadline.current();
+            long timeout = lane.timeoutMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(lane.timeoutMillis) : Long.MAX_VALUE;
+            long remaining = deadline.cap(timeout);
+            try {
+                while (!ticket.granted) {
+                    if (remaining == Long.MAX_VALUE) {
+                        ticket.ready.await();
+                    } else if (remaining <= 0) {
+                        abandon(lane, ticket);
+                        if (deadline.expired()) {
+                            throw deadline.exceeded("scheduler");
+                        }
+                        throw new IllegalStateException("Timed out waiting " + lane.timeoutMillis + " ms for a model call slot");
+                    } else {
+                        remaining = ticket.ready.awaitNanos(remaining);
+                    }
+                }
+            } catch (InterruptedException e) {
+                abandon(lane, ticket);
+                Thread.currentThread().interrupt();
+                if (deadline.expired()) {
+                    throw deadline.exceeded("scheduler");
+                }
+                throw new RuntimeException("Interrupted while waiting for a model call slot", e);
+            }
+            lane.waitTime.recordSince(start);
+            return lane;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called with the lock held by a waiter that gives up; a slot granted meanwhile is passed on
+    private void abandon(Lane lane, Ticket ticket) {
+        if (ticket.granted) {
+            running--;
+            lane.active--;
+            dispatch();
+        } else {
+            lane.queue.remove(ticket);
+        }
+    }
+
+    private void release(Lane lane) {
+        lock.lock();
+        try {
+            running--;
+            lane.active--;
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Hands free slots to waiting calls, lowest pass first among classes under their limit
+    private void dispatch() {
+        while (running < maxConcurrency) {
+            Lane next = null;
+            for (Lane lane : lanes) {
+                if (!lane.queue.isEmpty() && lane.active < lane.limit && (next == null || lane.pass < next.pass)) {
+                    next = lane;
+                }
+            }
+            if (next == null) {
+                return;
+            }
+            Ticket ticket = next.queue.poll();
+            grant(next);
+            ticket.granted = true;
+            ticket.ready.signal();
+        }
+    }
+
+    private void grant(Lane lane) {
+        virtualTime = Math.max(virtualTime, lane.pass);
+        lane.pass += lane.stride;
+        lane.active++;
+        running++;
+    }
+
+    private void sample(long nanos) {
+        lock.lock();
+        try {
+            interactiveLatencyNanos = interactiveLatencyNanos < 0
+                    ? nanos
+                    : interactiveLatencyNanos + EWMA_ALPHA * (nanos - interactiveLatencyNanos);
+            sampled = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Multiplicative decrease while interactive calls are slow, additive increase otherwise
+    private void adjust() {
+        lock.lock();
+        try {
+            Lane background = lanes[Priority.BACKGROUND.ordinal()];
+            if (sampled && interactiveLatencyNanos > latencyTargetNanos) {
+                int limit = Math.max(1, background.limit / 2);
+                if (limit < background.limit) {
+                    background.limit = limit;
+                    BACKOFFS.increment();
+                }
+            } else if (background.limit < background.maxLimit) {
+                background.limit++;
+                dispatch();
+            }
+            // Without new samples the average would keep throttling ingestion after queries stop
+            if (!sampled && interactiveLatencyNanos > 0) {
+                interactiveLatencyNanos /= 2;
+            }
+            sampled = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long locked(Supplier<Integer> value) {
+        lock.lock();
+        try {
+            return value.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // For /health: per class queued, active and limit, plus wait quantiles
+    public String stats() {
+        lock.lock();
+        try {
+            StringBuilder json = new StringBuilder(String.format(Locale.ROOT,
+                    "{\"enabled\":%b,\"slots\":%d,\"running\":%d,\"interactiveEmbedMs\":%.1f",
+                    enabled, maxConcurrency, running, Math.max(0, interactiveLatencyNanos) / 1e6));
+            for (Lane lane : lanes) {
+                json.append(String.format(Locale.ROOT,
+                        ",\"%s\":{\"queued\":%d,\"active\":%d,\"limit\":%d,\"waitP50Ms\":%.1f,\"waitP99Ms\":%.1f}",
+                        lane.priority.name().toLowerCase(Locale.ROOT), lane.queue.size(), lane.active, lane.limit,
+                        lane.waitTime.quantileSeconds(0.5) * 1e3, lane.waitTime.quantileSeconds(0.99) * 1e3));
+            }
+            return json.append('}').toString();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String describe() {
+        if (!enabled) {
+            return "off";
+        }
+        Lane interactive = lanes[Priority.INTERACTIVE.ordinal()];
+        Lane background = lanes[Priority.BACKGROUND.ordinal()];
+        return String.format(Locale.ROOT, "%d slots, weights %d:%d, background limit %d",
+                maxConcurrency, Math.round(1 / interactive.stride), Math.round(1 / background.stride), background.maxLimit);
+    }
+
+    @Override
+    public void close() {
+        if (controller != null) {
+            controller.shutdownNow();
+        }
+    }
+
+    private static class Lane {
+        final Priority priority;
+        final double stride;
+        final int maxLimit;
+        final long timeoutMillis;
+        final LatencyHistogram waitTime;
+        final ArrayDeque<Ticket> queue = new ArrayDeque<>();
+        // Guarded by the scheduler's lock
+        int limit;
+        int active;
+        double pass;
+
+        Lane(Priority priority, int weight, int maxLimit, long timeoutMillis) {
+            this.priority = priority;
+            this.stride = 1.0 / Math.max(1, weight);
+            this.maxLimit = Math.max(1, maxLimit);
+            this.limit = this.maxLimit;
+            this.timeoutMillis = timeoutMillis;
+            this.waitTime = Metrics.histogram(WAIT_METRIC, WAIT_HELP, "class", priority.name().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private static class Ticket {
+        final Condition ready;
+        boolean granted;
+
+        Ticket(Condition ready) {
+            this.ready = ready;
+        }
+    }
+}
@@ -0,0 +1,559 @@
+package com.rag.project;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.ollama.OllamaChatModel;
+import dev.langchain4j.model.ollama.OllamaEmbeddingModel;
+import dev.langchain4j.model.ollama.OllamaStreamingChatModel;
+import dev.langchain4j.model.output.Response;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+// Spreads model calls over several Ollama servers. Each call goes to the available backend with
+// the fewest calls in flight, and no backend gets more than its concurrency limit; when all are
+// full, callers wait. A backend is taken out of rotation for a while after consecutive failures
+// (with the time doubling on each repeat), or while its /api/tags health check fails. A failed
+// call is retried once on another backend; a stream is retried only if nothing was sent yet.
+// Embedding calls can be hedged: if the first backend has not answered within the hedge delay,
+// the same call is sent to a second one and whichever answers first is used.
+public class OllamaBackendPool implements EmbeddingModel, ChatLanguageModel, StreamingChatLanguageModel, AutoCloseable {
+
+    private static final Metrics.Counter HEDGES = Metrics.counter("rag_ollama_hedges_total", "Embedding calls sent to a second backend");
+    private static final Metrics.Counter HEDGE_WINS = Metrics.counter("rag_ollama_hedge_wins_total", "Hedged embedding calls answered by the second backend first");
+    private static final Metrics.Counter EJECTIONS = Metrics.counter("rag_ollama_ejections_total", "Backends taken out of rotation after consecutive failures");
+
+    private final List<Backend> backends;
+    private final int ejectAfterFailures;
+    private final long ejectionNanos;
+    private final long maxEjectionNanos;
+    private final long hedgeDelayMillis;
+    private final int maxAttempts;
+    private final long acquireTimeoutNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final ExecutorService hedgeExecutor;
+    private final ScheduledExecutorService healthChecker;
+    private final HttpClient httpClient;
+    private int next;
+
+    public OllamaBackendPool(List<Backend> backends, int ejectAfterFailures, long ejectionMillis,
+                             long healthCheckMillis, long hedgeDelayMillis, int maxAttempts, long acquireTimeoutMillis) {
+        if (backends.isEmpty()) {
+            throw new IllegalArgumentException("At least one Ollama backend is required");
+        }
+        this.backends = new ArrayList<>(backends);
+        this.ejectAfterFailures = Math.max(1, ejectAfterFailures);
+        this.ejectionNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, ejectionMillis));
+        this.maxEjectionNanos = Math.max(ejectionNanos, TimeUnit.MINUTES.toNanos(5));
+        this.hedgeDelayMillis = hedgeDelayMillis;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.acquireTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, acquireTimeoutMillis));
+        this.hedgeExecutor = hedgeDelayMillis > 0 && backends.size() > 1
+                ? Executors.newCachedThreadPool(daemon("ollama-hedge"))
+                : null;
+
+        for (Backend backend : this.backends) {
+            Metrics.gauge("rag_ollama_outstanding", "Calls in flight per Ollama backend", "gauge",
+                    () -> backend.outstanding, "backend", backend.url);
+            Metrics.gauge("rag_ollama_available", "1 if the Ollama backend is in rotation", "gauge",
+                    () -> backend.available(System.nanoTime()) ? 1 : 0, "backend", backend.url);
+        }
+
+        if (healthCheckMillis > 0) {
+            httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+            healthChecker = Executors.newSingleThreadScheduledExecutor(daemon("ollama-health"));
+            healthChecker.scheduleWithFixedDelay(this::checkHealth, 0, healthCheckMillis, TimeUnit.MILLISECONDS);
+        } else {
+            httpClient = null;
+            healthChecker = null;
+        }
+    }
+
+    // One backend per rag.ollama.baseUrls entry, all serving the same two models
+    public static OllamaBackendPool fromConfig(String embeddingModelName, String chatModelName) {
+        List<Backend> backends = new ArrayList<>();
+        Duration timeout = Duration.ofMillis(RAGConfig.ollamaTimeoutMillis());
+        for (String url : RAGConfig.ollamaBaseUrls()) {
+            String baseUrl = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+            // The pool retries on another backend, so each model makes a single attempt
+            backends.add(new Backend(baseUrl,
+                    OllamaEmbeddingModel.builder()
+                            .baseUrl(baseUrl)
+                            .modelName(embeddingModelName)
+                            .timeout(timeout)
+                            .maxRetries(1)
+                            .build(),
+                    OllamaChatModel.builder()
+                            .baseUrl(baseUrl)
+                            .modelName(chatModelName)
+                            .timeout(timeout)
+                            .maxRetries(1)
+                            .build(),
+                    OllamaStreamingChatModel.builder()
+                            .baseUrl(baseUrl)
+                            .modelName(chatModelName)
+                            .timeout(timeout)
+                            .build(),
+                    RAGConfig.ollamaMaxConcurrency()));
+        }
+        return new OllamaBackendPool(backends,
+                RAGConfig.ollamaEjectAfterFailures(),
+                RAGConfig.ollamaEjectionMillis(),
+                RAGConfig.ollamaHealthCheckMillis(),
+                RAGConfig.ollamaHedgeDelayMillis(),
+                RAGConfig.ollamaMaxAttempts(),
+                RAGConfig.ollamaAcquireTimeoutMillis());
+    }
+
+    public String describe() {
+        StringBuilder text = new StringBuilder();
+        for (Backend backend : backends) {
+            text.append(text.length() == 0 ? "" : ", ").append(backend.url);
+        }
+        return text.toString();
+    }
+
+    public int backendCount() {
+        return backends.size();
+    }
+
+    // Backends currently in rotation, i.e. neither ejected nor failing their health check
+    public int availableBackends() {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            int available = 0;
+            for (Backend backend : backends) {
+                if (backend.available(now)) {
+                    available++;
+                }
+            }
+            return available;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Sends one small embedding and one short chat call to every backend at once, so each
+    // server has both models loaded before the first query. Returns the backends where both
+    // calls worked; failures do not count towards ejection.
+    public int warmUp() {
+        ExecutorService executor = Executors.newFixedThreadPool(backends.size() * 2, daemon("ollama-warmup"));
+        try {
+            List<CompletableFuture<?>> embeddings = new ArrayList<>();
+            List<CompletableFuture<?>> chats = new ArrayList<>();
+            for (Backend backend : backends) {
+                embeddings.add(CompletableFuture.supplyAsync(() -> backend.embeddingModel.embed("warm-up"), executor));
+                chats.add(CompletableFuture.supplyAsync(() -> backend.chatModel.generate("Reply with OK."), executor));
+            }
+            int warmed = 0;
+            for (int i = 0; i < backends.size(); i++) {
+                try {
+                    join(embeddings.get(i));
+                    join(chats.get(i));
+                    warmed++;
+                } catch (RuntimeException e) {
+                    System.err.println("⚠️ Warm-up failed on Ollama backend " + backends.get(i).url + ": " + e.getMessage());
+                }
+            }
+            return warmed;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        if (hedgeExecutor == null) {
+            return call(backend -> backend.embeddingModel.embedAll(segments), new HashSet<>());
+        }
+        return hedged(backend -> backend.embeddingModel.embedAll(segments));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        return call(backend -> backend.chatModel.generate(messages), new HashSet<>());
+    }
+
+    @Override
+    public void generate(List<ChatMessage> messages, StreamingResponseHandler<AiMessage> handler) {
+        stream(messages, handler, new HashSet<>());
+    }
+
+    @Override
+    public void close() {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+        }
+        if (hedgeExecutor != null) {
+            hedgeExecutor.shutdownNow();
+        }
+    }
+
+    private <T> T call(Function<Backend, T> action, Set<Backend> tried) {
+        RuntimeException failure = null;
+        while (tried.size() < maxAttempts) {
+            // No retry for a request that has been given up on
+            Deadline.current().check("ollama");
+            Backend backend = acquire(tried, true);
+            if (backend == null) {
+                break;
+            }
+            tried.add(backend);
+            try {
+                return attempt(backend, action);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+        throw failure != null ? failure : new IllegalStateException("No Ollama backend left to retry on");
+    }
+
+    // Runs the call on an acquired backend, records the outcome and frees the slot
+    private <T> T attempt(Backend backend, Function<Backend, T> action) {
+        try {
+            T result = action.apply(backend);
+            succeeded(backend);
+            return result;
+        } catch (RuntimeException e) {
+            // A call cut short by its request's deadline says nothing about the backend
+            if (!Deadline.current().expired()) {
+                failed(backend, e);
+            }
+            throw e;
+        } finally {
+            release(backend);
+        }
+    }
+
+    private <T> T hedged(Function<Backend, T> action) {
+        Set<Backend> tried = new HashSet<>();
+        Backend primary = acquire(tried, true);
+        tried.add(primary);
+        CompletableFuture<T> first = CompletableFuture.supplyAsync(() -> attempt(primary, action), hedgeExecutor);
+        try {
+            return first.get(hedgeDelayMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Only hedge onto a backend that is free right now, so hedges never queue behind real work
+            Backend secondary = acquire(tried, false);
+            if (secondary == null) {
+                try {
+                    return join(first);
+                } catch (RuntimeException failure) {
+                    return retry(action, tried, failure);
+                }
+            }
+            tried.add(secondary);
+            HEDGES.increment();
+            CompletableFuture<T> second = CompletableFuture.supplyAsync(() -> attempt(secondary, action), hedgeExecutor);
+            CompletableFuture<T> winner = new CompletableFuture<>();
+            AtomicInteger failures = new AtomicInteger();
+            first.whenComplete((result, error) -> settle(winner, result, error, failures, false));
+            second.whenComplete((result, error) -> settle(winner, result, error, failures, true));
+            // The slower call keeps running until it returns; its backend is released then
+            return join(winner);
+        } catch (ExecutionException e) {
+            // The primary failed before the hedge delay
+            try {
+                return join(first);
+            } catch (RuntimeException failure) {
+                return retry(action, tried, failure);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for Ollama", e);
+        }
+    }
+
+    // Continues a failed unhedged attempt like call() would; without an attempt or backend
+    // left, the original failure is thrown
+    private <T> T retry(Function<Backend, T> action, Set<Backend> tried, RuntimeException failure) {
+        if (tried.size() >= maxAttempts || !hasOtherBackend(tried)) {
+            throw failure;
+        }
+        return call(action, tried);
+    }
+
+    private static <T> void settle(CompletableFuture<T> winner, T result, Throwable error,
+                                   AtomicInteger failures, boolean hedge) {
+        if (error == null) {
+            if (winner.complete(result) && hedge) {
+                HEDGE_WINS.increment();
+            }
+        } else if (failures.incrementAndGet() == 2) {
+            winner.completeExceptionally(error);
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null
+                    ? e.getCause().getCause()
+                    : e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for Ollama", e);
+        }
+    }
+
+    private void stream(List<ChatMessage> messages, StreamingResponseHandler<AiMessage> handler, Set<Backend> tried) {
+        Backend backend;
+        try {
+            backend = acquire(tried, true);
+        } catch (RuntimeException e) {
+            handler.onError(e);
+            return;
+        }
+        tried.add(backend);
+        AtomicBoolean started = new AtomicBoolean();
+        AtomicBoolean done = new AtomicBoolean();
+        StreamingResponseHandler<AiMessage> tracking = new StreamingResponseHandler<AiMessage>() {
+            @Override
+            public void onNext(String token) {
+                started.set(true);
+                handler.onNext(token);
+            }
+
+            @Override
+            public void onComplete(Response<AiMessage> response) {
+                if (done.compareAndSet(false, true)) {
+                    succeeded(backend);
+                    release(backend);
+                    handler.onComplete(response);
+                }
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                if (!done.compareAndSet(false, true)) {
+                    return;
+                }
+                if (!(error instanceof Deadline.ExceededException)) {
+                    failed(backend, error);
+                }
+                release(backend);
+                if (!started.get() && tried.size() < maxAttempts && hasOtherBackend(tried)
+                        && !(error instanceof Deadline.ExceededException)) {
+                    stream(messages, handler, tried);
+                } else {
+                    handler.onError(error);
+                }
+            }
+        };
+        try {
+            backend.streamingModel.generate(messages, tracking);
+        } catch (RuntimeException e) {
+            tracking.onError(e);
+        }
+    }
+
+    // Picks the available backend with the fewest calls in flight, skipping `exclude`. When
+    // every backend is out of rotation they are all used anyway, since refusing every call
+    // would not help them recover. With `wait` the caller blocks for a free slot; without it,
+    // null means none is free. The wait also ends with the request's deadline.
+    private Backend acquire(Set<Backend> exclude, boolean wait) {
+        Deadline request = Deadline.current();
+        long deadline = System.nanoTime() + request.cap(acquireTimeoutNanos);
+        lock.lock();
+        try {
+            if (exclude.containsAll(backends)) {
+                return null;
+            }
+            while (true) {
+                long now = System.nanoTime();
+                boolean anyAvailable = false;
+                for (Backend backend : backends) {
+                    if (!exclude.contains(backend) && backend.available(now)) {
+                        anyAvailable = true;
+                        break;
+                    }
+                }
+
+                Backend best = null;
+                int size = backends.size();
+                for (int i = 0; i < size; i++) {
+                    Backend backend = backends.get((next + i) % size);
+                    if (exclude.contains(backend) || backend.outstanding >= backend.maxConcurrency) {
+                        continue;
+                    }
+                    if (anyAvailable && !backend.available(now)) {
+                        continue;
+                    }
+                    if (best == null || backend.outstanding < best.outstanding) {
+                        best = backend;
+                    }
+                }
+                if (best != null) {
+                    // Rotate the starting point so ties are spread round-robin
+                    next = (next + 1) % size;
+                    best.outstanding++;
+                    return best;
+                }
+                if (!wait) {
+                    return null;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    if (request.expired()) {
+                        throw request.exceeded("ollama");
+                    }
+                    throw new IllegalStateException("All Ollama backends are busy");
+                }
+                released.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (request.expired()) {
+                throw request.exceeded("ollama");
+            }
+            throw new RuntimeException("Interrupted while waiting for an Ollama backend", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(Backend backend) {
+        lock.lock();
+        try {
+            backend.outstanding--;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean hasOtherBackend(Set<Backend> tried) {
+        return !tried.containsAll(backends);
+    }
+
+    private void succeeded(Backend backend) {
+        lock.lock();
+        try {
+            backend.failures = 0;
+            if (!backend.ejected(System.nanoTime())) {
+                backend.ejections = 0;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void failed(Backend backend, Throwable error) {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            if (++backend.failures < ejectAfterFailures || backend.ejected(now)) {
+                return;
+            }
+            backend.failures = 0;
+            long ejection = Math.min(maxEjectionNanos, ejectionNanos << Math.min(backend.ejections, 20));
+            backend.ejections++;
+            backend.ejectedUntil = now + ejection;
+            backend.ejected = true;
+            EJECTIONS.increment();
+            System.err.println("⚠️ Ollama backend " + backend.url + " ejected for "
+                    + TimeUnit.NANOSECONDS.toSeconds(ejection) + "s: " + error.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkHealth() {
+        for (Backend backend : backends) {
+            boolean healthy;
+            try {
+                HttpResponse<Void> response = httpClient.send(HttpRequest.newBuilder(URI.create(backend.url + "/api/tags"))
+                        .timeout(Duration.ofSeconds(2))
+                        .GET()
+                        .build(), HttpResponse.BodyHandlers.discarding());
+                healthy = response.statusCode() == 200;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                healthy = false;
+            }
+            if (healthy == backend.down) {
+                System.out.println(healthy
+                        ? "✅ Ollama backend " + backend.url + " is healthy again"
+                        : "⚠️ Ollama backend " + backend.url + " failed its health check");
+            }
+            backend.down = !healthy;
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public static class Backend {
+        final String url;
+        final EmbeddingModel embeddingModel;
+        final ChatLanguageModel chatModel;
+        final StreamingChatLanguageModel streamingModel;
+        final int maxConcurrency;
+        // Guarded by the pool's lock, except `down`, which only the health checker writes
+        int outstanding;
+        int failures;
+        int ejections;
+        long ejectedUntil;
+        boolean ejected;
+        volatile boolean down;
+
+        public Backend(String url, EmbeddingModel embeddingModel, ChatLanguageModel chatModel,
+                       StreamingChatLanguageModel streamingModel, int maxConcurrency) {
+            this.url = url;
+            this.embeddingModel = embeddingModel;
+            this.chatModel = chatModel;
+            this.streamingModel = streamingModel;
+            this.maxConcurrency = Math.max(1, maxConcurrency);
+        }
+
+        boolean available(long now) {
+            return !down && !ejected(now);
+        }
+
+        // nanoTime values may be negative, so compare by difference
+        boolean ejected(long now) {
+            return ejected && now - ejectedUntil < 0;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.rag.project;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Spreads segments over one store per value of a metadata key (rag.partition.key), e.g. one
+// Milvus collection per document collection or tenant. Writes go to the partition named by
+// the segment's value; a search whose scope lists values of the key only touches those
+// partitions, so its cost follows the size of the scoped subset rather than of the corpus.
+// Unscoped searches query every partition and keep the best matches overall.
+public class PartitionedEmbeddingStore implements EmbeddingStore<TextSegment>, EmbeddingRemover, ScopedSearcher,
+        SegmentLookup, Flushable, AutoCloseable {
+
+    // Segments without a value for the key
+    public static final String DEFAULT_PARTITION = "default";
+
+    // Creates or opens the store behind one partition; `name` is already sanitized
+    public interface Opener {
+        Partition open(String name) throws IOException;
+    }
+
+    private final String key;
+    private final Opener opener;
+    private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
+
+    // `existing` are the partitions already stored, found by the caller on startup
+    public PartitionedEmbeddingStore(String key, Opener opener, Collection<String> existing) throws IOException {
+        this.key = key;
+        this.opener = opener;
+        for (String name : existing) {
+            partitions.put(name, opener.open(name));
+        }
+        Metrics.gauge("rag_store_partitions", "Vector store partitions", "gauge", partitions::size);
+    }
+
+    public String key() {
+        return key;
+    }
+
+    public int partitionCount() {
+        return partitions.size();
+    }
+
+    // Letters, digits and underscores only, as Milvus requires for collection names
+    public static String partitionName(String value) {
+        if (value == null || value.isEmpty()) {
+            return DEFAULT_PARTITION;
+        }
+        StringBuilder name = new StringBuilder(value.length());
+        for (int i = 0; i < value.length() && name.length() < 64; i++) {
+            char c = value.charAt(i);
+            name.append(c < 128 && (Character.isLetterOrDigit(c) || c == '_') ? c : '_');
+        }
+        return name.toString();
+    }
+
+    private Partition partition(String name) {
+        return partitions.computeIfAbsent(name, missing -> {
+            try {
+                System.out.println("📂 New vector store partition: " + missing);
+                return opener.open(missing);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to open partition " + missing + ": " + e.getMessage(), e);
+            }
+        });
+    }
+
+    private String partitionOf(TextSegment segment) {
+        return partitionName(segment == null ? null : segment.metadata(key));
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        return partition(DEFAULT_PARTITION).store.add(embedding);
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        partition(DEFAULT_PARTITION).store.add(id, embedding);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        return partition(partitionOf(segment)).store.add(embedding, segment);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        return partition(DEFAULT_PARTITION).store.addAll(embeddings);
+    }
+
+    // One addAll per partition in the batch; IDs come back in input order
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> segments) {
+        Map<String, List<Integer>> byPartition = new LinkedHashMap<>();
+        for (int i = 0; i < segments.size(); i++) {
+            byPartition.computeIfAbsent(partitionOf(segments.get(i)), name -> new ArrayList<>()).add(i);
+        }
+        String[] ids = new String[segments.size()];
+        for (Map.Entry<String, List<Integer>> entry : byPartition.entrySet()) {
+            List<Integer> positions = entry.getValue();
+            List<Embedding> partEmbeddings = new ArrayList<>(positions.size());
+            List<TextSegment> partSegments = new ArrayList<>(positions.size());
+            for (int position : positions) {
+                partEmbeddings.add(embeddings.get(position));
+                partSegments.add(segments.get(position));
+            }
+            List<String> added = partition(entry.getKey()).store.addAll(partEmbeddings, partSegments);
+            for (int i = 0; i < positions.size(); i++) {
+                ids[positions.get(i)] = added.get(i);
+            }
+        }
+        return List.of(ids);
+    }
+
+    // The manifest does not record partitions, so every one is asked; unknown IDs are ignored
+    @Override
+    public void removeAll(Collection<String> ids) {
+        for (Partition partition : partitions.values()) {
+            partition.remover.removeAll(ids);
+        }
+    }
+
+    // Partitions are asked in turn for the IDs not found so far
+    @Override
+    public Map<String, TextSegment> findAll(Collection<String> ids) {
+        Map<String, TextSegment> found = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>(ids);
+        for (Partition partition : partitions.values()) {
+            if (missing.isEmpty()) {
+                break;
+            }
+            if (partition.store instanceof SegmentLookup) {
+                Map<String, TextSegment> part = ((SegmentLookup) partition.store).findAll(missing);
+                found.putAll(part);
+                missing.removeAll(part.keySet());
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore) {
+        return findRelevant(referenceEmbedding, maxResults, minScore, SearchScope.ALL);
+    }
+
+    @Override
+    public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore,
+                                                          SearchScope scope) {
+        Set<String> values = scope.values(key);
+        List<Partition> targets = new ArrayList<>();
+        SearchScope rest = scope;
+        if (values == null) {
+            targets.addAll(partitions.values());
+        } else {
+            boolean exact = true;
+            for (String value : values) {
+                String name = partitionName(value);
+                exact &= name.equals(value);
+                // Partitions that were never written hold nothing, so none is created here
+                Partition partition = partitions.get(name);
+                if (partition != null && !targets.contains(partition)) {
+                    targets.add(partition);
+                }
+            }
+            // Values that map to their own partition need no filter; others may share one
+            if (exact) {
+                rest = scope.without(key);
+            }
+        }
+
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+        for (Partition partition : targets) {
+            matches.addAll(ScopedSearcher.search(partition.store, referenceEmbedding, maxResults, minScore, rest));
+        }
+        if (targets.size() > 1) {
+            matches.sort(Comparator.comparingDouble((EmbeddingMatch<TextSegment> match) -> match.score()).reversed());
+            if (matches.size() > maxResults) {
+                matches = new ArrayList<>(matches.subList(0, maxResults));
+            }
+        }
+        return matches;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        for (Partition partition : partitions.values()) {
+            if (partition.store instanceof Flushable) {
+                ((Flushable) partition.store).flush();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Partition partition : partitions.values()) {
+            if (partition.store instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) partition.store).close();
+                } catch (Exception e) {
+                    failure = failure != null ? failure : new IOException("Failed to close a partition: " + e.getMessage(), e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // One partition's store and the remover that deletes from it
+    public static class Partition {
+        final EmbeddingStore<TextSegment> store;
+        final EmbeddingRemover remover;
+
+        public Partition(EmbeddingStore<TextSegment> store, EmbeddingRemover remover) {
+            this.store = store;
+            this.remover = remover;
+        }
+    }
+}
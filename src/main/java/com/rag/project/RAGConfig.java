@@ -0,0 +1,455 @@
+package com.rag.project;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Settings are read from -D system properties first (e.g. -Drag.ingest.embedBatchSize=64),
+// then from environment variables (RAG_INGEST_EMBEDBATCHSIZE=64), then fall back to defaults.
+public class RAGConfig {
+
+    private RAGConfig() {
+    }
+
+    public static String get(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            value = System.getenv(key.toUpperCase().replace('.', '_'));
+        }
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    public static double getDouble(String key, double defaultValue) {
+        String value = get(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + key + ": " + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        String value = get(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + key + ": " + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static List<String> getList(String key, String defaultValue) {
+        List<String> values = new ArrayList<>();
+        for (String value : get(key, defaultValue).split(",")) {
+            if (!value.isBlank()) {
+                values.add(value.trim());
+            }
+        }
+        return values;
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = get(key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    // Documents
+    public static String documentsDir() {
+        return get("rag.documents.dir", "documents");
+    }
+
+    public static List<String> documentGlobs() {
+        return getList("rag.documents.globs", "**/*.txt");
+    }
+
+    // Ingestion
+    public static boolean pipelinedIngestion() {
+        return getBoolean("rag.ingest.pipelined", true);
+    }
+
+    public static int embedBatchSize() {
+        return Math.max(1, getInt("rag.ingest.embedBatchSize", 32));
+    }
+
+    public static int insertBatchSize() {
+        return Math.max(1, getInt("rag.ingest.insertBatchSize", 256));
+    }
+
+    public static int embedConcurrency() {
+        return Math.max(1, getInt("rag.ingest.embedConcurrency", 4));
+    }
+
+    public static int ingestQueueCapacity() {
+        return Math.max(1, getInt("rag.ingest.queueCapacity", 8));
+    }
+
+    public static int fileConcurrency() {
+        return Math.max(1, getInt("rag.ingest.fileConcurrency", Runtime.getRuntime().availableProcessors()));
+    }
+
+    // Tags every ingested segment; a scope can then limit searches to one tenant
+    public static String ingestTenant() {
+        return get("rag.ingest.tenant", "default");
+    }
+
+    // Collection of files directly in the documents directory; files in a subdirectory
+    // belong to the collection named after its top-level folder
+    public static String defaultDocumentCollection() {
+        return get("rag.ingest.collection", "default");
+    }
+
+    // Files at least this large are split while being read instead of loaded whole
+    public static long streamingThresholdBytes() {
+        return Math.max(0, getInt("rag.ingest.streamingThresholdMb", 16)) * 1024L * 1024L;
+    }
+
+    // Incremental indexing
+    // Off by default for the in-memory store, which starts empty on every run
+    public static boolean incrementalIndexing() {
+        return getBoolean("rag.index.incremental", !"memory".equalsIgnoreCase(vectorStore()));
+    }
+
+    // Each store keeps its own manifest, so switching rag.store or rag.partition.key re-indexes into the new one
+    public static String indexManifestPath() {
+        String defaultName = "local".equalsIgnoreCase(vectorStore()) ? "local-store" : milvusCollection();
+        if (!partitionKey().isEmpty()) {
+            defaultName += "-by-" + partitionKey();
+        }
+        return get("rag.index.manifest", ".rag-cache/" + defaultName + ".manifest");
+    }
+
+    public static boolean watchDocuments() {
+        return getBoolean("rag.index.watch", false);
+    }
+
+    // Vector store: "milvus" (server on localhost:19530), "local" (in-process, see LocalEmbeddingStore)
+    // or "memory" (in-process, not saved)
+    public static String vectorStore() {
+        return get("rag.store", "milvus");
+    }
+
+    // Segment metadata key whose values each get their own Milvus collection or local store
+    // file (see PartitionedEmbeddingStore), usually "collection" or "tenant"; empty for one store
+    public static String partitionKey() {
+        return get("rag.partition.key", "").trim();
+    }
+
+    // Milvus
+    public static String milvusHost() {
+        return get("rag.milvus.host", "localhost");
+    }
+
+    public static int milvusPort() {
+        return getInt("rag.milvus.port", 19530);
+    }
+
+    public static String milvusCollection() {
+        return get("rag.milvus.collection", "rag_collection");
+    }
+
+    // FLAT, IVF_FLAT, IVF_SQ8, IVF_PQ or HNSW; see MilvusIndexSettings
+    public static String milvusIndexType() {
+        return get("rag.milvus.indexType", "FLAT");
+    }
+
+    // COSINE, IP or L2
+    public static String milvusMetricType() {
+        return get("rag.milvus.metricType", "COSINE");
+    }
+
+    // STRONG, BOUNDED, SESSION or EVENTUALLY
+    public static String milvusConsistencyLevel() {
+        return get("rag.milvus.consistencyLevel", "EVENTUALLY");
+    }
+
+    public static int milvusNlist() {
+        return Math.max(1, getInt("rag.milvus.nlist", 1024));
+    }
+
+    public static int milvusNprobe() {
+        return Math.max(1, getInt("rag.milvus.nprobe", 16));
+    }
+
+    // Sub-quantizers for IVF_PQ; must divide the dimension. 0 picks dimension / 8 or the next divisor below.
+    public static int milvusPqM() {
+        return Math.max(0, getInt("rag.milvus.pqM", 0));
+    }
+
+    public static int milvusHnswM() {
+        return Math.max(2, getInt("rag.milvus.hnswM", 16));
+    }
+
+    public static int milvusEfConstruction() {
+        return Math.max(1, getInt("rag.milvus.efConstruction", 200));
+    }
+
+    // Raised to the number of results requested when lower, as Milvus requires
+    public static int milvusEf() {
+        return Math.max(1, getInt("rag.milvus.ef", 64));
+    }
+
+    public static String localStorePath() {
+        return get("rag.store.local.path", ".rag-cache/local-store.bin");
+    }
+
+    // "hnsw" (approximate graph search) or "exact" (full scan)
+    public static String localStoreIndex() {
+        return get("rag.store.local.index", "hnsw");
+    }
+
+    // Below this many vectors the exact scan is used even when the graph exists
+    public static int localStoreExactThreshold() {
+        return Math.max(0, getInt("rag.store.local.exactThreshold", 5000));
+    }
+
+    public static int localStoreHnswM() {
+        return Math.max(2, getInt("rag.store.local.hnswM", 16));
+    }
+
+    public static int localStoreEfConstruction() {
+        return Math.max(1, getInt("rag.store.local.efConstruction", 100));
+    }
+
+    public static int localStoreEfSearch() {
+        return Math.max(1, getInt("rag.store.local.efSearch", 128));
+    }
+
+    // Embeddings
+    public static int embeddingDimension() {
+        return getInt("rag.embedding.dimension", 768);
+    }
+
+    public static boolean embeddingCacheEnabled() {
+        return getBoolean("rag.embeddingCache.enabled", true);
+    }
+
+    public static String embeddingCachePath() {
+        return get("rag.embeddingCache.path", ".rag-cache/embeddings.bin");
+    }
+
+    public static int embeddingCacheMaxEntries() {
+        return Math.max(1, getInt("rag.embeddingCache.maxEntries", 100_000));
+    }
+
+    // Query path
+    public static int queryCacheMaxEntries() {
+        return Math.max(1, getInt("rag.queryCache.maxEntries", 1000));
+    }
+
+    public static int queryCacheTtlSeconds() {
+        return Math.max(0, getInt("rag.queryCache.ttlSeconds", 600));
+    }
+
+    public static boolean answerCacheEnabled() {
+        return getBoolean("rag.answerCache.enabled", true);
+    }
+
+    public static int answerCacheMaxEntries() {
+        return Math.max(1, getInt("rag.answerCache.maxEntries", 500));
+    }
+
+    // Minimum cosine similarity between query embeddings for a cached answer to be reused
+    public static double answerCacheThreshold() {
+        return getDouble("rag.answerCache.threshold", 0.95);
+    }
+
+    public static int answerCacheTtlSeconds() {
+        return Math.max(0, getInt("rag.answerCache.ttlSeconds", 3600));
+    }
+
+    // Retrieval: "vector" (embedding search only), "hybrid" (BM25 and vector hits fused by
+    // reciprocal rank) or "auto" (hybrid, but a confident BM25 hit skips the embedding call)
+    public static String retrievalMode() {
+        return get("rag.retrieval.mode", "hybrid").toLowerCase(Locale.ROOT);
+    }
+
+    public static int rrfK() {
+        return Math.max(1, getInt("rag.retrieval.rrfK", 60));
+    }
+
+    // LexicalIndex.Result.confidence() needed in auto mode to answer without embedding
+    public static double lexicalConfidence() {
+        return getDouble("rag.retrieval.lexicalConfidence", 0.6);
+    }
+
+    // Prompt context (see ContextBuilder)
+    // Segments retrieved per query; the token budget decides how many reach the prompt
+    public static int contextCandidates() {
+        return Math.max(1, getInt("rag.context.candidates", 6));
+    }
+
+    public static int contextMaxTokens() {
+        return Math.max(1, getInt("rag.context.maxTokens", 1500));
+    }
+
+    // Share of a segment's word triples found in a more relevant one for it to be dropped
+    public static double contextDuplicateThreshold() {
+        return getDouble("rag.context.duplicateThreshold", 0.8);
+    }
+
+    // Batch queries (RAGService.answerAll, /ask/batch)
+    public static int batchSearchConcurrency() {
+        return Math.max(1, getInt("rag.batch.searchConcurrency", 8));
+    }
+
+    public static int batchGenerateConcurrency() {
+        return Math.max(1, getInt("rag.batch.generateConcurrency", 4));
+    }
+
+    public static int batchMaxQueries() {
+        return Math.max(1, getInt("rag.batch.maxQueries", 10_000));
+    }
+
+    // Ollama backends (see OllamaBackendPool). rag.ollama.baseUrl still works for a single server.
+    public static List<String> ollamaBaseUrls() {
+        return getList("rag.ollama.baseUrls", get("rag.ollama.baseUrl", "http://localhost:11435"));
+    }
+
+    // Calls in flight per backend; Ollama queues anything above OLLAMA_NUM_PARALLEL itself
+    public static int ollamaMaxConcurrency() {
+        return Math.max(1, getInt("rag.ollama.maxConcurrency", 8));
+    }
+
+    public static int ollamaMaxAttempts() {
+        return Math.max(1, getInt("rag.ollama.maxAttempts", 2));
+    }
+
+    public static long ollamaAcquireTimeoutMillis() {
+        return Math.max(0, getInt("rag.ollama.acquireTimeoutMs", 30_000));
+    }
+
+    // HTTP timeout of a single Ollama call; request deadlines are usually shorter
+    public static long ollamaTimeoutMillis() {
+        return Math.max(1_000, getInt("rag.ollama.timeoutMs", 180_000));
+    }
+
+    public static int ollamaEjectAfterFailures() {
+        return Math.max(1, getInt("rag.ollama.ejectAfterFailures", 3));
+    }
+
+    // Doubles on each repeated ejection, up to five minutes
+    public static long ollamaEjectionMillis() {
+        return Math.max(0, getInt("rag.ollama.ejectionMs", 10_000));
+    }
+
+    // 0 disables the /api/tags health check
+    public static long ollamaHealthCheckMillis() {
+        return Math.max(0, getInt("rag.ollama.healthCheckMs", 5_000));
+    }
+
+    // 0 disables hedged embedding calls
+    public static long ollamaHedgeDelayMillis() {
+        return Math.max(0, getInt("rag.ollama.hedgeDelayMs", 0));
+    }
+
+    // Model call scheduler (see ModelScheduler): queries before ingestion
+    public static boolean schedulerEnabled() {
+        return getBoolean("rag.scheduler.enabled", true);
+    }
+
+    // Defaults to the combined capacity of the Ollama backends
+    public static int schedulerMaxConcurrency() {
+        return Math.max(1, getInt("rag.scheduler.maxConcurrency", ollamaBaseUrls().size() * ollamaMaxConcurrency()));
+    }
+
+    // Share of contended slots: with 4:1, four query calls start for every ingestion call
+    public static int schedulerInteractiveWeight() {
+        return Math.max(1, getInt("rag.scheduler.interactiveWeight", 4));
+    }
+
+    public static int schedulerBackgroundWeight() {
+        return Math.max(1, getInt("rag.scheduler.backgroundWeight", 1));
+    }
+
+    // Upper bound for ingestion; the adaptive limit moves between 1 and this
+    public static int schedulerBackgroundMaxConcurrency() {
+        return Math.max(1, getInt("rag.scheduler.backgroundMaxConcurrency", Math.max(1, schedulerMaxConcurrency() / 2)));
+    }
+
+    // Query embedding latency, queueing included, above which ingestion backs off; 0 disables
+    public static long schedulerLatencyTargetMillis() {
+        return Math.max(0, getInt("rag.scheduler.latencyTargetMs", 500));
+    }
+
+    public static long schedulerAdjustMillis() {
+        return Math.max(1, getInt("rag.scheduler.adjustMs", 1_000));
+    }
+
+    // Web server
+    public static int serverPort() {
+        return getInt("rag.server.port", 8081);
+    }
+
+    public static int serverBacklog() {
+        return Math.max(0, getInt("rag.server.backlog", 128));
+    }
+
+    // Larger request bodies are rejected with 400 while being parsed
+    public static int maxRequestBytes() {
+        return Math.max(1024, getInt("rag.server.maxRequestBytes", 4 * 1024 * 1024));
+    }
+
+    // "platform" (fixed thread pool) or "virtual" (JDK 21+ virtual threads)
+    public static String serverExecutor() {
+        return get("rag.server.executor", "platform");
+    }
+
+    public static int askWorkers() {
+        return Math.max(1, getInt("rag.server.askWorkers", 8));
+    }
+
+    public static int askQueueLimit() {
+        return Math.max(0, getInt("rag.server.askQueueLimit", 32));
+    }
+
+    // Default deadline of /ask requests, counted from arrival; 0 means none.
+    // Clients can ask for another one with "timeoutMs" or X-Request-Timeout-Ms.
+    public static long requestTimeoutMillis() {
+        return Math.max(0, getInt("rag.server.requestTimeoutMs", 60_000));
+    }
+
+    // Upper bound for deadlines asked for by clients; 0 means no bound
+    public static long maxRequestTimeoutMillis() {
+        return Math.max(0, getInt("rag.server.maxRequestTimeoutMs", 600_000));
+    }
+
+    // Threads that run model calls for requests with a deadline, so a request can stop
+    // waiting for one; beyond this, calls run on the request's own thread
+    public static int stageWorkers() {
+        return Math.max(1, getInt("rag.server.stageWorkers", 256));
+    }
+
+    public static int controlThreads() {
+        return Math.max(1, getInt("rag.server.controlThreads", 2));
+    }
+
+    public static int retryAfterSeconds() {
+        return Math.max(1, getInt("rag.server.retryAfterSeconds", 5));
+    }
+
+    // Startup: the server binds at once and reports on /health/ready when it can serve queries
+    public static boolean serverWarmUp() {
+        return getBoolean("rag.server.warmUp", true);
+    }
+
+    // If false, the server is ready while the first ingestion pass is still running
+    public static boolean readyAfterIngestion() {
+        return getBoolean("rag.server.readyAfterIngestion", true);
+    }
+
+    public static int readinessIntervalMillis() {
+        return Math.max(100, getInt("rag.server.readinessIntervalMs", 5000));
+    }
+
+    // Wait between attempts to open the vector store during startup
+    public static int startupRetryMillis() {
+        return Math.max(100, getInt("rag.server.startupRetryMs", 5000));
+    }
+}
@@ -1,51 +1,693 @@
 package com.rag.project;
 
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.message.AiMessage;
 import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.StreamingResponseHandler;
 import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.EmbeddingMatch;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
 public class RAGService {
     
+    private static final String STAGE_METRIC = "rag_query_stage_seconds";
+    private static final String STAGE_HELP = "Time spent in each stage of answering a query";
+    private static final LatencyHistogram EMBED_TIME = Metrics.histogram(STAGE_METRIC, STAGE_HELP, "stage", "embed");
+    private static final LatencyHistogram SEARCH_TIME = Metrics.histogram(STAGE_METRIC, STAGE_HELP, "stage", "search");
+    private static final LatencyHistogram LEXICAL_TIME = Metrics.histogram(STAGE_METRIC, STAGE_HELP, "stage", "lexical_search");
+    private static final LatencyHistogram PROMPT_TIME = Metrics.histogram(STAGE_METRIC, STAGE_HELP, "stage", "prompt");
+    private static final LatencyHistogram FIRST_TOKEN_TIME = Metrics.histogram(STAGE_METRIC, STAGE_HELP, "stage", "first_token");
+    private static final LatencyHistogram GENERATE_TIME = Metrics.histogram(STAGE_METRIC, STAGE_HELP, "stage", "generate");
+    private static final LatencyHistogram TOTAL_TIME = Metrics.histogram(STAGE_METRIC, STAGE_HELP, "stage", "total");
+    private static final Metrics.Counter QUERIES = Metrics.counter("rag_queries_total", "Queries answered, including failures");
+    private static final Metrics.Counter ERRORS = Metrics.counter("rag_query_errors_total", "Queries that failed");
+    private static final Metrics.Counter PROMPTS = Metrics.counter("rag_prompts_total", "Prompts sent to the chat model");
+    private static final Metrics.Counter PROMPT_TOKENS = Metrics.counter("rag_prompt_tokens_total",
+            "Estimated tokens in prompts sent to the chat model");
+    private static final Metrics.Counter LEXICAL_ONLY = Metrics.counter("rag_lexical_only_queries_total",
+            "Queries retrieved from the lexical index alone, without an embedding call");
+    private static final Metrics.Counter SCOPED = Metrics.counter("rag_scoped_queries_total",
+            "Queries whose search was restricted to a scope");
+    private static final Metrics.Counter ANSWER_CACHE_HITS = Metrics.counter("rag_answer_cache_hits_total",
+            "Queries answered from the semantic answer cache");
+    private static final AtomicInteger IN_FLIGHT = new AtomicInteger();
+    
+    static {
+        Metrics.gauge("rag_queries_in_flight", "Queries currently being answered", "gauge", IN_FLIGHT::get);
+    }
+    
     private final EmbeddingStore<TextSegment> embeddingStore;
     private final EmbeddingModel embeddingModel;
     private final ChatLanguageModel chatLanguageModel;
+    private final StreamingChatLanguageModel streamingChatLanguageModel;
+    private final ContextBuilder contextBuilder = ContextBuilder.fromConfig();
+    private final int candidates = RAGConfig.contextCandidates();
+    // Null for vector-only retrieval
+    private final LexicalIndex lexicalIndex;
+    private final boolean lexicalShortcut = "auto".equals(RAGConfig.retrievalMode());
+    private final double lexicalConfidence = RAGConfig.lexicalConfidence();
+    private final int rrfK = RAGConfig.rrfK();
+    
+    // Repeated questions skip the embedding call; identical concurrent questions share one
+    // embedding call and one store search
+    private final LruCache<String, Embedding> queryEmbeddingCache = new LruCache<>(
+            RAGConfig.queryCacheMaxEntries(), RAGConfig.queryCacheTtlSeconds() * 1000L);
+    private final SingleFlight<String, Embedding> embeddingFlights = new SingleFlight<>();
+    private final SingleFlight<String, List<EmbeddingMatch<TextSegment>>> searchFlights = new SingleFlight<>();
+    private final SemanticAnswerCache answerCache = RAGConfig.answerCacheEnabled()
+            ? new SemanticAnswerCache(RAGConfig.answerCacheMaxEntries(), RAGConfig.answerCacheThreshold(),
+                    RAGConfig.answerCacheTtlSeconds() * 1000L)
+            : null;
     
     public RAGService(EmbeddingStore<TextSegment> embeddingStore, 
                      EmbeddingModel embeddingModel, 
                      ChatLanguageModel chatLanguageModel) {
+        this(embeddingStore, embeddingModel, chatLanguageModel, null);
+    }
+    
+    public RAGService(EmbeddingStore<TextSegment> embeddingStore, 
+                     EmbeddingModel embeddingModel, 
+                     ChatLanguageModel chatLanguageModel,
+                     StreamingChatLanguageModel streamingChatLanguageModel) {
+        this(embeddingStore, embeddingModel, chatLanguageModel, streamingChatLanguageModel, null);
+    }
+    
+    // With a lexical index, vector hits are fused with BM25 hits (see rag.retrieval.mode)
+    public RAGService(EmbeddingStore<TextSegment> embeddingStore, 
+                     EmbeddingModel embeddingModel, 
+                     ChatLanguageModel chatLanguageModel,
+                     StreamingChatLanguageModel streamingChatLanguageModel,
+                     LexicalIndex lexicalIndex) {
         this.embeddingStore = embeddingStore;
         this.embeddingModel = embeddingModel;
         this.chatLanguageModel = chatLanguageModel;
+        this.streamingChatLanguageModel = streamingChatLanguageModel;
+        this.lexicalIndex = "vector".equals(RAGConfig.retrievalMode()) ? null : lexicalIndex;
     }
     
     public String answer(String userQuery) {
+        return ask(userQuery).text();
+    }
+    
+    // Same as answer(), but also returns the retrieved segments and the time spent in each stage
+    public Answer ask(String userQuery) {
+        return ask(userQuery, SearchScope.ALL);
+    }
+    
+    // Only segments in the scope are searched and can reach the prompt
+    public Answer ask(String userQuery, SearchScope scope) {
+        return ask(userQuery, scope, Deadline.NONE);
+    }
+    
+    // Gives up once the deadline ends: the answer then reports timedOut() and the stage it
+    // reached is counted in rag_requests_dropped_total
+    public Answer ask(String userQuery, SearchScope scope, Deadline deadline) {
+        long start = System.nanoTime();
+        QUERIES.increment();
+        IN_FLIGHT.incrementAndGet();
+        Answer result = new Answer();
         try {
-            // Generate embedding for the query
-            var queryEmbedding = embeddingModel.embed(userQuery).content();
-            
-            // Search for relevant content - Fixed for 0.26.1
-            List<EmbeddingMatch<TextSegment>> searchResults = embeddingStore.findRelevant(queryEmbedding, 3);
-            
-            // Build context from retrieved segments
-            StringBuilder context = new StringBuilder();
-            for (EmbeddingMatch<TextSegment> match : searchResults) {
-                context.append(match.embedded().text()).append("\n\n");
+            generate(userQuery, retrieve(userQuery, scope, deadline), result, deadline);
+        } catch (Exception e) {
+            failed(result, e);
+        } finally {
+            IN_FLIGHT.decrementAndGet();
+            result.totalNanos = System.nanoTime() - start;
+            TOTAL_TIME.recordNanos(result.totalNanos);
+        }
+        return result;
+    }
+    
+    public List<Answer> answerAll(List<String> queries) {
+        return answerAll(queries, SearchScope.ALL, null);
+    }
+    
+    public List<Answer> answerAll(List<String> queries, BiConsumer<Integer, Answer> listener) {
+        return answerAll(queries, SearchScope.ALL, listener);
+    }
+    
+    public List<Answer> answerAll(List<String> queries, SearchScope scope, BiConsumer<Integer, Answer> listener) {
+        return answerAll(queries, scope, Deadline.NONE, listener);
+    }
+    
+    // Answers many questions at once. Query embeddings that are not cached are computed in a
+    // single embedAll call, searches run rag.batch.searchConcurrency at a time and generation
+    // rag.batch.generateConcurrency at a time. The listener, if given, is called from worker
+    // threads as each answer completes; the returned list is in input order. Every query is
+    // searched within the same scope, and the whole batch shares one deadline.
+    public List<Answer> answerAll(List<String> queries, SearchScope scope, Deadline deadline,
+                                  BiConsumer<Integer, Answer> listener) {
+        int count = queries.size();
+        if (count == 0) {
+            return new ArrayList<>();
+        }
+        long start = System.nanoTime();
+        Answer[] answers = new Answer[count];
+        QUERIES.add(count);
+        IN_FLIGHT.addAndGet(count);
+        
+        List<String> keys = new ArrayList<>(count);
+        for (String query : queries) {
+            keys.add(normalize(query));
+        }
+        // Lexical searches are cheap and run first; queries they answer confidently are not embedded
+        LexicalIndex.Result[] lexical = new LexicalIndex.Result[count];
+        boolean[] lexicalOnly = new boolean[count];
+        List<String> toEmbed = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            lexical[i] = searchLexical(keys.get(i), scope);
+            lexicalOnly[i] = lexicalSuffices(lexical[i]);
+            if (!lexicalOnly[i]) {
+                toEmbed.add(keys.get(i));
             }
+        }
+        Map<String, Embedding> embeddings;
+        long embedStart = System.nanoTime();
+        RuntimeException embedFailure = null;
+        try {
+            embeddings = toEmbed.isEmpty() ? new HashMap<>() : deadline.call("embed", () -> embedQueries(toEmbed));
+        } catch (RuntimeException e) {
+            embeddings = new HashMap<>();
+            embedFailure = e;
+        }
+        long embedNanos = System.nanoTime() - embedStart;
+        EMBED_TIME.recordNanos(embedNanos);
+        
+        ExecutorService searchers = batchPool("batch-search", Math.min(count, RAGConfig.batchSearchConcurrency()));
+        ExecutorService generators = batchPool("batch-generate", Math.min(count, RAGConfig.batchGenerateConcurrency()));
+        try {
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[count];
+            for (int i = 0; i < count; i++) {
+                int index = i;
+                String key = keys.get(i);
+                Embedding embedding = embeddings.get(key);
+                RuntimeException failure = embedFailure;
+                Answer result = new Answer();
+                futures[i] = CompletableFuture
+                        .supplyAsync(() -> {
+                            if (lexicalOnly[index]) {
+                                return new Retrieval("lexical", null, lexical[index].matches(), 0, lexical[index].searchNanos());
+                            }
+                            if (embedding == null) {
+                                throw failure != null ? failure : new IllegalStateException("No embedding returned");
+                            }
+                            return search(key, scope, embedding, embedNanos, lexical[index], deadline);
+                        }, searchers)
+                        .thenAcceptAsync(retrieval -> generate(queries.get(index), retrieval, result, deadline), generators)
+                        .handle((ignored, error) -> {
+                            if (error != null) {
+                                failed(result, error instanceof CompletionException && error.getCause() != null
+                                        ? error.getCause() : error);
+                            }
+                            IN_FLIGHT.decrementAndGet();
+                            result.totalNanos = System.nanoTime() - start;
+                            TOTAL_TIME.recordNanos(result.totalNanos);
+                            answers[index] = result;
+                            if (listener != null) {
+                                listener.accept(index, result);
+                            }
+                            return null;
+                        });
+            }
+            CompletableFuture.allOf(futures).join();
+        } finally {
+            searchers.shutdownNow();
+            generators.shutdownNow();
+        }
+        return Arrays.asList(answers);
+    }
+    
+    // Fills in the answer from the answer cache or the chat model
+    private void generate(String userQuery, Retrieval retrieval, Answer result, Deadline deadline) {
+        result.matches = retrieval.matches;
+        result.retrieval = retrieval.mode;
+        result.embedNanos = retrieval.embedNanos;
+        result.searchNanos = retrieval.searchNanos;
+        
+        // A paraphrase of a recent question over the same segments reuses its answer
+        String cached = cachedAnswer(retrieval);
+        if (cached != null) {
+            result.text = cached;
+            result.cached = true;
+            return;
+        }
+        
+        deadline.check("prompt");
+        long promptStart = System.nanoTime();
+        String prompt = buildPrompt(userQuery, retrieval.matches, result);
+        result.promptNanos = System.nanoTime() - promptStart;
+        long generateStart = System.nanoTime();
+        String answer = deadline.call("generate", () -> chatLanguageModel.generate(prompt));
+        result.generateNanos = System.nanoTime() - generateStart;
+        GENERATE_TIME.recordNanos(result.generateNanos);
+        cacheAnswer(retrieval, answer);
+        result.text = answer;
+    }
+    
+    // Dropped queries are counted by Deadline, not as errors
+    private static void failed(Answer result, Throwable error) {
+        if (error instanceof Deadline.ExceededException) {
+            result.timedOut = true;
+        } else {
+            ERRORS.increment();
+        }
+        result.text = "Error processing query: " + error.getMessage();
+        result.failed = true;
+    }
+    
+    private static ExecutorService batchPool(String name, int threads) {
+        return Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    // Pushes tokens to the handler as the model produces them. Without a streaming
+    // model the whole answer is delivered as a single token.
+    public void answerStreaming(String userQuery, StreamingResponseHandler<AiMessage> handler) {
+        answerStreaming(userQuery, SearchScope.ALL, handler);
+    }
+    
+    public void answerStreaming(String userQuery, SearchScope scope, StreamingResponseHandler<AiMessage> handler) {
+        answerStreaming(userQuery, scope, Deadline.NONE, handler);
+    }
+    
+    // When the deadline ends mid-stream the handler gets onError and no further tokens
+    public void answerStreaming(String userQuery, SearchScope scope, Deadline deadline,
+                                StreamingResponseHandler<AiMessage> handler) {
+        long start = System.nanoTime();
+        QUERIES.increment();
+        IN_FLIGHT.incrementAndGet();
+        Retrieval retrieval;
+        String cached;
+        String prompt = null;
+        try {
+            retrieval = retrieve(userQuery, scope, deadline);
+            cached = cachedAnswer(retrieval);
+            if (cached == null) {
+                deadline.check("prompt");
+                prompt = buildPrompt(userQuery, retrieval.matches, null);
+            }
+        } catch (Exception e) {
+            fail(start, e);
+            handler.onError(e);
+            return;
+        }
+        
+        if (cached != null) {
+            finish(start);
+            handler.onNext(cached);
+            handler.onComplete(Response.from(AiMessage.from(cached)));
+            return;
+        }
+        
+        long generateStart = System.nanoTime();
+        String finalPrompt = prompt;
+        if (streamingChatLanguageModel == null) {
+            String answer;
+            try {
+                answer = deadline.call("generate", () -> chatLanguageModel.generate(finalPrompt));
+                GENERATE_TIME.recordSince(generateStart);
+                cacheAnswer(retrieval, answer);
+            } catch (Exception e) {
+                fail(start, e);
+                handler.onError(e);
+                return;
+            }
+            finish(start);
+            handler.onNext(answer);
+            handler.onComplete(Response.from(AiMessage.from(answer)));
+            return;
+        }
+        
+        // The generation cannot be stopped once sent, so on the deadline the handler is
+        // released and the rest of the stream is discarded
+        AtomicBoolean done = new AtomicBoolean();
+        Runnable abandon = () -> {
+            if (done.compareAndSet(false, true)) {
+                Deadline.ExceededException error = deadline.exceeded("generate");
+                fail(start, error);
+                handler.onError(error);
+            }
+        };
+        StreamingResponseHandler<AiMessage> streaming = new StreamingResponseHandler<AiMessage>() {
+            private boolean first = true;
             
-            // Generate response using chat model
-            String prompt = String.format(
-                "Based on the following context, answer the question: %s\n\nContext:\n%s",
-                userQuery, context.toString()
-            );
+            @Override
+            public void onNext(String token) {
+                if (done.get()) {
+                    return;
+                }
+                if (first) {
+                    first = false;
+                    FIRST_TOKEN_TIME.recordSince(generateStart);
+                }
+                handler.onNext(token);
+            }
             
-            return chatLanguageModel.generate(prompt);
+            @Override
+            public void onComplete(Response<AiMessage> response) {
+                GENERATE_TIME.recordSince(generateStart);
+                if (response != null && response.content() != null) {
+                    cacheAnswer(retrieval, response.content().text());
+                }
+                if (done.compareAndSet(false, true)) {
+                    deadline.removeListener(abandon);
+                    finish(start);
+                    handler.onComplete(response);
+                }
+            }
             
-        } catch (Exception e) {
-            return "Error processing query: " + e.getMessage();
+            @Override
+            public void onError(Throwable error) {
+                if (done.compareAndSet(false, true)) {
+                    deadline.removeListener(abandon);
+                    fail(start, error);
+                    handler.onError(error);
+                }
+            }
+        };
+        try {
+            // Waits for a model slot end with the deadline; tokens then arrive on Ollama's threads
+            deadline.call("generate", () -> {
+                streamingChatLanguageModel.generate(finalPrompt, streaming);
+                return null;
+            });
+            deadline.onEnd(abandon);
+        } catch (RuntimeException e) {
+            if (done.compareAndSet(false, true)) {
+                fail(start, e);
+                handler.onError(e);
+            }
+        }
+    }
+    
+    private void finish(long start) {
+        IN_FLIGHT.decrementAndGet();
+        TOTAL_TIME.recordSince(start);
+    }
+    
+    private void fail(long start, Throwable error) {
+        if (!(error instanceof Deadline.ExceededException)) {
+            ERRORS.increment();
+        }
+        finish(start);
+    }
+    
+    // Called when re-ingestion deletes segments, so answers built from them are not served again
+    public void invalidateSegments(Collection<String> removedIds) {
+        if (answerCache != null) {
+            answerCache.invalidateSegments(removedIds);
+        }
+    }
+    
+    public String cacheStats() {
+        String answers = answerCache == null ? "null" : String.format(Locale.ROOT,
+                "{\"size\":%d,\"hits\":%d,\"misses\":%d,\"hitRate\":%.3f,\"evictions\":%d,\"invalidations\":%d}",
+                answerCache.size(), answerCache.hits(), answerCache.misses(), answerCache.hitRate(),
+                answerCache.evictions(), answerCache.invalidations());
+        return String.format(Locale.ROOT, "{\"queryEmbeddingCache\":{\"size\":%d,\"hits\":%d,\"misses\":%d,\"hitRate\":%.3f,\"evictions\":%d},"
+                        + "\"coalesced\":{\"embeddings\":%d,\"searches\":%d},\"answerCache\":%s}",
+                queryEmbeddingCache.size(), queryEmbeddingCache.hits(), queryEmbeddingCache.misses(),
+                queryEmbeddingCache.hitRate(), queryEmbeddingCache.evictions(),
+                embeddingFlights.coalesced(), searchFlights.coalesced(), answers);
+    }
+    
+    private Retrieval retrieve(String userQuery, SearchScope scope, Deadline deadline) {
+        String key = normalize(userQuery);
+        LexicalIndex.Result lexical = searchLexical(key, scope);
+        if (lexicalSuffices(lexical)) {
+            return new Retrieval("lexical", null, lexical.matches(), 0, lexical.searchNanos());
+        }
+        
+        // Generate embedding for the query
+        long embedStart = System.nanoTime();
+        Embedding queryEmbedding = shared(deadline, "embed", () -> embedQuery(key));
+        long embedNanos = System.nanoTime() - embedStart;
+        EMBED_TIME.recordNanos(embedNanos);
+        
+        return search(key, scope, queryEmbedding, embedNanos, lexical, deadline);
+    }
+    
+    private Retrieval search(String key, SearchScope scope, Embedding queryEmbedding, long embedNanos,
+                             LexicalIndex.Result lexical, Deadline deadline) {
+        // Search for relevant content - Fixed for 0.26.1
+        long searchStart = System.nanoTime();
+        List<EmbeddingMatch<TextSegment>> searchResults;
+        if (scope.isAll()) {
+            searchResults = deadline.inline("search",
+                    () -> searchFlights.execute(key, () -> embeddingStore.findRelevant(queryEmbedding, candidates)));
+        } else {
+            // Only identical questions over the same scope share a search
+            SCOPED.increment();
+            searchResults = deadline.inline("search", () -> searchFlights.execute(key + '\u0000' + scope,
+                    () -> ScopedSearcher.search(embeddingStore, queryEmbedding, candidates, 0, scope)));
+        }
+        long searchNanos = System.nanoTime() - searchStart;
+        SEARCH_TIME.recordNanos(searchNanos);
+        
+        if (lexical != null) {
+            // Segments ranked high by either search come first; exact terms and identifiers
+            // that embeddings blur still reach the prompt
+            searchResults = RankFusion.reciprocalRank(candidates, rrfK, searchResults, lexical.matches());
+            searchNanos += lexical.searchNanos();
+        }
+        return new Retrieval(lexical == null ? "vector" : "hybrid", queryEmbedding, searchResults, embedNanos, searchNanos);
+    }
+    
+    // Null without a lexical index
+    private LexicalIndex.Result searchLexical(String key, SearchScope scope) {
+        if (lexicalIndex == null) {
+            return null;
+        }
+        LexicalIndex.Result result = lexicalIndex.search(key, candidates, scope);
+        LEXICAL_TIME.recordNanos(result.searchNanos());
+        return result;
+    }
+    
+    // In auto mode, a confident lexical hit is used alone and the query is never embedded
+    private boolean lexicalSuffices(LexicalIndex.Result lexical) {
+        if (!lexicalShortcut || lexical == null || lexical.matches().isEmpty() || lexical.confidence() < lexicalConfidence) {
+            return false;
+        }
+        LEXICAL_ONLY.increment();
+        return true;
+    }
+    
+    String buildPrompt(String userQuery, List<EmbeddingMatch<TextSegment>> searchResults) {
+        return buildPrompt(userQuery, searchResults, null);
+    }
+    
+    // Records the prompt's estimated token count on the answer, if one is given
+    private String buildPrompt(String userQuery, List<EmbeddingMatch<TextSegment>> searchResults, Answer result) {
+        long start = System.nanoTime();
+        // Overlapping segments are merged, near-duplicates dropped and the rest cut to the token budget
+        ContextBuilder.Context context = contextBuilder.build(searchResults);
+        
+        String prompt = String.format(
+            "Based on the following context, answer the question: %s\n\nContext:\n%s",
+            userQuery, context.text()
+        );
+        int tokens = ContextBuilder.estimateTokens(prompt);
+        PROMPTS.increment();
+        PROMPT_TOKENS.add(tokens);
+        if (result != null) {
+            result.promptTokens = tokens;
+            result.contextSegments = context.segments();
+        }
+        PROMPT_TIME.recordSince(start);
+        return prompt;
+    }
+    
+    // Lexical-only retrievals have no embedding to match paraphrases against and bypass the cache
+    private String cachedAnswer(Retrieval retrieval) {
+        String cached = answerCache == null || retrieval.embedding == null ? null : answerCache.lookup(retrieval.embedding.vector(), retrieval.segmentIds());
+        if (cached != null) {
+            ANSWER_CACHE_HITS.increment();
+        }
+        return cached;
+    }
+    
+    private void cacheAnswer(Retrieval retrieval, String answer) {
+        if (answerCache != null && retrieval.embedding != null && answer != null && !answer.isBlank()) {
+            answerCache.put(retrieval.embedding.vector(), retrieval.segmentIds(), answer);
+        }
+    }
+    
+    private Embedding embedQuery(String key) {
+        Embedding cached = queryEmbeddingCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        return embeddingFlights.execute(key, () -> {
+            Embedding embedding = embeddingModel.embed(key).content();
+            queryEmbeddingCache.put(key, embedding);
+            return embedding;
+        });
+    }
+    
+    // Coalesced embeddings fail for everyone when the request running them is dropped;
+    // requests that still have time run them again themselves
+    private static <T> T shared(Deadline deadline, String stage, Supplier<T> work) {
+        try {
+            return deadline.call(stage, work);
+        } catch (Deadline.ExceededException e) {
+            if (deadline.expired()) {
+                throw e;
+            }
+            return deadline.call(stage, work);
+        }
+    }
+    
+    // Cached embeddings are reused; the rest are computed with one embedAll call
+    private Map<String, Embedding> embedQueries(List<String> keys) {
+        Map<String, Embedding> embeddings = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        for (String key : keys) {
+            Embedding cached = queryEmbeddingCache.get(key);
+            if (cached != null) {
+                embeddings.put(key, cached);
+            } else {
+                missing.add(key);
+            }
+        }
+        if (!missing.isEmpty()) {
+            List<TextSegment> segments = new ArrayList<>(missing.size());
+            for (String key : missing) {
+                segments.add(TextSegment.from(key));
+            }
+            List<Embedding> computed = embeddingModel.embedAll(segments).content();
+            int i = 0;
+            for (String key : missing) {
+                Embedding embedding = computed.get(i++);
+                queryEmbeddingCache.put(key, embedding);
+                embeddings.put(key, embedding);
+            }
+        }
+        return embeddings;
+    }
+    
+    // Case and whitespace differences do not change the cache key
+    static String normalize(String query) {
+        return query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+    
+    // Result of ask(); stages that did not run (e.g. generation on a cache hit) report 0
+    public static class Answer {
+        String text;
+        boolean failed;
+        boolean timedOut;
+        boolean cached;
+        String retrieval;
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+        long embedNanos;
+        long searchNanos;
+        long promptNanos;
+        long generateNanos;
+        long totalNanos;
+        int promptTokens;
+        int contextSegments;
+        
+        public String text() {
+            return text;
+        }
+        
+        public boolean failed() {
+            return failed;
+        }
+        
+        // Dropped because the deadline passed or the request was cancelled; failed() is true too
+        public boolean timedOut() {
+            return timedOut;
+        }
+        
+        public boolean cached() {
+            return cached;
+        }
+        
+        public List<EmbeddingMatch<TextSegment>> matches() {
+            return matches;
+        }
+        
+        // "vector", "hybrid" or "lexical"; null if retrieval failed
+        public String retrieval() {
+            return retrieval;
+        }
+        
+        public long embedNanos() {
+            return embedNanos;
+        }
+        
+        public long searchNanos() {
+            return searchNanos;
+        }
+        
+        public long promptNanos() {
+            return promptNanos;
+        }
+        
+        public long generateNanos() {
+            return generateNanos;
+        }
+        
+        public long totalNanos() {
+            return totalNanos;
+        }
+        
+        // Estimated tokens in the prompt; 0 if no prompt was built
+        public int promptTokens() {
+            return promptTokens;
+        }
+        
+        // Retrieved segments whose text made it into the prompt
+        public int contextSegments() {
+            return contextSegments;
+        }
+    }
+    
+    private static class Retrieval {
+        final String mode;
+        final Embedding embedding;
+        final List<EmbeddingMatch<TextSegment>> matches;
+        final long embedNanos;
+        final long searchNanos;
+        
+        Retrieval(String mode, Embedding embedding, List<EmbeddingMatch<TextSegment>> matches, long embedNanos, long searchNanos) {
+            this.mode = mode;
+            this.embedding = embedding;
+            this.matches = matches;
+            this.embedNanos = embedNanos;
+            this.searchNanos = searchNanos;
+        }
+        
+        List<String> segmentIds() {
+            List<String> ids = new ArrayList<>(matches.size());
+            for (EmbeddingMatch<TextSegment> match : matches) {
+                ids.add(match.embeddingId());
+            }
+            return ids;
         }
     }
-}
\ No newline at end of file
+}
@@ -3,25 +3,56 @@ package com.rag.project;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.message.AiMessage;
 import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.StreamingResponseHandler;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.model.ollama.OllamaChatModel;
-import dev.langchain4j.model.ollama.OllamaEmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
-import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class RAGWebServer {
     
-    private RAGService ragService;
+    private static final String REQUEST_METRIC = "rag_http_request_seconds";
+    private static final String REQUEST_HELP = "Request latency from arrival to the last byte, including lane queueing";
+    private static final LatencyHistogram ASK_TIME = Metrics.histogram(REQUEST_METRIC, REQUEST_HELP, "endpoint", "/ask");
+    private static final LatencyHistogram STREAM_TIME = Metrics.histogram(REQUEST_METRIC, REQUEST_HELP, "endpoint", "/ask/stream");
+    private static final LatencyHistogram BATCH_TIME = Metrics.histogram(REQUEST_METRIC, REQUEST_HELP, "endpoint", "/ask/batch");
+    private static final LatencyHistogram QUEUE_WAIT = Metrics.histogram("rag_ask_queue_wait_seconds",
+            "Time a request waited for an /ask lane worker");
+    
+    // Set by the startup thread; /ask answers 503 until the service exists
+    private volatile RAGService ragService;
+    private volatile OllamaBackendPool ollama;
+    private volatile EmbeddingStore<TextSegment> embeddingStore;
+    private volatile Embedding probeEmbedding;
+    private volatile ModelScheduler scheduler;
+    private final Readiness readiness = new Readiness();
+    private final AtomicBoolean warmingUp = new AtomicBoolean();
     private HttpServer server;
+    private RequestLane askLane;
+    private ExecutorService controlExecutor;
+    // Runs initialization, model warm-up and the periodic readiness checks
+    private ScheduledExecutorService startupExecutor;
     
     public static void main(String[] args) {
         new RAGWebServer().start();
@@ -29,26 +60,50 @@ public class RAGWebServer {
     
     public void start() {
         try {
-            // Initialize RAG system
-            initializeRAG();
-            
-            // Start web server
+            // Bind first; the RAG system is initialized in the background and
+            // /health/ready reports when it can serve queries
+            int port = RAGConfig.serverPort();
+            server = HttpServer.create(new InetSocketAddress(port), RAGConfig.serverBacklog());
 
-            server = HttpServer.create(new InetSocketAddress(8081), 0);
+            // /ask runs on its own bounded lane so slow generations never block /health or the home page
+            askLane = RequestLane.create("ask", RAGConfig.serverExecutor(), RAGConfig.askWorkers(), RAGConfig.askQueueLimit());
+            Metrics.gauge("rag_ask_active", "Requests running on the /ask lane", "gauge", askLane::active);
+            Metrics.gauge("rag_ask_queued", "Requests waiting for an /ask lane worker", "gauge", askLane::queued);
+            Metrics.gauge("rag_ask_rejected_total", "Requests rejected with 429 because the /ask lane was full", "counter", askLane::rejected);
+            Metrics.gauge("rag_ask_workers", "Size of the /ask lane", "gauge", askLane::workers);
+            controlExecutor = Executors.newFixedThreadPool(RAGConfig.controlThreads(), runnable -> {
+                Thread thread = new Thread(runnable, "http-control");
+                thread.setDaemon(true);
+                return thread;
+            });
 
             server.createContext("/", new HomeHandler());
             server.createContext("/ask", new QueryHandler());
+            server.createContext("/ask/stream", new StreamHandler());
+            server.createContext("/ask/batch", new BatchHandler());
             server.createContext("/health", new HealthHandler());
-            server.setExecutor(null);
+            server.createContext("/health/live", new LiveHandler());
+            server.createContext("/health/ready", new ReadyHandler());
+            server.createContext("/metrics", new MetricsHandler());
+            server.setExecutor(controlExecutor);
             
             server.start();
 
-            System.out.println("🌐 RAG Web Server started at http://localhost:8081");
+            System.out.println("🌐 RAG Web Server started at http://localhost:" + port);
+            System.out.println("   /ask lane: " + askLane.workers() + " workers, queue limit " + askLane.queueLimit()
+                    + " (" + RAGConfig.serverExecutor() + " threads)");
 
             System.out.println("📋 Endpoints:");
             System.out.println("  - GET  / : Home page");
             System.out.println("  - POST /ask : Ask questions (JSON: {\"query\":\"your question\"})");
+            System.out.println("  - POST /ask/stream : Ask questions, answer streamed as Server-Sent Events");
+            System.out.println("  - POST /ask/batch : Ask many questions (JSON: {\"queries\":[...]}), optionally as NDJSON");
             System.out.println("  - GET  /health : Health check");
+            System.out.println("  - GET  /health/live : Liveness probe");
+            System.out.println("  - GET  /health/ready : Readiness probe (503 until models, store and documents are ready)");
+            System.out.println("  - GET  /metrics : Prometheus metrics");
+            
+            initializeInBackground();
             
         } catch (Exception e) {
             System.err.println("Failed to start server: " + e.getMessage());
@@ -56,39 +111,188 @@ public class RAGWebServer {
         }
     }
     
+    public void stop() {
+        if (startupExecutor != null) {
+            startupExecutor.shutdownNow();
+        }
+        if (server != null) {
+            server.stop(1);
+        }
+        if (askLane != null) {
+            askLane.close();
+        }
+        if (controlExecutor != null) {
+            controlExecutor.shutdownNow();
+        }
+        if (scheduler != null) {
+            scheduler.close();
+        }
+    }
+    
+    private void initializeInBackground() {
+        readiness.register("ollama");
+        readiness.register("models");
+        readiness.register("vectorStore");
+        readiness.register("documents");
+        Metrics.gauge("rag_ready", "1 while every readiness check passes", "gauge", () -> readiness.ready() ? 1 : 0);
+        
+        startupExecutor = Executors.newScheduledThreadPool(3, runnable -> {
+            Thread thread = new Thread(runnable, "rag-startup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        startupExecutor.execute(this::initializeRAG);
+        int interval = RAGConfig.readinessIntervalMillis();
+        startupExecutor.scheduleWithFixedDelay(this::checkReadiness, interval, interval, TimeUnit.MILLISECONDS);
+    }
+    
     private void initializeRAG() {
         System.out.println("🚀 Initializing RAG system...");
-        
-
-        String ollamaHost = "http://localhost:11434";
-        
-        EmbeddingModel embeddingModel = OllamaEmbeddingModel.builder()
-                .baseUrl(ollamaHost)
-                .modelName("nomic-embed-text:latest")
-
-                .timeout(Duration.ofMinutes(3))
-                .build();
-        
-        ChatLanguageModel chatModel = OllamaChatModel.builder()
-                .baseUrl(ollamaHost)
-
-                .modelName("llama3.2:latest")
-
-                .timeout(Duration.ofMinutes(3))
-                .build();
-        
-        EmbeddingStore<TextSegment> embeddingStore = MilvusConfig.createMilvusEmbeddingStore();
-        
-        // Load documents
-        DocumentLoader loader = new DocumentLoader(embeddingModel, embeddingStore);
         try {
-            loader.ingestDocument();
-        } catch (IOException e) {
+            // Embedding, chat and /ask/stream calls are spread over every rag.ollama.baseUrls server
+            OllamaBackendPool ollama = OllamaBackendPool.fromConfig("nomic-embed-text:latest", "llama3.2:latest");
+            System.out.println("Ollama backends: " + ollama.describe());
+            this.ollama = ollama;
+            checkOllama(ollama);
+            // Queries and ingestion share the backends; queries go first and ingestion
+            // backs off while query latency is above rag.scheduler.latencyTargetMs
+            ModelScheduler scheduler = ModelScheduler.fromConfig();
+            System.out.println("Model scheduler: " + scheduler.describe());
+            this.scheduler = scheduler;
+            
+            // Models load while the vector store connects and documents are ingested
+            if (RAGConfig.serverWarmUp()) {
+                startupExecutor.execute(this::warmUp);
+            } else {
+                readiness.up("models", "warm-up disabled");
+            }
+            
+            EmbeddingStore<TextSegment> embeddingStore = openEmbeddingStore();
+            if (embeddingStore == null) {
+                return;
+            }
+            this.embeddingStore = embeddingStore;
+            // The BM25 index fills as documents are ingested (rag.retrieval.mode)
+            LexicalIndex lexicalIndex = LexicalIndex.fromConfig(embeddingStore);
+            ragService = new RAGService(embeddingStore,
+                    scheduler.embeddingModel(ollama, ModelScheduler.Priority.INTERACTIVE),
+                    scheduler.chatModel(ollama, ModelScheduler.Priority.INTERACTIVE),
+                    scheduler.streamingChatModel(ollama, ModelScheduler.Priority.INTERACTIVE),
+                    lexicalIndex);
+            System.out.println("✅ Accepting questions");
+            
+            if (!RAGConfig.readyAfterIngestion()) {
+                readiness.up("documents", "ingesting in the background");
+            }
+            ingestDocuments(scheduler.embeddingModel(ollama, ModelScheduler.Priority.BACKGROUND), embeddingStore, lexicalIndex);
+        } catch (RuntimeException e) {
+            System.err.println("Failed to initialize RAG system: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+    
+    // Milvus may start after the server does, so keep trying until the store opens
+    private EmbeddingStore<TextSegment> openEmbeddingStore() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                EmbeddingStore<TextSegment> store = VectorStoreConfig.createEmbeddingStore();
+                readiness.up("vectorStore", VectorStoreConfig.describe());
+                return store;
+            } catch (Exception e) {
+                readiness.down("vectorStore", "Cannot open " + VectorStoreConfig.describe() + ": " + e.getMessage());
+            }
+            try {
+                Thread.sleep(RAGConfig.startupRetryMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return null;
+    }
+    
+    private void ingestDocuments(EmbeddingModel embeddingModel, EmbeddingStore<TextSegment> embeddingStore,
+                                 LexicalIndex lexicalIndex) {
+        // Chunks already embedded on a previous run are read from the on-disk cache
+        EmbeddingModel ingestionEmbeddingModel = CachingEmbeddingModel.wrap(embeddingModel, "nomic-embed-text:latest");
+        DocumentLoader loader = new DocumentLoader(ingestionEmbeddingModel, embeddingStore, VectorStoreConfig.createEmbeddingRemover(embeddingStore));
+        try {
+            // Cached answers built from re-ingested chunks must not be served again
+            loader.onChunksRemoved(ragService::invalidateSegments);
+            if (lexicalIndex != null) {
+                loader.indexLexically(lexicalIndex);
+            }
+            long start = System.nanoTime();
+            loader.ingestDocuments();
+            readiness.up("documents", String.format(Locale.ROOT, "ingested in %.1f s", (System.nanoTime() - start) / 1e9));
+            if (RAGConfig.watchDocuments()) {
+                loader.watchDocuments();
+            }
+        } catch (IOException | RuntimeException e) {
             System.err.println("Failed to load documents: " + e.getMessage());
+            readiness.down("documents", e.getMessage());
+        }
+    }
+    
+    // Also retried by checkReadiness() while it keeps failing
+    private void warmUp() {
+        OllamaBackendPool ollama = this.ollama;
+        if (ollama == null || !warmingUp.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            int warmed = ollama.warmUp();
+            if (warmed == 0) {
+                readiness.down("models", "Warm-up failed on every Ollama backend");
+                return;
+            }
+            readiness.up("models", String.format(Locale.ROOT, "warmed up on %d of %d backends in %.1f s",
+                    warmed, ollama.backendCount(), (System.nanoTime() - start) / 1e9));
+        } catch (RuntimeException e) {
+            readiness.down("models", "Warm-up failed: " + e.getMessage());
+        } finally {
+            warmingUp.set(false);
+        }
+    }
+    
+    private void checkOllama(OllamaBackendPool ollama) {
+        int available = ollama.availableBackends();
+        if (available > 0) {
+            readiness.up("ollama", available + " of " + ollama.backendCount() + " backends in rotation");
+        } else {
+            readiness.down("ollama", "No Ollama backend in rotation");
+        }
+    }
+    
+    // Runs every rag.server.readinessIntervalMs once startup has begun: Ollama availability
+    // comes from the pool's own health checks, the vector store is probed with a one-result search
+    private void checkReadiness() {
+        try {
+            OllamaBackendPool ollama = this.ollama;
+            if (ollama != null) {
+                checkOllama(ollama);
+            }
+            if (readiness.status("models") == Readiness.Status.DOWN) {
+                startupExecutor.execute(this::warmUp);
+            }
+            EmbeddingStore<TextSegment> store = embeddingStore;
+            Embedding probe = probeEmbedding;
+            if (store != null && probe == null && ollama != null && readiness.status("models") == Readiness.Status.UP) {
+                probe = ollama.embed("readiness probe").content();
+                probeEmbedding = probe;
+            }
+            if (store != null && probe != null) {
+                try {
+                    store.findRelevant(probe, 1);
+                    readiness.up("vectorStore", VectorStoreConfig.describe());
+                } catch (RuntimeException e) {
+                    readiness.down("vectorStore", "Search failed: " + e.getMessage());
+                }
+            }
+        } catch (RuntimeException e) {
+            // An exception would cancel the schedule
+            System.err.println("Readiness check failed: " + e.getMessage());
         }
-        
-        ragService = new RAGService(embeddingStore, embeddingModel, chatModel);
-        System.out.println("✅ RAG system ready!");
     }
     
     class HomeHandler implements HttpHandler {
@@ -132,18 +336,48 @@ public class RAGWebServer {
 "if (!query) return;" +
 "const chat = document.getElementById('chat');" +
 "chat.innerHTML += '<div class=\"chat-message user\"><strong>You:</strong> ' + query + '</div>';" +
+"const message = document.createElement('div');" +
+"message.className = 'chat-message ai';" +
+"message.innerHTML = '<strong>AI:</strong> ';" +
+"const answer = document.createElement('span');" +
+"message.appendChild(answer);" +
+"chat.appendChild(message);" +
+"input.value = '';" +
 "try {" +
-"const response = await fetch('/ask', {" +
+"const response = await fetch('/ask/stream', {" +
 "method: 'POST'," +
 "headers: { 'Content-Type': 'application/json' }," +
 "body: JSON.stringify({ query: query })" +
 "});" +
-"const result = await response.json();" +
-"chat.innerHTML += '<div class=\"chat-message ai\"><strong>AI:</strong> ' + result.answer + '</div>';" +
+"if (!response.ok) { const result = await response.json(); throw new Error(result.error); }" +
+"const reader = response.body.getReader();" +
+"const decoder = new TextDecoder();" +
+"let buffer = '';" +
+"while (true) {" +
+"const { done, value } = await reader.read();" +
+"if (done) break;" +
+"buffer += decoder.decode(value, { stream: true });" +
+"let boundary;" +
+"while ((boundary = buffer.indexOf('\\n\\n')) >= 0) {" +
+"const event = buffer.slice(0, boundary);" +
+"buffer = buffer.slice(boundary + 2);" +
+"let type = 'message', data = '';" +
+"event.split('\\n').forEach(function(line) {" +
+"if (line.startsWith('event: ')) type = line.slice(7);" +
+"else if (line.startsWith('data: ')) data += line.slice(6);" +
+"});" +
+"if (type === 'token') answer.textContent += JSON.parse(data);" +
+"else if (type === 'error') throw new Error(JSON.parse(data));" +
+"}" +
+"chat.scrollTop = chat.scrollHeight;" +
+"}" +
 "} catch (error) {" +
-"chat.innerHTML += '<div class=\"chat-message ai\"><strong>Error:</strong> ' + error.message + '</div>';" +
+"const failure = document.createElement('div');" +
+"failure.className = 'chat-message ai';" +
+"failure.innerHTML = '<strong>Error:</strong> ';" +
+"failure.appendChild(document.createTextNode(error.message));" +
+"chat.appendChild(failure);" +
 "}" +
-"input.value = '';" +
 "chat.scrollTop = chat.scrollHeight;" +
 "}" +
 "document.getElementById('queryInput').addEventListener('keypress', function(e) {" +
@@ -170,67 +404,547 @@ public class RAGWebServer {
                 sendError(exchange, 405, "Method not allowed");
                 return;
             }
+            if (rejectWhileStarting(exchange)) {
+                return;
+            }
             
+            // Hand off to the /ask lane; the exchange is completed on the worker thread
+            long received = System.nanoTime();
+            if (!askLane.trySubmit(() -> process(exchange, received))) {
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf(RAGConfig.retryAfterSeconds()));
+                sendError(exchange, 429, "Too many requests, try again later");
+            }
+        }
+        
+        private void process(HttpExchange exchange, long received) {
+            QUEUE_WAIT.recordSince(received);
+            Deadline deadline = Deadline.NONE;
             try {
-                String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
-                
-                String query = extractQuery(body);
+                AskRequest request = AskRequest.read(exchange.getRequestBody());
                 
-                if (query == null || query.isEmpty()) {
+                if (request.query == null || request.query.isBlank()) {
                     sendError(exchange, 400, "Missing query parameter");
                     return;
                 }
                 
-                String answer = ragService.answer(query);
-                
-                String response = String.format("{\"answer\":\"%s\"}", 
-                    answer.replace("\"", "\\\"").replace("\n", "\\n"));
+                // Nothing is written before the answer, since its status is not known yet, so a
+                // client that leaves is not noticed; only the deadline ends the work
+                deadline = deadline(exchange, request, received);
+                deadline.check("queue");
+                RAGService.Answer answer = ragService.ask(request.query, request.scope, deadline);
+                if (answer.timedOut()) {
+                    sendError(exchange, 504, answer.text());
+                    return;
+                }
                 
+                // Length 0 selects chunked encoding; the answer is encoded straight into the response
                 exchange.getResponseHeaders().set("Content-Type", "application/json");
                 exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
-                exchange.sendResponseHeaders(200, response.getBytes(StandardCharsets.UTF_8).length);
+                exchange.sendResponseHeaders(200, 0);
                 
                 try (OutputStream os = exchange.getResponseBody()) {
-                    os.write(response.getBytes(StandardCharsets.UTF_8));
+                    JsonWriter json = JsonWriter.acquire(os);
+                    try {
+                        writeAnswer(json, answer, request);
+                    } finally {
+                        json.release();
+                    }
                 }
                 
+            } catch (JsonReader.MalformedJsonException e) {
+                try {
+                    sendError(exchange, 400, "Invalid JSON: " + e.getMessage());
+                } catch (IOException ignored) {
+                    // Client already gone
+                }
+            } catch (Deadline.ExceededException e) {
+                try {
+                    sendError(exchange, 504, e.getMessage());
+                } catch (IOException ignored) {
+                    // Client already gone
+                }
             } catch (Exception e) {
-                sendError(exchange, 500, "Internal server error: " + e.getMessage());
+                try {
+                    sendError(exchange, 500, "Internal server error: " + e.getMessage());
+                } catch (IOException ignored) {
+                    // Client already gone
+                } finally {
+                    exchange.close();
+                }
+            } finally {
+                deadline.close();
+                ASK_TIME.recordSince(received);
             }
         }
-        
-        private String extractQuery(String json) {
-            int start = json.indexOf("\"query\":");
-            if (start == -1) return null;
-            
-            start = json.indexOf("\"", start + 8);
-            if (start == -1) return null;
+    }
+    
+    class StreamHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "Method not allowed");
+                return;
+            }
+            if (rejectWhileStarting(exchange)) {
+                return;
+            }
             
-            int end = json.indexOf("\"", start + 1);
-            if (end == -1) return null;
+            long received = System.nanoTime();
+            if (!askLane.trySubmit(() -> process(exchange, received))) {
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf(RAGConfig.retryAfterSeconds()));
+                sendError(exchange, 429, "Too many requests, try again later");
+            }
+        }
+        
+        private void process(HttpExchange exchange, long received) {
+            QUEUE_WAIT.recordSince(received);
+            Deadline deadline = Deadline.NONE;
+            try {
+                AskRequest request;
+                try {
+                    request = AskRequest.read(exchange.getRequestBody());
+                } catch (JsonReader.MalformedJsonException e) {
+                    sendError(exchange, 400, "Invalid JSON: " + e.getMessage());
+                    return;
+                }
+                
+                String query = request.query;
+                if (query == null || query.isBlank()) {
+                    sendError(exchange, 400, "Missing query parameter");
+                    return;
+                }
+                
+                deadline = deadline(exchange, request, received);
+                try {
+                    deadline.check("queue");
+                } catch (Deadline.ExceededException e) {
+                    sendError(exchange, 504, e.getMessage());
+                    return;
+                }
+                
+                // Length 0 selects chunked encoding, so each event reaches the client as it is written
+                exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=UTF-8");
+                exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+                exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+                exchange.sendResponseHeaders(200, 0);
+                
+                // A failed write means the client left; the rest of the work is dropped
+                Deadline requestDeadline = deadline;
+                SseWriter events = new SseWriter(exchange.getResponseBody(),
+                        () -> requestDeadline.cancel("client disconnected"));
+                events.comment("connected");
+                
+                CompletableFuture<Void> finished = new CompletableFuture<>();
+                ragService.answerStreaming(query, request.scope, deadline, new StreamingResponseHandler<AiMessage>() {
+                    @Override
+                    public void onNext(String token) {
+                        events.send("token", token);
+                    }
+                    
+                    @Override
+                    public void onComplete(Response<AiMessage> response) {
+                        events.send("done", "");
+                        finished.complete(null);
+                    }
+                    
+                    @Override
+                    public void onError(Throwable error) {
+                        events.send("error", "Error processing query: " + error.getMessage());
+                        finished.complete(null);
+                    }
+                });
+                
+                // Keep the lane slot until generation ends so the concurrency limit stays honest
+                finished.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                try {
+                    sendError(exchange, 500, "Internal server error: " + e.getMessage());
+                } catch (IOException | RuntimeException ignored) {
+                    // Headers already sent or client gone
+                }
+            } finally {
+                deadline.close();
+                exchange.close();
+                STREAM_TIME.recordSince(received);
+            }
+        }
+    }
+    
+    class BatchHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "Method not allowed");
+                return;
+            }
+            if (rejectWhileStarting(exchange)) {
+                return;
+            }
             
-            return json.substring(start + 1, end);
+            // A whole batch takes one lane slot; its own concurrency is set by rag.batch.*
+            long received = System.nanoTime();
+            if (!askLane.trySubmit(() -> process(exchange, received))) {
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf(RAGConfig.retryAfterSeconds()));
+                sendError(exchange, 429, "Too many requests, try again later");
+            }
+        }
+        
+        private void process(HttpExchange exchange, long received) {
+            QUEUE_WAIT.recordSince(received);
+            Deadline deadline = Deadline.NONE;
+            try {
+                AskRequest request;
+                try {
+                    request = AskRequest.read(exchange.getRequestBody());
+                } catch (JsonReader.MalformedJsonException e) {
+                    sendError(exchange, 400, "Invalid JSON: " + e.getMessage());
+                    return;
+                }
+                String invalid = request.batchError();
+                if (invalid != null) {
+                    sendError(exchange, 400, invalid);
+                    return;
+                }
+                
+                deadline = deadline(exchange, request, received);
+                try {
+                    deadline.check("queue");
+                } catch (Deadline.ExceededException e) {
+                    sendError(exchange, 504, e.getMessage());
+                    return;
+                }
+                
+                exchange.getResponseHeaders().set("Content-Type", request.stream ? "application/x-ndjson" : "application/json");
+                exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+                exchange.sendResponseHeaders(200, 0);
+                
+                try (OutputStream os = exchange.getResponseBody()) {
+                    JsonWriter json = JsonWriter.acquire(os);
+                    try {
+                        if (request.stream) {
+                            streamAnswers(json, request, deadline);
+                        } else {
+                            List<RAGService.Answer> answers = ragService.answerAll(request.queries, request.scope, deadline, null);
+                            json.beginObject().name("answers").beginArray();
+                            for (int i = 0; i < answers.size(); i++) {
+                                writeBatchAnswer(json, i, answers.get(i), request);
+                            }
+                            json.endArray().endObject();
+                        }
+                    } finally {
+                        json.release();
+                    }
+                }
+            } catch (Exception e) {
+                try {
+                    sendError(exchange, 500, "Internal server error: " + e.getMessage());
+                } catch (IOException | RuntimeException ignored) {
+                    // Headers already sent or client gone
+                }
+            } finally {
+                deadline.close();
+                exchange.close();
+                BATCH_TIME.recordSince(received);
+            }
+        }
+        
+        // One line per answer, in completion order; lines carry the query index
+        private void streamAnswers(JsonWriter json, AskRequest request, Deadline deadline) {
+            boolean[] disconnected = {false};
+            ragService.answerAll(request.queries, request.scope, deadline, (index, answer) -> {
+                synchronized (json) {
+                    if (disconnected[0]) {
+                        return;
+                    }
+                    try {
+                        writeBatchAnswer(json, index, answer, request);
+                        json.newline();
+                    } catch (IOException e) {
+                        // Nobody is left to read the remaining answers, so they are dropped
+                        disconnected[0] = true;
+                        deadline.cancel("client disconnected");
+                    }
+                }
+            });
         }
     }
     
-    class HealthHandler implements HttpHandler {
+    class MetricsHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
-            String response = "{\"status\":\"healthy\",\"service\":\"RAG System\"}";
-            exchange.getResponseHeaders().set("Content-Type", "application/json");
-            exchange.sendResponseHeaders(200, response.length());
+            byte[] response = Metrics.render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, response.length);
             try (OutputStream os = exchange.getResponseBody()) {
-                os.write(response.getBytes());
+                os.write(response);
+            }
+        }
+    }
+    
+    // Writes Server-Sent Events, flushing after each one. Data is JSON-encoded so tokens
+    // containing newlines stay within a single event. Writes after the client disconnects
+    // are dropped; the first failed write runs `onDisconnect`.
+    static class SseWriter {
+        private final OutputStream out;
+        private final Runnable onDisconnect;
+        private volatile boolean closed;
+        
+        SseWriter(OutputStream out, Runnable onDisconnect) {
+            this.out = out;
+            this.onDisconnect = onDisconnect;
+        }
+        
+        synchronized void send(String event, String data) {
+            write("event: " + event + "\ndata: " + JsonWriter.quote(data) + "\n\n");
+        }
+        
+        synchronized void comment(String text) {
+            write(": " + text + "\n\n");
+        }
+        
+        private void write(String text) {
+            if (closed) {
+                return;
             }
+            try {
+                out.write(text.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            } catch (IOException e) {
+                closed = true;
+                onDisconnect.run();
+            }
+        }
+    }
+    
+    class HealthHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            RAGService service = ragService;
+            ModelScheduler modelScheduler = scheduler;
+            sendJson(exchange, 200, "{\"status\":\"" + (readiness.ready() ? "healthy" : "not ready")
+                    + "\",\"service\":\"RAG System\",\"readiness\":" + readiness.toJson()
+                    + ",\"cache\":" + (service == null ? "null" : service.cacheStats())
+                    + ",\"scheduler\":" + (modelScheduler == null ? "null" : modelScheduler.stats()) + "}");
+        }
+    }
+    
+    // The process is up and serving HTTP; nothing else is checked, so a restart never
+    // follows a dependency outage
+    class LiveHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            sendJson(exchange, 200, "{\"status\":\"live\"}");
+        }
+    }
+    
+    class ReadyHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            sendJson(exchange, readiness.ready() ? 200 : 503, readiness.toJson());
+        }
+    }
+    
+    private static void sendJson(HttpExchange exchange, int code, String json) throws IOException {
+        byte[] response = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, response.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(response);
+        }
+    }
+    
+    // Body of /ask and /ask/stream: {"query": "...", "scope": {...}, "timeoutMs": 30000, "sources": false, "timings": false};
+    // /ask/batch takes "queries": [...] and "stream" instead of "query". Unknown fields are ignored.
+    // "scope" maps metadata keys to a value or an array of values, e.g.
+    // {"collection": ["manuals", "faq"], "tenant": "acme"}; only matching segments are searched.
+    static class AskRequest {
+        String query;
+        List<String> queries;
+        SearchScope scope = SearchScope.ALL;
+        boolean stream;
+        boolean sources;
+        boolean timings;
+        // 0 when not given
+        long timeoutMs;
+        
+        String batchError() {
+            if (queries == null || queries.isEmpty()) {
+                return "Missing queries parameter";
+            }
+            if (queries.size() > RAGConfig.batchMaxQueries()) {
+                return "Too many queries: " + queries.size() + " (limit " + RAGConfig.batchMaxQueries() + ")";
+            }
+            for (int i = 0; i < queries.size(); i++) {
+                if (queries.get(i) == null || queries.get(i).isBlank()) {
+                    return "Query " + i + " is empty";
+                }
+            }
+            return null;
+        }
+        
+        static AskRequest read(InputStream body) throws IOException {
+            AskRequest request = new AskRequest();
+            JsonReader json = JsonReader.acquire(body, RAGConfig.maxRequestBytes());
+            try {
+                json.beginObject();
+                while (json.hasNext()) {
+                    switch (json.nextName()) {
+                        case "query":
+                            request.query = json.nextString();
+                            break;
+                        case "queries":
+                            request.queries = new ArrayList<>();
+                            json.beginArray();
+                            while (json.hasNext()) {
+                                request.queries.add(json.nextString());
+                            }
+                            json.endArray();
+                            break;
+                        case "scope":
+                            request.scope = readScope(json);
+                            break;
+                        case "stream":
+                            request.stream = json.nextBoolean();
+                            break;
+                        case "sources":
+                            request.sources = json.nextBoolean();
+                            break;
+                        case "timings":
+                            request.timings = json.nextBoolean();
+                            break;
+                        case "timeoutMs":
+                            request.timeoutMs = Math.max(0, json.nextInt());
+                            break;
+                        default:
+                            json.skipValue();
+                    }
+                }
+                json.endObject();
+            } finally {
+                json.release();
+            }
+            return request;
+        }
+        
+        private static SearchScope readScope(JsonReader json) throws IOException {
+            Map<String, List<String>> filters = new LinkedHashMap<>();
+            json.beginObject();
+            while (json.hasNext()) {
+                List<String> values = new ArrayList<>();
+                filters.put(json.nextName(), values);
+                if (json.peek() == JsonReader.Token.BEGIN_ARRAY) {
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        values.add(json.nextString());
+                    }
+                    json.endArray();
+                } else {
+                    values.add(json.nextString());
+                }
+            }
+            json.endObject();
+            return SearchScope.of(filters);
+        }
+    }
+    
+    // {"answer": "...", "cached": false, "sources": [...], "timings": {...}}; sources and
+    // timings only when the request asked for them
+    static void writeAnswer(JsonWriter json, RAGService.Answer answer, AskRequest request) throws IOException {
+        json.beginObject();
+        writeAnswerFields(json, answer, request);
+        json.endObject();
+    }
+    
+    // Batch entries also carry the index of their query, since streamed ones arrive out of order
+    static void writeBatchAnswer(JsonWriter json, int index, RAGService.Answer answer, AskRequest request) throws IOException {
+        json.beginObject();
+        json.name("index").value(index);
+        writeAnswerFields(json, answer, request);
+        json.endObject();
+    }
+    
+    private static void writeAnswerFields(JsonWriter json, RAGService.Answer answer, AskRequest request) throws IOException {
+        json.name("answer").value(answer.text());
+        if (answer.failed()) {
+            json.name("failed").value(true);
+        }
+        if (answer.timedOut()) {
+            json.name("timedOut").value(true);
+        }
+        json.name("cached").value(answer.cached());
+        if (request.sources) {
+            json.name("sources").beginArray();
+            for (EmbeddingMatch<TextSegment> match : answer.matches()) {
+                TextSegment segment = match.embedded();
+                json.beginObject();
+                json.name("id").value(match.embeddingId());
+                json.name("score").value(match.score() == null ? Double.NaN : match.score());
+                json.name("source").value(segment == null ? null : segment.metadata(DirectoryIngestor.SOURCE_METADATA));
+                json.name("collection").value(segment == null ? null : segment.metadata(DirectoryIngestor.COLLECTION_METADATA));
+                json.name("text").value(segment == null ? null : segment.text());
+                json.endObject();
+            }
+            json.endArray();
+        }
+        if (request.timings) {
+            json.name("timings").beginObject();
+            json.name("embedMs").value(millis(answer.embedNanos()));
+            json.name("searchMs").value(millis(answer.searchNanos()));
+            json.name("promptMs").value(millis(answer.promptNanos()));
+            json.name("generateMs").value(millis(answer.generateNanos()));
+            json.name("totalMs").value(millis(answer.totalNanos()));
+            json.name("retrieval").value(answer.retrieval());
+            json.name("promptTokens").value(answer.promptTokens());
+            json.name("contextSegments").value(answer.contextSegments());
+            json.endObject();
+        }
+    }
+    
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1_000.0) / 1_000.0;
+    }
+    
+    // Counted from arrival, so time spent queued for the lane is part of it. "timeoutMs" in the
+    // body wins over the X-Request-Timeout-Ms header; without either, rag.server.requestTimeoutMs
+    // applies. Requested values are capped by rag.server.maxRequestTimeoutMs.
+    private static Deadline deadline(HttpExchange exchange, AskRequest request, long received) {
+        long millis = request.timeoutMs;
+        String header = exchange.getRequestHeaders().getFirst("X-Request-Timeout-Ms");
+        if (millis <= 0 && header != null) {
+            try {
+                millis = Math.max(0, Long.parseLong(header.trim()));
+            } catch (NumberFormatException ignored) {
+                // Unparsable values fall back to the default
+            }
+        }
+        long max = RAGConfig.maxRequestTimeoutMillis();
+        if (millis <= 0) {
+            millis = RAGConfig.requestTimeoutMillis();
+        } else if (max > 0) {
+            millis = Math.min(millis, max);
+        }
+        return Deadline.after(received, millis);
+    }
+    
+    // Questions that arrive before the vector store has opened
+    private boolean rejectWhileStarting(HttpExchange exchange) throws IOException {
+        if (ragService != null) {
+            return false;
         }
+        exchange.getResponseHeaders().set("Retry-After", String.valueOf(RAGConfig.retryAfterSeconds()));
+        sendError(exchange, 503, "Still starting up, try again later");
+        return true;
     }
     
     private void sendError(HttpExchange exchange, int code, String message) throws IOException {
-        String response = String.format("{\"error\":\"%s\"}", message);
+        Metrics.counter("rag_http_errors_total", "Error responses by status code", "code", String.valueOf(code)).increment();
+        byte[] response = ("{\"error\":" + JsonWriter.quote(message) + "}").getBytes(StandardCharsets.UTF_8);
         exchange.getResponseHeaders().set("Content-Type", "application/json");
-        exchange.sendResponseHeaders(code, response.length());
+        exchange.sendResponseHeaders(code, response.length);
         try (OutputStream os = exchange.getResponseBody()) {
-            os.write(response.getBytes());
+            os.write(response);
         }
     }
 }
\ No newline at end of file
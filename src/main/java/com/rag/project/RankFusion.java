@@ -0,0 +1,44 @@
+package com.rag.project;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Reciprocal rank fusion: a segment scores 1 / (k + rank) in every ranking it appears in, and
+// the sums decide the fused order. Only ranks are used, so BM25 and cosine scores never have
+// to be put on a common scale. A larger k flattens the advantage of the top few ranks.
+public class RankFusion {
+
+    private RankFusion() {
+    }
+
+    // Matches are keyed by embedding ID; the segment is taken from the first ranking that has it
+    @SafeVarargs
+    public static List<EmbeddingMatch<TextSegment>> reciprocalRank(int maxResults, int k,
+                                                                   List<EmbeddingMatch<TextSegment>>... rankings) {
+        Map<String, double[]> scores = new LinkedHashMap<>();
+        Map<String, TextSegment> segments = new LinkedHashMap<>();
+        for (List<EmbeddingMatch<TextSegment>> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                EmbeddingMatch<TextSegment> match = ranking.get(rank);
+                scores.computeIfAbsent(match.embeddingId(), id -> new double[1])[0] += 1.0 / (k + rank + 1);
+                segments.putIfAbsent(match.embeddingId(), match.embedded());
+            }
+        }
+        List<Map.Entry<String, double[]>> ranked = new ArrayList<>(scores.entrySet());
+        // Stable, so ties keep the order of the first ranking
+        ranked.sort((a, b) -> Double.compare(b.getValue()[0], a.getValue()[0]));
+        List<EmbeddingMatch<TextSegment>> fused = new ArrayList<>(Math.min(maxResults, ranked.size()));
+        for (Map.Entry<String, double[]> entry : ranked) {
+            if (fused.size() == maxResults) {
+                break;
+            }
+            fused.add(new EmbeddingMatch<>(entry.getValue()[0], entry.getKey(), null, segments.get(entry.getKey())));
+        }
+        return fused;
+    }
+}
@@ -0,0 +1,87 @@
+package com.rag.project;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Named checks behind /health/ready. A check is pending until it first reports, then up or
+// down with a short detail; the server is ready once every registered check is up.
+public class Readiness {
+
+    public enum Status { PENDING, UP, DOWN }
+
+    private final Map<String, Check> checks = new LinkedHashMap<>();
+    private final long created = System.nanoTime();
+    private long readySince = -1;
+
+    public synchronized void register(String name) {
+        checks.putIfAbsent(name, new Check());
+    }
+
+    public void up(String name, String detail) {
+        report(name, Status.UP, detail);
+    }
+
+    public void down(String name, String detail) {
+        report(name, Status.DOWN, detail);
+    }
+
+    private synchronized void report(String name, Status status, String detail) {
+        Check check = checks.computeIfAbsent(name, key -> new Check());
+        // Log transitions only; periodic checks report the same state over and over
+        if (check.status != status) {
+            if (status == Status.DOWN) {
+                System.err.println("⚠️ Not ready: " + name + ": " + detail);
+            } else if (check.status == Status.DOWN) {
+                System.out.println("✅ " + name + " recovered: " + detail);
+            }
+        }
+        check.status = status;
+        check.detail = detail;
+        if (readySince < 0 && ready()) {
+            readySince = System.nanoTime();
+            System.out.printf("✅ RAG system ready after %.1f s%n", (readySince - created) / 1e9);
+        }
+    }
+
+    public synchronized Status status(String name) {
+        Check check = checks.get(name);
+        return check == null ? null : check.status;
+    }
+
+    public synchronized boolean ready() {
+        if (checks.isEmpty()) {
+            return false;
+        }
+        for (Check check : checks.values()) {
+            if (check.status != Status.UP) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // {"ready": false, "checks": {"vectorStore": {"status": "down", "detail": "..."}, ...}}
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder("{\"ready\":").append(ready()).append(",\"checks\":{");
+        boolean first = true;
+        for (Map.Entry<String, Check> entry : checks.entrySet()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            Check check = entry.getValue();
+            json.append(JsonWriter.quote(entry.getKey()))
+                    .append(":{\"status\":\"").append(check.status.name().toLowerCase()).append('"');
+            if (check.detail != null) {
+                json.append(",\"detail\":").append(JsonWriter.quote(check.detail));
+            }
+            json.append('}');
+        }
+        return json.append("}}").toString();
+    }
+
+    private static class Check {
+        Status status = Status.PENDING;
+        String detail;
+    }
+}
@@ -0,0 +1,353 @@
+package com.rag.project;
+
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import io.milvus.param.IndexType;
+import io.milvus.param.collection.DropCollectionParam;
+import io.milvus.param.collection.FlushParam;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+// Measures recall@k and search latency of each Milvus index type across its search parameter
+// (nprobe for IVF indexes, ef for HNSW) against an exact scan done here, on the chunks of the
+// documents directory. The chunks are copied into a scratch collection, so the live one is
+// never re-indexed. Queries are the lines of --questions, or else a sample of the chunks.
+// Build parameters come from rag.milvus.* as usual, e.g. -Drag.milvus.hnswM=32.
+//
+//   mvn compile exec:java -Dexec.mainClass="com.rag.project.RecallSweep"
+//   mvn compile exec:java -Dexec.mainClass="com.rag.project.RecallSweep" -Dexec.args="--index-types HNSW --ef 16,32,64 --k 5"
+//   mvn compile exec:java -Dexec.mainClass="com.rag.project.RecallSweep" -Dexec.args="--questions questions.txt"
+public class RecallSweep {
+
+    private static final int[] NPROBE = {1, 2, 4, 8, 16, 32, 64, 128, 256};
+    private static final int[] EF = {16, 32, 64, 128, 256, 512};
+
+    public static void main(String[] args) throws IOException {
+        Options options = Options.parse(args);
+        int dimension = RAGConfig.embeddingDimension();
+        EmbeddingModel embeddingModel = options.simulated
+                ? new IngestionBenchmark.SimulatedEmbeddingModel(dimension, 0, 0)
+                : CachingEmbeddingModel.wrap(OllamaBackendPool.fromConfig("nomic-embed-text", "llama3.2"), "nomic-embed-text");
+
+        List<TextSegment> chunks = loadChunks(Paths.get(RAGConfig.documentsDir()));
+        System.out.println("📄 Embedding " + chunks.size() + " chunks from " + RAGConfig.documentsDir());
+        List<Embedding> embeddings = embed(embeddingModel, chunks);
+        List<Embedding> queries = options.questions == null
+                ? sample(embeddings, options.queries)
+                : embed(embeddingModel, readQuestions(options.questions));
+
+        long started = System.nanoTime();
+        int[][] truth = exactTopK(embeddings, queries, options.k);
+        System.out.printf("Exact top-%d for %d queries in %.1f s%n", options.k, queries.size(), (System.nanoTime() - started) / 1e9);
+
+        MilvusIndexSettings configured = MilvusIndexSettings.fromConfig();
+        MilvusIndexSettings flat = settings(IndexType.FLAT, configured, dimension);
+        dropCollection(options.collection);
+        MilvusSearchStore store = MilvusConfig.createMilvusEmbeddingStore(options.collection, flat);
+        try {
+            Map<String, Integer> slots = insert(store, embeddings, chunks);
+            MilvusIndexSettings.check(MilvusConfig.client().flush(FlushParam.newBuilder()
+                    .addCollectionName(options.collection)
+                    .build()), "flush");
+
+            System.out.printf("%n%-9s %-28s %-12s %10s %9s %9s %9s%n",
+                    "index", "build", "search", "recall@" + options.k, "p50 ms", "p99 ms", "build s");
+            for (IndexType indexType : options.indexTypes) {
+                MilvusIndexSettings settings = settings(indexType, configured, dimension);
+                long buildStarted = System.nanoTime();
+                settings.apply(MilvusConfig.client(), options.collection);
+                double buildSeconds = (System.nanoTime() - buildStarted) / 1e9;
+
+                for (Map<String, Integer> searchParams : searchSweep(indexType, settings, options)) {
+                    MilvusIndexSettings point = settings.withSearchParams(searchParams);
+                    Result result = measure(store.withSettings(point), slots, queries, truth, options.k);
+                    System.out.printf("%-9s %-28s %-12s %10.4f %9.2f %9.2f %9.1f%n",
+                            indexType, params(point.buildParams()), params(searchParams),
+                            result.recall, result.p50Millis, result.p99Millis, buildSeconds);
+                }
+            }
+        } finally {
+            if (!options.keep) {
+                dropCollection(options.collection);
+            }
+        }
+    }
+
+    private static MilvusIndexSettings settings(IndexType indexType, MilvusIndexSettings configured, int dimension) {
+        return new MilvusIndexSettings(indexType, configured.metricType(), configured.consistencyLevel(),
+                MilvusIndexSettings.defaultBuildParams(indexType, dimension),
+                MilvusIndexSettings.defaultSearchParams(indexType));
+    }
+
+    // nprobe up to nlist, or ef from k upwards; FLAT has a single point
+    private static List<Map<String, Integer>> searchSweep(IndexType indexType, MilvusIndexSettings settings, Options options) {
+        List<Map<String, Integer>> points = new ArrayList<>();
+        if (indexType == IndexType.FLAT) {
+            points.add(new LinkedHashMap<>());
+            return points;
+        }
+        String name = indexType == IndexType.HNSW ? "ef" : "nprobe";
+        TreeSet<Integer> values = new TreeSet<>();
+        if (indexType == IndexType.HNSW) {
+            for (int ef : options.ef == null ? EF : options.ef) {
+                values.add(Math.max(ef, options.k));
+            }
+        } else {
+            int nlist = settings.buildParams().get("nlist");
+            for (int nprobe : options.nprobe == null ? NPROBE : options.nprobe) {
+                values.add(Math.min(nprobe, nlist));
+            }
+        }
+        for (int value : values) {
+            Map<String, Integer> point = new LinkedHashMap<>();
+            point.put(name, value);
+            points.add(point);
+        }
+        return points;
+    }
+
+    static Result measure(EmbeddingStore<TextSegment> store, Map<String, Integer> slots,
+                          List<Embedding> queries, int[][] truth, int k) {
+        // Warm up connections and caches before timing
+        for (int i = 0; i < Math.min(20, queries.size()); i++) {
+            store.findRelevant(queries.get(i), k, 0.0);
+        }
+        LatencyHistogram latency = new LatencyHistogram();
+        long hits = 0;
+        long expected = 0;
+        for (int q = 0; q < queries.size(); q++) {
+            long started = System.nanoTime();
+            List<EmbeddingMatch<TextSegment>> matches = store.findRelevant(queries.get(q), k, 0.0);
+            latency.recordSince(started);
+
+            expected += truth[q].length;
+            for (EmbeddingMatch<TextSegment> match : matches) {
+                Integer slot = slots.get(match.embeddingId());
+                for (int exact : truth[q]) {
+                    if (slot != null && slot == exact) {
+                        hits++;
+                        break;
+                    }
+                }
+            }
+        }
+        return new Result(expected == 0 ? 1.0 : hits / (double) expected,
+                latency.quantileSeconds(0.50) * 1000, latency.quantileSeconds(0.99) * 1000);
+    }
+
+    // Indexes of the k vectors with the highest cosine similarity to each query
+    static int[][] exactTopK(List<Embedding> embeddings, List<Embedding> queries, int k) {
+        int dimension = embeddings.get(0).vector().length;
+        float[] vectors = new float[embeddings.size() * dimension];
+        for (int i = 0; i < embeddings.size(); i++) {
+            normalizeInto(embeddings.get(i).vector(), vectors, i * dimension);
+        }
+        float[] query = new float[dimension];
+        int[][] truth = new int[queries.size()][];
+        for (int q = 0; q < queries.size(); q++) {
+            normalizeInto(queries.get(q).vector(), query, 0);
+            HnswIndex.NodeHeap top = new HnswIndex.NodeHeap(k + 1);
+            for (int i = 0; i < embeddings.size(); i++) {
+                float score = HnswIndex.dot(query, 0, vectors, i * dimension, dimension);
+                if (top.size() < k) {
+                    top.push(score, i);
+                } else if (score > top.peekScore()) {
+                    top.pop();
+                    top.push(score, i);
+                }
+            }
+            truth[q] = new int[top.size()];
+            for (int i = truth[q].length - 1; i >= 0; i--) {
+                truth[q][i] = top.pop();
+            }
+        }
+        return truth;
+    }
+
+    private static void normalizeInto(float[] vector, float[] target, int offset) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        for (int i = 0; i < vector.length; i++) {
+            target[offset + i] = norm == 0 ? 0 : (float) (vector[i] / norm);
+        }
+    }
+
+    private static List<TextSegment> loadChunks(Path root) throws IOException {
+        List<TextSegment> chunks = new ArrayList<>();
+        for (Path file : DirectoryIngestor.findFiles(root, RAGConfig.documentGlobs())) {
+            if (StreamingTextSplitter.shouldStream(file)) {
+                Iterator<TextSegment> segments = new StreamingTextSplitter(500, 100).split(root, file);
+                segments.forEachRemaining(chunks::add);
+            } else {
+                chunks.addAll(DocumentSplitters.recursive(500, 100).split(DirectoryIngestor.loadDocument(root, file)));
+            }
+        }
+        if (chunks.isEmpty()) {
+            throw new IOException("No text found under " + root.toAbsolutePath());
+        }
+        return chunks;
+    }
+
+    private static List<TextSegment> readQuestions(Path file) throws IOException {
+        List<TextSegment> questions = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (!line.isBlank()) {
+                questions.add(TextSegment.from(line.trim()));
+            }
+        }
+        if (questions.isEmpty()) {
+            throw new IOException("No questions in " + file);
+        }
+        return questions;
+    }
+
+    private static List<Embedding> embed(EmbeddingModel model, List<TextSegment> segments) {
+        int batchSize = RAGConfig.embedBatchSize();
+        List<Embedding> embeddings = new ArrayList<>(segments.size());
+        for (int from = 0; from < segments.size(); from += batchSize) {
+            embeddings.addAll(model.embedAll(segments.subList(from, Math.min(segments.size(), from + batchSize))).content());
+        }
+        return embeddings;
+    }
+
+    // A fixed seed keeps the query set the same between runs
+    private static List<Embedding> sample(List<Embedding> embeddings, int count) {
+        List<Embedding> shuffled = new ArrayList<>(embeddings);
+        Collections.shuffle(shuffled, new Random(42));
+        return shuffled.subList(0, Math.min(count, shuffled.size()));
+    }
+
+    private static Map<String, Integer> insert(EmbeddingStore<TextSegment> store, List<Embedding> embeddings, List<TextSegment> chunks) {
+        Map<String, Integer> slots = new HashMap<>();
+        int batchSize = RAGConfig.insertBatchSize();
+        for (int from = 0; from < embeddings.size(); from += batchSize) {
+            int to = Math.min(embeddings.size(), from + batchSize);
+            List<String> ids = store.addAll(embeddings.subList(from, to), chunks.subList(from, to));
+            for (int i = 0; i < ids.size(); i++) {
+                slots.put(ids.get(i), from + i);
+            }
+        }
+        return slots;
+    }
+
+    private static void dropCollection(String collection) {
+        // Fails harmlessly when the collection does not exist
+        MilvusConfig.client().dropCollection(DropCollectionParam.newBuilder()
+                .withCollectionName(collection)
+                .build());
+    }
+
+    private static String params(Map<String, Integer> params) {
+        if (params.isEmpty()) {
+            return "-";
+        }
+        StringBuilder text = new StringBuilder();
+        params.forEach((name, value) -> text.append(text.length() == 0 ? "" : " ").append(name).append('=').append(value));
+        return text.toString();
+    }
+
+    static class Result {
+        final double recall;
+        final double p50Millis;
+        final double p99Millis;
+
+        Result(double recall, double p50Millis, double p99Millis) {
+            this.recall = recall;
+            this.p50Millis = p50Millis;
+            this.p99Millis = p99Millis;
+        }
+    }
+
+    static class Options {
+        String collection = RAGConfig.milvusCollection() + "_sweep";
+        List<IndexType> indexTypes = new ArrayList<>(List.of(IndexType.FLAT, IndexType.IVF_FLAT, IndexType.IVF_PQ, IndexType.HNSW));
+        int k = 10;
+        int queries = 200;
+        int[] nprobe;
+        int[] ef;
+        Path questions;
+        boolean simulated;
+        boolean keep;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if ("--simulated".equals(arg)) {
+                    options.simulated = true;
+                    continue;
+                }
+                if ("--keep".equals(arg)) {
+                    options.keep = true;
+                    continue;
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--collection":
+                        options.collection = value;
+                        break;
+                    case "--index-types":
+                        options.indexTypes.clear();
+                        for (String type : value.split(",")) {
+                            options.indexTypes.add(IndexType.valueOf(type.trim().toUpperCase(Locale.ROOT)));
+                        }
+                        break;
+                    case "--k":
+                        options.k = Math.max(1, Integer.parseInt(value));
+                        break;
+                    case "--queries":
+                        options.queries = Math.max(1, Integer.parseInt(value));
+                        break;
+                    case "--nprobe":
+                        options.nprobe = ints(value);
+                        break;
+                    case "--ef":
+                        options.ef = ints(value);
+                        break;
+                    case "--questions":
+                        options.questions = Paths.get(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+            if (options.collection.equals(RAGConfig.milvusCollection())) {
+                throw new IllegalArgumentException("--collection must not be the live collection " + options.collection);
+            }
+            return options;
+        }
+
+        private static int[] ints(String value) {
+            String[] parts = value.split(",");
+            int[] values = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                values[i] = Math.max(1, Integer.parseInt(parts[i].trim()));
+            }
+            return values;
+        }
+    }
+}
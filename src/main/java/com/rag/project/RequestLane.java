@@ -0,0 +1,130 @@
+package com.rag.project;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// A bounded execution lane: at most `workers` tasks run at once and at most `queueLimit`
+// more wait for a slot. Anything beyond that is rejected immediately so the caller can
+// shed load (e.g. answer 429) instead of building an unbounded backlog.
+public class RequestLane implements AutoCloseable {
+
+    private final String name;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int workers;
+    private final int queueLimit;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger rejected = new AtomicInteger();
+
+    private RequestLane(String name, ExecutorService executor, int workers, int queueLimit) {
+        this.name = name;
+        this.executor = executor;
+        this.permits = new Semaphore(workers, true);
+        this.workers = workers;
+        this.queueLimit = queueLimit;
+    }
+
+    public static RequestLane create(String name, String mode, int workers, int queueLimit) {
+        workers = Math.max(1, workers);
+        queueLimit = Math.max(0, queueLimit);
+        if ("virtual".equalsIgnoreCase(mode)) {
+            ExecutorService virtualThreads = newVirtualThreadExecutor();
+            if (virtualThreads != null) {
+                return new RequestLane(name, virtualThreads, workers, queueLimit);
+            }
+            System.err.println("Virtual threads need JDK 21+, using a platform thread pool for " + name);
+        }
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        return new RequestLane(name, pool, workers, queueLimit);
+    }
+
+    // Returns false when the lane is saturated; the task is not run in that case
+    public boolean trySubmit(Runnable task) {
+        if (pending.incrementAndGet() > workers + queueLimit) {
+            pending.decrementAndGet();
+            rejected.incrementAndGet();
+            return false;
+        }
+        try {
+            executor.execute(() -> run(task));
+            return true;
+        } catch (RuntimeException e) {
+            pending.decrementAndGet();
+            rejected.incrementAndGet();
+            return false;
+        }
+    }
+
+    private void run(Runnable task) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            pending.decrementAndGet();
+            Thread.currentThread().interrupt();
+            return;
+        }
+        active.incrementAndGet();
+        try {
+            task.run();
+        } finally {
+            active.decrementAndGet();
+            permits.release();
+            pending.decrementAndGet();
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int active() {
+        return active.get();
+    }
+
+    public int queued() {
+        return Math.max(0, pending.get() - active.get());
+    }
+
+    public int rejected() {
+        return rejected.get();
+    }
+
+    public int workers() {
+        return workers;
+    }
+
+    public int queueLimit() {
+        return queueLimit;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // The project targets Java 11, so Executors.newVirtualThreadPerTaskExecutor is looked up reflectively
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.rag.project;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Searches only the segments in a SearchScope. EmbeddingStore has no filtered search in
+// langchain4j 0.26.1, so each backend provides its own implementation.
+public interface ScopedSearcher {
+
+    List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore,
+                                                   SearchScope scope);
+
+    // Stores that cannot filter are asked for more matches, which are then filtered here
+    static List<EmbeddingMatch<TextSegment>> search(EmbeddingStore<TextSegment> store, Embedding referenceEmbedding,
+                                                    int maxResults, double minScore, SearchScope scope) {
+        if (scope.isAll()) {
+            return store.findRelevant(referenceEmbedding, maxResults, minScore);
+        }
+        if (store instanceof ScopedSearcher) {
+            return ((ScopedSearcher) store).findRelevant(referenceEmbedding, maxResults, minScore, scope);
+        }
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+        for (EmbeddingMatch<TextSegment> match : store.findRelevant(referenceEmbedding, maxResults * 4, minScore)) {
+            if (match.embedded() != null && scope.matches(match.embedded().metadata()) && matches.size() < maxResults) {
+                matches.add(match);
+            }
+        }
+        return matches;
+    }
+}
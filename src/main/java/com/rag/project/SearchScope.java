@@ -0,0 +1,85 @@
+package com.rag.project;
+
+import dev.langchain4j.data.document.Metadata;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Restricts a search to segments whose metadata matches: for every key, the segment's value
+// must be one of the listed values. Keys are any segment metadata, usually "collection",
+// "tenant" or "source" (see DirectoryIngestor). The empty scope matches everything.
+public class SearchScope {
+
+    public static final SearchScope ALL = new SearchScope(new TreeMap<>());
+
+    private final Map<String, Set<String>> filters;
+
+    private SearchScope(TreeMap<String, Set<String>> filters) {
+        this.filters = Collections.unmodifiableMap(filters);
+    }
+
+    public static SearchScope of(Map<String, ? extends Collection<String>> filters) {
+        TreeMap<String, Set<String>> copy = new TreeMap<>();
+        for (Map.Entry<String, ? extends Collection<String>> entry : filters.entrySet()) {
+            copy.put(entry.getKey(), Collections.unmodifiableSet(new LinkedHashSet<>(entry.getValue())));
+        }
+        return copy.isEmpty() ? ALL : new SearchScope(copy);
+    }
+
+    public boolean isAll() {
+        return filters.isEmpty();
+    }
+
+    public Map<String, Set<String>> filters() {
+        return filters;
+    }
+
+    // Allowed values of one key, or null if the key is not restricted
+    public Set<String> values(String key) {
+        return filters.get(key);
+    }
+
+    public SearchScope without(String key) {
+        if (!filters.containsKey(key)) {
+            return this;
+        }
+        TreeMap<String, Set<String>> rest = new TreeMap<>(filters);
+        rest.remove(key);
+        return rest.isEmpty() ? ALL : new SearchScope(rest);
+    }
+
+    public boolean matches(Metadata metadata) {
+        return matches(metadata == null ? null : metadata.asMap());
+    }
+
+    // Segments without metadata only match the empty scope
+    public boolean matches(Map<String, String> metadata) {
+        for (Map.Entry<String, Set<String>> filter : filters.entrySet()) {
+            String value = metadata == null ? null : metadata.get(filter.getKey());
+            if (value == null || !filter.getValue().contains(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Stable across equal scopes, so it can be part of a cache or single-flight key
+    @Override
+    public String toString() {
+        return filters.toString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof SearchScope && filters.equals(((SearchScope) other).filters);
+    }
+
+    @Override
+    public int hashCode() {
+        return filters.hashCode();
+    }
+}
@@ -0,0 +1,14 @@
+package com.rag.project;
+
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.Collection;
+import java.util.Map;
+
+// Reads stored segments back by ID. EmbeddingStore has no lookup by ID in langchain4j 0.26.1,
+// so each backend provides its own implementation.
+public interface SegmentLookup {
+
+    // IDs that are not stored, or stored without text, are left out of the result
+    Map<String, TextSegment> findAll(Collection<String> ids);
+}
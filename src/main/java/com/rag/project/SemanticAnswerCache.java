@@ -0,0 +1,205 @@
+package com.rag.project;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Caches generated answers keyed by query embedding. A lookup hits when a stored query is
+// within the cosine threshold of the new one AND retrieval returned the same segments,
+// so a paraphrased question over unchanged context skips generation entirely.
+//
+// Embeddings are kept L2-normalized in one contiguous float[] (capacity x dimension), so a
+// lookup is a tight dot-product scan with no per-entry objects to chase.
+public class SemanticAnswerCache {
+
+    private final int capacity;
+    private final double threshold;
+    private final long ttlNanos;
+
+    private int dimension;
+    private float[] vectors;
+    private final String[] answers;
+    private final Set<String>[] segmentIds;
+    private final long[] lastUsed;
+    private final long[] created;
+    private int size;
+    private long clock;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    public SemanticAnswerCache(int capacity, double threshold, long ttlMillis) {
+        this.capacity = Math.max(1, capacity);
+        this.threshold = threshold;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.answers = new String[this.capacity];
+        this.segmentIds = (Set<String>[]) new Set<?>[this.capacity];
+        this.lastUsed = new long[this.capacity];
+        this.created = new long[this.capacity];
+    }
+
+    public synchronized String lookup(float[] queryEmbedding, Collection<String> retrievedIds) {
+        if (size == 0 || queryEmbedding.length != dimension) {
+            misses.incrementAndGet();
+            return null;
+        }
+        float[] query = normalized(queryEmbedding);
+        Set<String> ids = new HashSet<>(retrievedIds);
+        long now = System.nanoTime();
+
+        int best = -1;
+        double bestScore = threshold;
+        int slot = 0;
+        while (slot < size) {
+            // Expired entries are dropped as the scan reaches them, so they stop taking slots
+            // and scan time; removeSlot moves the last entry here, which is checked next
+            if (ttlNanos > 0 && now - created[slot] > ttlNanos) {
+                removeSlot(slot);
+                evictions.incrementAndGet();
+                continue;
+            }
+            double score = dot(query, slot);
+            if (score >= bestScore && segmentIds[slot].equals(ids)) {
+                best = slot;
+                bestScore = score;
+            }
+            slot++;
+        }
+        if (best < 0) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        lastUsed[best] = ++clock;
+        return answers[best];
+    }
+
+    public synchronized void put(float[] queryEmbedding, Collection<String> retrievedIds, String answer) {
+        if (vectors == null) {
+            dimension = queryEmbedding.length;
+            vectors = new float[capacity * dimension];
+        } else if (queryEmbedding.length != dimension) {
+            return;
+        }
+
+        int slot;
+        if (size < capacity) {
+            slot = size++;
+        } else {
+            slot = leastRecentlyUsed();
+            evictions.incrementAndGet();
+        }
+        System.arraycopy(normalized(queryEmbedding), 0, vectors, slot * dimension, dimension);
+        answers[slot] = answer;
+        segmentIds[slot] = new HashSet<>(retrievedIds);
+        created[slot] = System.nanoTime();
+        lastUsed[slot] = ++clock;
+    }
+
+    // Drops every answer built from any of the given segments, e.g. after re-ingestion removed them
+    public synchronized void invalidateSegments(Collection<String> removedIds) {
+        Set<String> removed = new HashSet<>(removedIds);
+        int slot = 0;
+        while (slot < size) {
+            boolean stale = false;
+            for (String id : segmentIds[slot]) {
+                if (removed.contains(id)) {
+                    stale = true;
+                    break;
+                }
+            }
+            if (stale) {
+                removeSlot(slot);
+                invalidations.incrementAndGet();
+            } else {
+                slot++;
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        for (int slot = 0; slot < size; slot++) {
+            answers[slot] = null;
+            segmentIds[slot] = null;
+        }
+        size = 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    public long invalidations() {
+        return invalidations.get();
+    }
+
+    public double hitRate() {
+        long total = hits() + misses();
+        return total == 0 ? 0.0 : (double) hits() / total;
+    }
+
+    // Moves the last entry into the freed slot so live entries stay contiguous
+    private void removeSlot(int slot) {
+        int last = --size;
+        if (slot != last) {
+            System.arraycopy(vectors, last * dimension, vectors, slot * dimension, dimension);
+            answers[slot] = answers[last];
+            segmentIds[slot] = segmentIds[last];
+            lastUsed[slot] = lastUsed[last];
+            created[slot] = created[last];
+        }
+        answers[last] = null;
+        segmentIds[last] = null;
+    }
+
+    private int leastRecentlyUsed() {
+        int victim = 0;
+        for (int slot = 1; slot < size; slot++) {
+            if (lastUsed[slot] < lastUsed[victim]) {
+                victim = slot;
+            }
+        }
+        return victim;
+    }
+
+    private double dot(float[] query, int slot) {
+        int offset = slot * dimension;
+        double sum = 0;
+        for (int i = 0; i < dimension; i++) {
+            sum += query[i] * vectors[offset + i];
+        }
+        return sum;
+    }
+
+    private static float[] normalized(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        float[] result = new float[vector.length];
+        if (norm == 0) {
+            return result;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = (float) (vector[i] / norm);
+        }
+        return result;
+    }
+}
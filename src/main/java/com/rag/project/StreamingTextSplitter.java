@@ -0,0 +1,244 @@
+package com.rag.project;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Splits a UTF-8 text file into overlapping segments while reading it through memory-mapped
+// windows, so neither the whole text nor the full segment list is ever on the heap; only a
+// small character buffer is. Boundaries follow DocumentSplitters.recursive: a segment ends at
+// the last paragraph break that fits, else the last line break, sentence end or space, and
+// the next one starts with the whole trailing sentences of the previous one that fit in the
+// overlap. Segments are slices of the file rather than re-joined parts, so their text (and
+// chunk hash) can differ slightly from the in-memory splitter's.
+public class StreamingTextSplitter {
+
+    private static final int WINDOW_BYTES = 32 * 1024 * 1024;
+
+    private final int maxSegmentChars;
+    private final int overlapChars;
+
+    public StreamingTextSplitter(int maxSegmentChars, int overlapChars) {
+        if (maxSegmentChars <= 0 || overlapChars < 0 || overlapChars >= maxSegmentChars) {
+            throw new IllegalArgumentException("Invalid segment size " + maxSegmentChars + " / overlap " + overlapChars);
+        }
+        this.maxSegmentChars = maxSegmentChars;
+        this.overlapChars = overlapChars;
+    }
+
+    // Files below rag.ingest.streamingThresholdMb keep going through the regular splitter
+    public static boolean shouldStream(Path file) {
+        try {
+            return Files.size(file) >= RAGConfig.streamingThresholdBytes();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Segments carry the metadata FileSystemDocumentLoader and the splitter would add
+    public Iterator<TextSegment> split(Path root, Path file) {
+        Metadata metadata = new Metadata()
+                .add(Document.FILE_NAME, file.getFileName().toString())
+                .add(Document.ABSOLUTE_DIRECTORY_PATH, file.toAbsolutePath().getParent().toString());
+        return new SegmentIterator(file, DirectoryIngestor.tag(metadata, root, file));
+    }
+
+    private class SegmentIterator implements Iterator<TextSegment> {
+        private final Path file;
+        private final Metadata metadata;
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final char[] text = new char[Math.max(64 * 1024, maxSegmentChars * 4)];
+        private long fileSize = -1;
+        private long windowStart;
+        private MappedByteBuffer window;
+        private boolean eof;
+        // Valid characters are text[start, length); prevEnd is where the last segment ended
+        private int start;
+        private int length;
+        private int prevEnd;
+        private int index;
+        private TextSegment next;
+
+        SegmentIterator(Path file, Metadata metadata) {
+            this.file = file;
+            this.metadata = metadata;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = computeNext();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to read " + file, e);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public TextSegment next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            TextSegment segment = next;
+            next = null;
+            return segment;
+        }
+
+        private TextSegment computeNext() throws IOException {
+            while (true) {
+                while (start < length && Character.isWhitespace(text[start])) {
+                    start++;
+                }
+                // Look one character past a full segment so a boundary right at the limit is seen
+                if (!eof && length - start <= maxSegmentChars) {
+                    fill();
+                    continue;
+                }
+                // The segment must reach past the overlap into at least one new character
+                int content = Math.max(start, prevEnd);
+                while (content < length && Character.isWhitespace(text[content])) {
+                    content++;
+                }
+                if (content >= length && eof) {
+                    return null;
+                }
+                if (content >= start + maxSegmentChars || content >= length) {
+                    start = content;
+                    continue;
+                }
+
+                int end = length - start <= maxSegmentChars
+                        ? length
+                        : findBreak(start, start + maxSegmentChars, content);
+                while (end > start && Character.isWhitespace(text[end - 1])) {
+                    end--;
+                }
+
+                Metadata segmentMetadata = metadata.copy().add("index", String.valueOf(index++));
+                TextSegment segment = TextSegment.from(new String(text, start, end - start), segmentMetadata);
+                prevEnd = end;
+                start = overlapStart(start, end);
+                return segment;
+            }
+        }
+
+        // Coarsest boundary in (minEnd, limit]: paragraph, line, sentence, word, else a hard cut
+        private int findBreak(int from, int limit, int minEnd) {
+            for (int e = limit; e > minEnd; e--) {
+                if (text[e] == '\n' && blankLineBefore(from, e)) {
+                    return e;
+                }
+            }
+            for (int e = limit; e > minEnd; e--) {
+                if (text[e] == '\n') {
+                    return e;
+                }
+            }
+            for (int e = limit; e > minEnd; e--) {
+                if (isSentenceEnd(text[e - 1]) && Character.isWhitespace(text[e])) {
+                    return e;
+                }
+            }
+            for (int e = limit; e > minEnd; e--) {
+                if (Character.isWhitespace(text[e])) {
+                    return e;
+                }
+            }
+            return Character.isHighSurrogate(text[limit - 1]) && limit - 1 > minEnd ? limit - 1 : limit;
+        }
+
+        private boolean blankLineBefore(int from, int newline) {
+            for (int i = newline - 1; i >= from && Character.isWhitespace(text[i]); i--) {
+                if (text[i] == '\n') {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // The earliest sentence start in the last overlapChars of the segment, or its end
+        private int overlapStart(int from, int end) {
+            for (int s = Math.max(from + 1, end - overlapChars); s < end; s++) {
+                if (!Character.isWhitespace(text[s]) && Character.isWhitespace(text[s - 1]) && sentenceStart(from, s)) {
+                    return s;
+                }
+            }
+            return end;
+        }
+
+        private boolean sentenceStart(int from, int s) {
+            int i = s - 1;
+            while (i >= from && Character.isWhitespace(text[i])) {
+                if (text[i] == '\n') {
+                    return true;
+                }
+                i--;
+            }
+            return i >= from && isSentenceEnd(text[i]);
+        }
+
+        // Moves the unread tail to the front of the buffer and decodes more of the file after it
+        private void fill() throws IOException {
+            if (start > 0) {
+                System.arraycopy(text, start, text, 0, length - start);
+                length -= start;
+                prevEnd -= start;
+                start = 0;
+            }
+            if (fileSize < 0) {
+                fileSize = Files.size(file);
+            }
+            while (length < text.length && !eof) {
+                if (window == null) {
+                    window = map(windowStart);
+                }
+                boolean last = windowStart + window.limit() >= fileSize;
+                CharBuffer out = CharBuffer.wrap(text, length, text.length - length);
+                CoderResult result = decoder.decode(window, out, last);
+                if (last && result.isUnderflow()) {
+                    decoder.flush(out);
+                    eof = true;
+                }
+                length = out.position();
+                if (result.isOverflow()) {
+                    return;
+                }
+                if (!eof) {
+                    // A character split across windows is left undecoded and re-read from the next one
+                    windowStart += window.position();
+                    window = null;
+                }
+            }
+        }
+
+        // The channel can be closed straight away; the mapping stays valid until it is collected
+        private MappedByteBuffer map(long position) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_BYTES, fileSize - position));
+            }
+        }
+    }
+
+    private static boolean isSentenceEnd(char c) {
+        return c == '.' || c == '!' || c == '?';
+    }
+}
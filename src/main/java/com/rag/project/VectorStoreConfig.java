@@ -0,0 +1,121 @@
+package com.rag.project;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Picks the vector store backend from rag.store: the Milvus server, the in-process
+// LocalEmbeddingStore, or "memory" (the local store without a file, e.g. for load tests).
+// With rag.partition.key set, each partition gets its own store of that kind.
+public class VectorStoreConfig {
+    
+    public static boolean isLocal() {
+        return "local".equalsIgnoreCase(RAGConfig.vectorStore()) || isMemory();
+    }
+    
+    public static boolean isMemory() {
+        return "memory".equalsIgnoreCase(RAGConfig.vectorStore());
+    }
+    
+    public static String describe() {
+        String partitioned = RAGConfig.partitionKey().isEmpty() ? "" : ", partitioned by " + RAGConfig.partitionKey();
+        if (isMemory()) {
+            return "in-memory vector store" + partitioned;
+        }
+        return (isLocal() ? "local vector store (" + RAGConfig.localStorePath() + ")" : "Milvus") + partitioned;
+    }
+    
+    public static EmbeddingStore<TextSegment> createEmbeddingStore() throws IOException {
+        String partitionKey = RAGConfig.partitionKey();
+        if (!partitionKey.isEmpty()) {
+            return createPartitionedStore(partitionKey);
+        }
+        if (!isLocal()) {
+            return MilvusConfig.createMilvusEmbeddingStore();
+        }
+        if (isMemory()) {
+            return memoryStore();
+        }
+        LocalEmbeddingStore store = LocalEmbeddingStore.fromConfig();
+        System.out.println("Local vector store: " + store.size() + " vectors loaded");
+        closeOnShutdown(store);
+        return store;
+    }
+    
+    // Local partitions are stored next to rag.store.local.path, e.g. local-store-manuals.bin
+    private static PartitionedEmbeddingStore createPartitionedStore(String key) throws IOException {
+        PartitionedEmbeddingStore store;
+        if (!isLocal()) {
+            store = MilvusConfig.createPartitionedEmbeddingStore(key);
+        } else if (isMemory()) {
+            store = new PartitionedEmbeddingStore(key, partition -> {
+                LocalEmbeddingStore part = memoryStore();
+                return new PartitionedEmbeddingStore.Partition(part, part);
+            }, List.of());
+        } else {
+            Path base = Paths.get(RAGConfig.localStorePath()).toAbsolutePath();
+            String fileName = base.getFileName().toString();
+            int dot = fileName.lastIndexOf('.');
+            String stem = dot > 0 ? fileName.substring(0, dot) + "-" : fileName + "-";
+            String extension = dot > 0 ? fileName.substring(dot) : "";
+            List<String> existing = new ArrayList<>();
+            if (Files.isDirectory(base.getParent())) {
+                try (Stream<Path> files = Files.list(base.getParent())) {
+                    files.map(file -> file.getFileName().toString())
+                            .filter(name -> name.startsWith(stem) && name.endsWith(extension)
+                                    && name.length() > stem.length() + extension.length())
+                            .map(name -> name.substring(stem.length(), name.length() - extension.length()))
+                            .filter(name -> name.equals(PartitionedEmbeddingStore.partitionName(name)))
+                            .forEach(existing::add);
+                }
+            }
+            store = new PartitionedEmbeddingStore(key, partition -> {
+                LocalEmbeddingStore part = LocalEmbeddingStore.open(base.resolveSibling(stem + partition + extension),
+                        RAGConfig.embeddingDimension(),
+                        "hnsw".equalsIgnoreCase(RAGConfig.localStoreIndex()),
+                        RAGConfig.localStoreHnswM(),
+                        RAGConfig.localStoreEfConstruction(),
+                        RAGConfig.localStoreEfSearch(),
+                        RAGConfig.localStoreExactThreshold());
+                return new PartitionedEmbeddingStore.Partition(part, part);
+            }, existing);
+            closeOnShutdown(store);
+        }
+        System.out.println("Vector store partitions by " + key + ": " + store.partitionCount() + " found");
+        return store;
+    }
+    
+    private static LocalEmbeddingStore memoryStore() {
+        return new LocalEmbeddingStore(null, RAGConfig.embeddingDimension(),
+                "hnsw".equalsIgnoreCase(RAGConfig.localStoreIndex()),
+                RAGConfig.localStoreHnswM(),
+                RAGConfig.localStoreEfConstruction(),
+                RAGConfig.localStoreEfSearch(),
+                RAGConfig.localStoreExactThreshold());
+    }
+    
+    private static void closeOnShutdown(AutoCloseable store) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                store.close();
+            } catch (Exception e) {
+                System.err.println("Failed to save local vector store: " + e.getMessage());
+            }
+        }));
+    }
+    
+    // The local store deletes its own entries; Milvus needs a separate client
+    public static EmbeddingRemover createEmbeddingRemover(EmbeddingStore<TextSegment> store) {
+        if (store instanceof EmbeddingRemover) {
+            return (EmbeddingRemover) store;
+        }
+        return MilvusConfig.createEmbeddingRemover();
+    }
+}
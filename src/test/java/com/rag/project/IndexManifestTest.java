@@ -0,0 +1,97 @@
+package com.rag.project;
+
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IndexManifestTest {
+
+    @Test
+    void roundTripsEntriesWithAnEmptyFileHash() throws IOException {
+        Path dir = Files.createTempDirectory("manifest-test");
+        Path path = dir.resolve("index.manifest");
+        IndexManifest manifest = IndexManifest.load(path);
+        manifest.put("docs/failed.txt", new IndexManifest.FileEntry("",
+                new ArrayList<>(Arrays.asList(new IndexManifest.ChunkEntry("h1", "id-1")))));
+        manifest.put("docs/tab\tname.txt", new IndexManifest.FileEntry("abc",
+                new ArrayList<>(Arrays.asList(new IndexManifest.ChunkEntry("h2", "id-2"),
+                        new IndexManifest.ChunkEntry("h3", "id-3")))));
+        manifest.addPendingDeletes(Arrays.asList("stale-1", "stale-2"));
+        manifest.save();
+
+        IndexManifest loaded = IndexManifest.load(path);
+        assertEquals(Set.of("docs/failed.txt", "docs/tab\tname.txt"), loaded.sources());
+        assertEquals("", loaded.get("docs/failed.txt").fileHash);
+        assertEquals(List.of("id-1"), loaded.get("docs/failed.txt").ids());
+        assertEquals("abc", loaded.get("docs/tab\tname.txt").fileHash);
+        assertEquals(List.of("id-2", "id-3"), loaded.get("docs/tab\tname.txt").ids());
+        assertEquals(List.of("stale-1", "stale-2"), new ArrayList<>(loaded.pendingDeletes()));
+    }
+
+    @Test
+    void skipsMalformedLines() throws IOException {
+        Path path = Files.createTempDirectory("manifest-test").resolve("index.manifest");
+        Files.write(path, Arrays.asList("F\tkept.txt\tabc", "C\tkept.txt\th1", "F\tshort.txt", "D", "X\tunknown"),
+                StandardCharsets.UTF_8);
+
+        IndexManifest loaded = IndexManifest.load(path);
+        assertEquals(Set.of("kept.txt"), loaded.sources());
+        assertEquals(0, loaded.chunkCount());
+        assertEquals(0, loaded.pendingDeletes().size());
+    }
+
+    @Test
+    void reloadsAfterAFailedIndexPass() throws IOException {
+        Path root = Files.createTempDirectory("manifest-test");
+        Files.write(root.resolve("doc.txt"), "Some text to index.".getBytes(StandardCharsets.UTF_8));
+        Path path = root.resolve("index.manifest");
+        List<String> globs = Collections.singletonList("**/*.txt");
+
+        AtomicBoolean failing = new AtomicBoolean(true);
+        InMemoryEmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
+        EmbeddingModel model = segments -> {
+            if (failing.get()) {
+                throw new IllegalStateException("embedding backend down");
+            }
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < segments.size(); i++) {
+                embeddings.add(Embedding.from(new float[]{1, 0, 0}));
+            }
+            return Response.from(embeddings);
+        };
+        assertThrows(IOException.class, () -> indexer(model, store, IndexManifest.load(path)).sync(root, globs));
+
+        // The failed file is saved with an empty hash, which must load and be planned again
+        IndexManifest loaded = IndexManifest.load(path);
+        assertEquals("", loaded.get("doc.txt").fileHash);
+        failing.set(false);
+        IncrementalIndexer.SyncResult result = indexer(model, store, loaded).sync(root, globs);
+        assertEquals(1, result.insertedChunks());
+        assertFalse(IndexManifest.load(path).get("doc.txt").fileHash.isEmpty());
+    }
+
+    private static IncrementalIndexer indexer(EmbeddingModel model, InMemoryEmbeddingStore<TextSegment> store,
+                                              IndexManifest manifest) {
+        return new IncrementalIndexer(new IngestionPipeline(model, store, 8, 8, 1, 2), null, manifest,
+                () -> DocumentSplitters.recursive(500, 100), new StreamingTextSplitter(500, 100), 1);
+    }
+}
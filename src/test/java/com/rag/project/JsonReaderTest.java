@@ -0,0 +1,195 @@
+package com.rag.project;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonReaderTest {
+
+    private static final long NO_LIMIT = Long.MAX_VALUE;
+
+    @Test
+    void readsEscapedQuotesAndBackslashes() throws IOException {
+        assertEquals("say \"hi\" \\ a/b", query("{\"query\":\"say \\\"hi\\\" \\\\ a\\/b\"}"));
+    }
+
+    @Test
+    void readsControlCharacterEscapes() throws IOException {
+        assertEquals("a\nb\tc\r\b\f\u0001", query("{\"query\":\"a\\nb\\tc\\r\\b\\f\\u0001\"}"));
+    }
+
+    @Test
+    void joinsEscapedSurrogatePairs() throws IOException {
+        String value = query("{\"query\":\"x\\ud83d\\ude00y\"}");
+        assertEquals("x\uD83D\uDE00y", value);
+        assertEquals(0x1F600, value.codePointAt(1));
+    }
+
+    @Test
+    void decodesRawMultiByteCharacters() throws IOException {
+        String text = "caf\u00e9 \u20ac \uD83D\uDE00 \u4e2d\u6587";
+        assertEquals(text, query("{\"query\":\"" + text + "\"}"));
+    }
+
+    // Shifts 2-, 3- and 4-byte characters across the 8 KB buffer boundary one byte at a time
+    @Test
+    void decodesMultiByteCharactersSplitAcrossTheBuffer() throws IOException {
+        String prefix = "{\"query\":\"";
+        for (int padding = 8192 - prefix.length() - 5; padding <= 8192 - prefix.length() + 1; padding++) {
+            String text = "a".repeat(padding) + "\u00e9\u20ac\uD83D\uDE00z";
+            assertEquals(text, query(prefix + text + "\"}"), "padding " + padding);
+        }
+    }
+
+    @Test
+    void decodesWhenTheStreamReturnsOneByteAtATime() throws IOException {
+        String text = "\u00e9\u20ac\uD83D\uDE00 \\\"quoted\\\"";
+        byte[] body = ("{\"query\":\"" + text + "\",\"sources\":true}").getBytes(StandardCharsets.UTF_8);
+        JsonReader json = JsonReader.acquire(new OneByteAtATime(body), NO_LIMIT);
+        try {
+            json.beginObject();
+            assertEquals("query", json.nextName());
+            assertEquals("\u00e9\u20ac\uD83D\uDE00 \"quoted\"", json.nextString());
+            json.hasNext();
+            assertEquals("sources", json.nextName());
+            assertTrue(json.nextBoolean());
+            json.endObject();
+        } finally {
+            json.release();
+        }
+    }
+
+    @Test
+    void replacesMalformedUtf8() throws IOException {
+        byte[] body = {'{', '"', 'q', '"', ':', '"', 'a', (byte) 0xC3, 'b', (byte) 0xFF, '"', '}'};
+        JsonReader json = JsonReader.acquire(new ByteArrayInputStream(body), NO_LIMIT);
+        try {
+            json.beginObject();
+            json.nextName();
+            assertEquals("a\uFFFDb\uFFFD", json.nextString());
+        } finally {
+            json.release();
+        }
+    }
+
+    @Test
+    void rejectsBodiesOverTheLimit() {
+        String body = "{\"query\":\"" + "a".repeat(20_000) + "\"}";
+        JsonReader.MalformedJsonException e = assertThrows(JsonReader.MalformedJsonException.class,
+                () -> query(body, 10_000));
+        assertTrue(e.getMessage().contains("larger than 10000 bytes"), e.getMessage());
+    }
+
+    @Test
+    void acceptsBodiesAtTheLimit() throws IOException {
+        String body = "{\"query\":\"" + "a".repeat(20_000) + "\"}";
+        assertEquals(20_000, query(body, body.length()).length());
+    }
+
+    @Test
+    void rejectsTrailingCommaInObject() {
+        assertThrows(JsonReader.MalformedJsonException.class, () -> query("{\"query\":\"a\",}"));
+    }
+
+    @Test
+    void rejectsTrailingCommaInArray() {
+        assertThrows(JsonReader.MalformedJsonException.class, () -> strings("[\"a\",\"b\",]"));
+    }
+
+    @Test
+    void rejectsMissingComma() {
+        assertThrows(JsonReader.MalformedJsonException.class, () -> strings("[\"a\" \"b\"]"));
+    }
+
+    @Test
+    void rejectsUnescapedControlCharacters() {
+        assertThrows(JsonReader.MalformedJsonException.class, () -> query("{\"query\":\"a\nb\"}"));
+    }
+
+    @Test
+    void rejectsInvalidEscapes() {
+        assertThrows(JsonReader.MalformedJsonException.class, () -> query("{\"query\":\"\\x\"}"));
+        assertThrows(JsonReader.MalformedJsonException.class, () -> query("{\"query\":\"\\u12g4\"}"));
+    }
+
+    @Test
+    void rejectsUnterminatedStrings() {
+        assertThrows(JsonReader.MalformedJsonException.class, () -> query("{\"query\":\"abc"));
+    }
+
+    @Test
+    void skipsUnknownValues() throws IOException {
+        assertEquals("q", query("{\"x\":{\"y\":[1,-2.5e3,true,null,\"s\"]},\"query\":\"q\",\"z\":[]}"));
+    }
+
+    private static String query(String body) throws IOException {
+        return query(body, NO_LIMIT);
+    }
+
+    // The "query" field of an object, skipping everything else
+    private static String query(String body, long maxBytes) throws IOException {
+        JsonReader json = JsonReader.acquire(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), maxBytes);
+        try {
+            String query = null;
+            json.beginObject();
+            while (json.hasNext()) {
+                if ("query".equals(json.nextName())) {
+                    query = json.nextString();
+                } else {
+                    json.skipValue();
+                }
+            }
+            json.endObject();
+            return query;
+        } finally {
+            json.release();
+        }
+    }
+
+    private static List<String> strings(String body) throws IOException {
+        JsonReader json = JsonReader.acquire(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), NO_LIMIT);
+        try {
+            List<String> values = new ArrayList<>();
+            json.beginArray();
+            while (json.hasNext()) {
+                values.add(json.nextString());
+            }
+            json.endArray();
+            return values;
+        } finally {
+            json.release();
+        }
+    }
+
+    private static class OneByteAtATime extends InputStream {
+        private final byte[] bytes;
+        private int pos;
+
+        OneByteAtATime(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read() {
+            return pos < bytes.length ? bytes[pos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (pos >= bytes.length) {
+                return -1;
+            }
+            buffer[offset] = bytes[pos++];
+            return 1;
+        }
+    }
+}
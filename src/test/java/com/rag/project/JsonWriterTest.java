@@ -0,0 +1,137 @@
+package com.rag.project;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonWriterTest {
+
+    @Test
+    void escapesEveryControlCharacter() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (char c = 0; c < 0x20; c++) {
+            text.append(c);
+        }
+        text.append("\"\\/\u007f");
+        byte[] json = write(text.toString());
+        for (byte b : json) {
+            assertTrue((b & 0xFF) >= 0x20, "raw control byte " + b);
+        }
+        assertEquals(text.toString(), read(json));
+    }
+
+    @Test
+    void usesShortEscapesWhereJsonHasThem() throws IOException {
+        assertEquals("{\"answer\":\"a\\\"b\\\\c\\nd\\te\\u0001\"}",
+                new String(write("a\"b\\c\nd\te\u0001"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void encodesMultiByteCharactersAndSurrogatePairs() throws IOException {
+        String text = "café € 😀 中";
+        byte[] json = write(text);
+        assertEquals("{\"answer\":\"" + text + "\"}", new String(json, StandardCharsets.UTF_8));
+        assertEquals(text, read(json));
+    }
+
+    @Test
+    void encodesUnpairedSurrogatesLikeStringGetBytes() throws IOException {
+        String text = "a\uD83Db\uDE00";
+        assertEquals(new String(text.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8), read(write(text)));
+    }
+
+    // Longer than the 8 KB buffer, with escapes and multi-byte characters at every offset
+    @Test
+    void roundTripsStringsLargerThanTheBuffer() throws IOException {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 30_000) {
+            text.append("abé\"\n€😀\\");
+        }
+        assertEquals(text.toString(), read(write(text.toString())));
+    }
+
+    @Test
+    void writesNumbersBooleansAndNulls() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter json = JsonWriter.acquire(out);
+        try {
+            json.beginObject()
+                    .name("n").value(42)
+                    .name("d").value(1.5)
+                    .name("nan").value(Double.NaN)
+                    .name("b").value(false)
+                    .name("s").value((String) null)
+                    .name("a").beginArray().value(1).value(2).endArray()
+                    .endObject();
+        } finally {
+            json.release();
+        }
+        assertEquals("{\"n\":42,\"d\":1.5,\"nan\":null,\"b\":false,\"s\":null,\"a\":[1,2]}",
+                out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void writesNewlineDelimitedValues() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter json = JsonWriter.acquire(out);
+        try {
+            json.beginObject().name("index").value(0).endObject();
+            json.newline();
+            json.beginObject().name("index").value(1).endObject();
+            json.newline();
+        } finally {
+            json.release();
+        }
+        assertEquals("{\"index\":0}\n{\"index\":1}\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void refusesNewlineInsideAValue() throws IOException {
+        JsonWriter json = JsonWriter.acquire(new ByteArrayOutputStream());
+        try {
+            json.beginObject();
+            assertThrows(IllegalStateException.class, json::newline);
+        } finally {
+            json.release();
+        }
+    }
+
+    // Error bodies and SSE frames are built as text around quote()
+    @Test
+    void quoteEscapesLikeTheWriter() throws IOException {
+        String text = "a\"b\\c\nd\u0001 é 😀 \uD83D";
+        assertEquals(new String(write(text), StandardCharsets.UTF_8), "{\"answer\":" + JsonWriter.quote(text) + "}");
+        assertEquals("\"\"", JsonWriter.quote(""));
+    }
+
+    private static byte[] write(String answer) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter json = JsonWriter.acquire(out);
+        try {
+            json.beginObject().name("answer").value(answer).endObject();
+        } finally {
+            json.release();
+        }
+        return out.toByteArray();
+    }
+
+    private static String read(byte[] body) throws IOException {
+        JsonReader json = JsonReader.acquire(new ByteArrayInputStream(body), Long.MAX_VALUE);
+        try {
+            json.beginObject();
+            assertEquals("answer", json.nextName());
+            String answer = json.nextString();
+            json.endObject();
+            return answer;
+        } finally {
+            json.release();
+        }
+    }
+}